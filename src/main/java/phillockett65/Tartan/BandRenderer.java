@@ -0,0 +1,222 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * BandRenderer is a class that splits an image into horizontal bands,
+ * renders batches of bands in parallel on a ForkJoinPool and streams them in
+ * order to a PngEncoder. The next batch is rendered while the current batch
+ * is being encoded, so only two batches are ever held in memory.
+ */
+package phillockett65.Tartan;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+
+public class BandRenderer {
+
+    // Target number of pixels in a single band.
+    private static final int BAND_PIXELS = 64 * 1024;
+
+    // Number of bands in a batch for each worker thread.
+    private static final int BANDS_PER_WORKER = 4;
+
+    private final Rasterizer rasterizer;
+    private final int parallelism;
+
+    private final int width;
+    private final int height;
+    private final int bandHeight;
+    private final int batchSize;
+
+
+
+    /************************************************************************
+     * Support code for the RenderTask sub-class.
+     */
+
+    /**
+     * Class to render a range of bands of a batch, splitting the range
+     * until a single band remains.
+     */
+    private class RenderTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[][] buffers;
+        private final int first;
+        private final int from;
+        private final int to;
+
+        /**
+         * Constructor.
+         * @param buffers to render the bands of the batch into.
+         * @param first scanline of the batch.
+         * @param from index of the first band to render.
+         * @param to index after the last band to render.
+         */
+        public RenderTask(int[][] buffers, int first, int from, int to) {
+            this.buffers = buffers;
+            this.first = first;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                final int mid = (from + to) >>> 1;
+                invokeAll(new RenderTask(buffers, first, from, mid),
+                    new RenderTask(buffers, first, mid, to));
+
+                return;
+            }
+
+            final int y = first + (from * bandHeight);
+            rasterizer.renderLines(buffers[from], y, getLines(y));
+        }
+    }
+
+
+
+    /************************************************************************
+     * Support code for the Initialization of the BandRenderer.
+     */
+
+    /**
+     * Constructor.
+     * @param rasterizer that generates the pixels of the image.
+     * @param parallelism level, the number of worker threads to use.
+     */
+    public BandRenderer(Rasterizer rasterizer, int parallelism) {
+        this.rasterizer = rasterizer;
+        this.parallelism = Math.max(1, parallelism);
+
+        width = rasterizer.getWidth();
+        height = rasterizer.getHeight();
+        bandHeight = Math.max(1, BAND_PIXELS / Math.max(1, width));
+        batchSize = this.parallelism * BANDS_PER_WORKER;
+    }
+
+    /**
+     * Allocate the buffers for a batch of bands.
+     * @return the band buffers.
+     */
+    private int[][] allocateBatch() {
+        int[][] buffers = new int[batchSize][];
+        for (int i = 0; i < batchSize; ++i) {
+            buffers[i] = new int[width * bandHeight];
+        }
+
+        return buffers;
+    }
+
+    /**
+     * Calculate the number of scanlines in the band starting at y.
+     * @param y the first scanline of the band.
+     * @return the number of scanlines in the band.
+     */
+    private int getLines(int y) {
+        return Math.min(bandHeight, height - y);
+    }
+
+    /**
+     * Calculate the number of bands in the batch starting at y.
+     * @param y the first scanline of the batch.
+     * @return the number of bands in the batch.
+     */
+    private int getBands(int y) {
+        final int lines = Math.min(batchSize * bandHeight, height - y);
+
+        return (lines + bandHeight - 1) / bandHeight;
+    }
+
+    /**
+     * Start rendering the batch starting at y.
+     * @param pool to render the batch on.
+     * @param buffers to render the bands of the batch into.
+     * @param y the first scanline of the batch.
+     * @return the task rendering the batch.
+     */
+    private ForkJoinTask<Void> submit(ForkJoinPool pool, int[][] buffers, int y) {
+        return pool.submit(new RenderTask(buffers, y, 0, getBands(y)));
+    }
+
+
+
+    /************************************************************************
+     * Public interface.
+     */
+
+    public int getParallelism() { return parallelism; }
+
+    /**
+     * Render the whole image and stream it to the encoder in order.
+     * @param encoder to write the scanlines to.
+     */
+    public void render(PngEncoder encoder) throws IOException {
+        render(encoder, null);
+    }
+
+    /**
+     * Render the whole image and stream it to the encoder in order, 
+     * reporting the progress after each batch.
+     * @param encoder to write the scanlines to.
+     * @param progress called with the number of scanlines encoded so far,
+     * may be null.
+     */
+    public void render(PngEncoder encoder, IntConsumer progress) throws IOException {
+        final int step = batchSize * bandHeight;
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+        try {
+            int[][] current = allocateBatch();
+            int[][] next = allocateBatch();
+
+            ForkJoinTask<Void> task = submit(pool, current, 0);
+            for (int y = 0; y < height; y += step) {
+                task.join();
+
+                // Render the following batch while this one is encoded.
+                if (y + step < height) {
+                    task = submit(pool, next, y + step);
+                }
+
+                final int bands = getBands(y);
+                for (int band = 0; band < bands; ++band) {
+                    final int first = y + (band * bandHeight);
+                    encoder.writeLines(current[band], getLines(first));
+                }
+                if (progress != null) {
+                    progress.accept(Math.min(y + step, height));
+                }
+
+                int[][] swap = current;
+                current = next;
+                next = swap;
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,304 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * BufferSurface is a Surface that renders the tartan straight into a direct
+ * IntBuffer shared with a WritableImage through a PixelBuffer, so the pixels
+ * are never copied. Only the rectangle that has actually changed is passed
+ * to updateBuffer(). The swatch indices of the visible area are kept, so a
+ * palette change only re-maps the pixels. At low zoom the visible area is
+ * downsampled instead, which is cheap enough to simply repeat on a change.
+ */
+package phillockett65.Tartan;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.BitSet;
+
+import javafx.geometry.Rectangle2D;
+import javafx.scene.Node;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+
+public class BufferSurface extends Surface {
+
+    private final IntBuffer pixels;
+    private final PixelBuffer<IntBuffer> pixelBuffer;
+    private final ImageView view;
+
+    // Swatch indices of the visible area.
+    private final byte[] indices;
+
+    // Scratch buffer for a single rendered span.
+    private final int[] span;
+
+    // Premultiplied ARGB colours indexed by swatch, then the border.
+    private final int[] lut = new int[IndexedImage.BORDER + 1];
+
+    private Rasterizer rasterizer;
+    private int xStart;
+    private int yStart;
+
+    private int drawnColStart = -1;
+    private int drawnRowStart = -1;
+    private int drawnPhase = 0;
+
+    // Dirty rectangle, empty when minX >= maxX.
+    private int minX;
+    private int minY;
+    private int maxX;
+    private int maxY;
+
+
+
+    /************************************************************************
+     * Support code for the dirty rectangle.
+     */
+
+    private void clearDirty() {
+        minX = width;
+        minY = height;
+        maxX = 0;
+        maxY = 0;
+    }
+
+    private void addDirty(int x, int y, int w, int h) {
+        minX = Math.min(minX, x);
+        minY = Math.min(minY, y);
+        maxX = Math.max(maxX, x + w);
+        maxY = Math.max(maxY, y + h);
+    }
+
+    /**
+     * Tell the image which part of the buffer has changed.
+     */
+    private void flushDirty() {
+        if ((minX >= maxX) || (minY >= maxY)) {
+            return;
+        }
+
+        final Rectangle2D dirty = new Rectangle2D(minX, minY, maxX - minX, maxY - minY);
+        pixelBuffer.updateBuffer(b -> dirty);
+        clearDirty();
+    }
+
+
+
+    /************************************************************************
+     * Support code for rendering the pixels.
+     */
+
+    /**
+     * Convert an ARGB colour to the premultiplied form used by the buffer.
+     * @param argb colour to convert.
+     * @return the premultiplied ARGB colour.
+     */
+    private static int premultiply(int argb) {
+        final int a = argb >>> 24;
+        if (a == 0xFF) {
+            return argb;
+        }
+
+        final int r = (((argb >> 16) & 0xFF) * a + 127) / 255;
+        final int g = (((argb >> 8) & 0xFF) * a + 127) / 255;
+        final int b = ((argb & 0xFF) * a + 127) / 255;
+
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * Build a rasterizer for only the visible area at the drawn position.
+     */
+    private void buildRasterizer() {
+        xStart = (int)Math.ceil((drawnColStart * size) - 0.5);
+        yStart = (int)Math.ceil((drawnRowStart * size) - 0.5);
+        rasterizer = new Rasterizer(rows, cols, IndexedImage.INDICES, IndexedImage.BORDER,
+            size, thickness, xStart, width, yStart + height, drawnPhase);
+    }
+
+    /**
+     * Render a rectangular region of the visible area into the buffer.
+     * @param x position of the region.
+     * @param y position of the region.
+     * @param w width of the region.
+     * @param h height of the region.
+     */
+    private void render(int x, int y, int w, int h) {
+        x = Math.max(x, 0);
+        y = Math.max(y, 0);
+        w = Math.min(w, width - x);
+        h = Math.min(h, height - y);
+        if ((w <= 0) || (h <= 0)) {
+            return;
+        }
+
+        for (int line = y; line < y + h; ++line) {
+            rasterizer.renderSpan(span, 0, yStart + line, xStart + x, w);
+
+            int pos = (line * width) + x;
+            for (int i = 0; i < w; ++i, ++pos) {
+                final int index = span[i];
+                indices[pos] = (byte)index;
+                pixels.put(pos, lut[index]);
+            }
+        }
+
+        addDirty(x, y, w, h);
+    }
+
+    /**
+     * Re-render every visible strip of the changed threads.
+     * @param changed ring buffer positions of the changed threads.
+     * @param count number of threads in the sett.
+     * @param start pixel of the visible area in the rasterizer.
+     * @param limit size of the visible area in pixels.
+     * @param row is true for row threads, false for column threads.
+     */
+    private void renderStrips(BitSet changed, int count, int start, int limit, boolean row) {
+        final int first = (int)((start + 0.5) / size);
+        final int last = (int)((start + limit - 0.5) / size);
+
+        for (int pos = changed.nextSetBit(0); pos >= 0; pos = changed.nextSetBit(pos+1)) {
+            // First repeat of the thread at or after the first visible cell.
+            int cell = first + Math.floorMod(pos - first, count);
+            for (; cell <= last; cell += count) {
+                final int from = rasterizer.getFirstPixel(cell) - start;
+                final int to = rasterizer.getFirstPixel(cell + 1) - start;
+                if (row) {
+                    render(0, from, width, to - from);
+                } else {
+                    render(from, 0, to - from, height);
+                }
+            }
+        }
+    }
+
+    /**
+     * Re-map the whole buffer with the current palette.
+     */
+    private void remap() {
+        final int count = width * height;
+        for (int pos = 0; pos < count; ++pos) {
+            pixels.put(pos, lut[indices[pos] & 0xFF]);
+        }
+
+        addDirty(0, 0, width, height);
+    }
+
+    /**
+     * Downsample the whole visible area into the buffer. The swatch indices
+     * are not kept, as the pixels are blends of the palette colours.
+     */
+    private void renderLowDetail() {
+        xStart = (int)Math.ceil((drawnColStart * size) - 0.5);
+        yStart = (int)Math.ceil((drawnRowStart * size) - 0.5);
+        final Downsampler downsampler = new Downsampler(rows, cols, palette, size, xStart, width);
+
+        for (int line = 0; line < height; ++line) {
+            downsampler.renderSpan(span, 0, yStart + line, xStart, width);
+
+            int pos = line * width;
+            for (int i = 0; i < width; ++i, ++pos) {
+                pixels.put(pos, premultiply(span[i]));
+            }
+        }
+
+        addDirty(0, 0, width, height);
+    }
+
+
+
+    /************************************************************************
+     * Support code for the Initialization of the BufferSurface.
+     */
+
+    /**
+     * Constructor.
+     * @param width of the displayed area in pixels.
+     * @param height of the displayed area in pixels.
+     */
+    public BufferSurface(int width, int height) {
+        super(width, height);
+
+        pixels = ByteBuffer.allocateDirect(width * height * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+        pixelBuffer = new PixelBuffer<IntBuffer>(width, height, pixels, PixelFormat.getIntArgbPreInstance());
+        view = new ImageView(new WritableImage(pixelBuffer));
+
+        indices = new byte[width * height];
+        span = new int[width];
+
+        clearDirty();
+    }
+
+
+
+    /************************************************************************
+     * Public interface.
+     */
+
+    @Override
+    public Node getNode() { return view; }
+
+    @Override
+    public void setPalette(int[] palette, int border) {
+        super.setPalette(palette, border);
+        for (int i = 0; i < IndexedImage.BORDER; ++i) {
+            lut[i] = premultiply(palette[i]);
+        }
+        lut[IndexedImage.BORDER] = premultiply(border);
+    }
+
+    @Override
+    public void draw(int colStart, int rowStart, int phase) {
+        final boolean moved = (colStart != drawnColStart) || (rowStart != drawnRowStart) || (phase != drawnPhase);
+
+        if (isLowDetail()) {
+            if (reshaped || moved || recoloured || isModified()) {
+                drawnColStart = colStart;
+                drawnRowStart = rowStart;
+                drawnPhase = phase;
+                renderLowDetail();
+            }
+        } else if (reshaped || moved) {
+            drawnColStart = colStart;
+            drawnRowStart = rowStart;
+            drawnPhase = phase;
+            buildRasterizer();
+            render(0, 0, width, height);
+        } else {
+            if (recoloured) {
+                remap();
+            }
+            if (isModified()) {
+                buildRasterizer();
+                renderStrips(changedRows, rows.length, yStart, height, true);
+                renderStrips(changedCols, cols.length, xStart, width, false);
+            }
+        }
+
+        clearChanges();
+        flushDirty();
+    }
+
+}
@@ -0,0 +1,292 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CanvasSurface is a Surface that draws the tartan on a Canvas. Where
+ * possible the cached sett tiles are drawn across the canvas at an offset,
+ * otherwise the visible area is rendered directly into a single image. At
+ * low zoom a single downsampled tile of the sett is cached instead.
+ */
+package phillockett65.Tartan;
+
+import java.nio.ByteBuffer;
+
+import javafx.scene.Node;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+
+
+public class CanvasSurface extends Surface {
+
+    private final Canvas canvas;
+    private final GraphicsContext gc;
+
+    private PixelFormat<ByteBuffer> format;
+
+    private final TileCache tiles = new TileCache();
+    private boolean tilesEnabled = false;
+
+    private IndexedImage direct;
+
+    private boolean lowDetail = false;
+    private WritableImage lowTile;
+    private WritableImage lowImage;
+
+    private int drawnColStart = -1;
+    private int drawnRowStart = -1;
+    private int drawnPhase = 0;
+
+
+
+    /************************************************************************
+     * Support code for drawing the tartan.
+     */
+
+    /**
+     * Rebuild the tile cache for the current design, or disable it if the
+     * design is not suitable for tiling.
+     */
+    private void syncTiles() {
+        tilesEnabled = TileCache.isSupported(cols.length, rows.length, size);
+
+        if (tilesEnabled) {
+            tiles.setDesign(rows, cols, format, size, thickness);
+        } else {
+            tiles.clear();
+        }
+    }
+
+    /**
+     * Draw the tartan by drawing the cached tiles across the canvas. The
+     * sett rotation and the scroll position only change where the tiles are
+     * drawn and which phase of the twill each tile is drawn with.
+     */
+    private void drawTiles() {
+        final int cCount = cols.length;
+        final int rCount = rows.length;
+        final double xStart = -drawnColStart * size;
+        final double yStart = -drawnRowStart * size;
+        final double tileWidth = tiles.getWidth();
+        final double tileHeight = tiles.getHeight();
+
+        int b = 0;
+        for (double yPos = yStart; yPos < height; yPos += tileHeight, ++b) {
+            int a = 0;
+            for (double xPos = xStart; xPos < width; xPos += tileWidth, ++a) {
+                final int phase = (a * cCount) + (b * rCount) + drawnPhase;
+                gc.drawImage(tiles.getTile(phase), xPos, yPos);
+            }
+        }
+    }
+
+    /**
+     * Draw the tartan by rendering the visible area directly. Used when the
+     * design is not suitable for tiling.
+     */
+    private void drawDirect() {
+        if (direct == null) {
+            direct = new IndexedImage(width, height, format);
+        }
+
+        // Render only the visible window, starting at the first visible cell.
+        final int x = (int)Math.ceil((drawnColStart * size) - 0.5);
+        final int y = (int)Math.ceil((drawnRowStart * size) - 0.5);
+        final Rasterizer rasterizer = new Rasterizer(rows, cols,
+            IndexedImage.INDICES, IndexedImage.BORDER, size, thickness,
+            x, width, y + height, drawnPhase);
+
+        direct.render(rasterizer, x, y);
+
+        gc.drawImage(direct.getImage(), 0, 0);
+    }
+
+    /**
+     * Render a region of the design at low zoom into an image.
+     * @param image to render into, at least w by h.
+     * @param x position of the region in the design.
+     * @param y position of the region in the design.
+     * @param w width of the region.
+     * @param h height of the region.
+     */
+    private void renderLowDetail(WritableImage image, int x, int y, int w, int h) {
+        final Downsampler downsampler = new Downsampler(rows, cols, palette, size, x, w);
+
+        int[] buffer = new int[w * h];
+        int offset = 0;
+        for (int line = y; line < y + h; ++line) {
+            downsampler.renderSpan(buffer, offset, line, x, w);
+            offset += w;
+        }
+
+        image.getPixelWriter().setPixels(0, 0, w, h, PixelFormat.getIntArgbInstance(), buffer, 0, w);
+    }
+
+    /**
+     * Draw the tartan at low zoom. The downsampled image does not depend on
+     * the twill phase, so a single cached tile of the sett is drawn across
+     * the canvas, scaled to the exact sett size. If the sett is too large
+     * for a tile, only the visible area is downsampled.
+     */
+    private void drawLowDetail() {
+        final double settWidth = cols.length * size;
+        final double settHeight = rows.length * size;
+        final int tileWidth = (int)Math.ceil(settWidth);
+        final int tileHeight = (int)Math.ceil(settHeight);
+        final double limit = Default.MAX_TILE_SIZE.getFloat();
+
+        if ((tileWidth > limit) || (tileHeight > limit)) {
+            final int x = (int)Math.ceil((drawnColStart * size) - 0.5);
+            final int y = (int)Math.ceil((drawnRowStart * size) - 0.5);
+            if (lowImage == null) {
+                lowImage = new WritableImage(width, height);
+            }
+            renderLowDetail(lowImage, x, y, width, height);
+            gc.drawImage(lowImage, 0, 0);
+
+            return;
+        }
+
+        if (lowTile == null) {
+            lowTile = new WritableImage(tileWidth, tileHeight);
+            renderLowDetail(lowTile, 0, 0, tileWidth, tileHeight);
+        }
+
+        final double xStart = -drawnColStart * size;
+        final double yStart = -drawnRowStart * size;
+        for (double yPos = yStart; yPos < height; yPos += settHeight) {
+            for (double xPos = xStart; xPos < width; xPos += settWidth) {
+                gc.drawImage(lowTile, 0, 0, tileWidth, tileHeight, xPos, yPos, settWidth, settHeight);
+            }
+        }
+    }
+
+
+
+    /************************************************************************
+     * Support code for the Initialization of the CanvasSurface.
+     */
+
+    /**
+     * Constructor.
+     * @param width of the canvas in pixels.
+     * @param height of the canvas in pixels.
+     */
+    public CanvasSurface(int width, int height) {
+        super(width, height);
+
+        canvas = new Canvas(width, height);
+        gc = canvas.getGraphicsContext2D();
+        gc.setFill(Color.GRAY);
+        gc.fillRect(0, 0, width, height);
+    }
+
+
+
+    /************************************************************************
+     * Public interface.
+     */
+
+    @Override
+    public Node getNode() { return canvas; }
+
+    @Override
+    public void setPalette(int[] palette, int border) {
+        super.setPalette(palette, border);
+        format = IndexedImage.createFormat(palette, border);
+    }
+
+    @Override
+    public void draw(int colStart, int rowStart, int phase) {
+        final boolean modified = isModified();
+        final boolean moved = (colStart != drawnColStart) || (rowStart != drawnRowStart) || (phase != drawnPhase);
+
+        if (reshaped) {
+            lowDetail = isLowDetail();
+            lowTile = null;
+            lowImage = null;
+        }
+
+        if (lowDetail) {
+            // The downsampled tile holds colours, not indices, so any change
+            // means it must be rendered again, but it is small.
+            if (reshaped) {
+                direct = null;
+                tiles.clear();
+            } else if (modified || recoloured) {
+                lowTile = null;
+            }
+
+            if (reshaped || modified || recoloured || moved) {
+                drawnColStart = colStart;
+                drawnRowStart = rowStart;
+                drawnPhase = phase;
+
+                drawLowDetail();
+            }
+
+            clearChanges();
+
+            return;
+        }
+
+        if (reshaped) {
+            // Discard the direct image, it is rebuilt with the new palette
+            // when it is next needed.
+            direct = null;
+            syncTiles();
+        } else {
+            if (recoloured) {
+                // Re-map the swatch indices, nothing is re-rendered.
+                tiles.setFormat(format);
+                if (direct != null) {
+                    direct.setFormat(format);
+                }
+            }
+            if (modified && tilesEnabled) {
+                tiles.update(rows, cols, changedRows, changedCols);
+            }
+        }
+
+        if (reshaped || modified || moved) {
+            drawnColStart = colStart;
+            drawnRowStart = rowStart;
+            drawnPhase = phase;
+
+            if (tilesEnabled) {
+                drawTiles();
+            } else {
+                drawDirect();
+            }
+        } else if (recoloured) {
+            // Only the palette has changed, so redraw the re-mapped images.
+            if (tilesEnabled) {
+                drawTiles();
+            } else {
+                gc.drawImage(direct.getImage(), 0, 0);
+            }
+        }
+
+        clearChanges();
+    }
+
+}
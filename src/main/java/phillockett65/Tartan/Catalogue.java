@@ -0,0 +1,593 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+/*
+ * Catalogue is a class that keeps a persistent index of the saved designs,
+ * mapping the name of each design directory to its Metadata, so that the
+ * library can be listed without scanning and reading every design.
+ *
+ * The index is held in a single file in the base directory. It is updated
+ * for a single design whenever that design is saved, and reconciled with
+ * the directory on startup: only designs whose settings file has a
+ * different modification time from the one recorded are read again, and
+ * then only their headers. The base directory is only listed if its own
+ * modification time has changed, that is, if designs have been added or
+ * removed. The index is rewritten in place, as replacing it would change
+ * the modification time of the base directory, and a damaged index is
+ * simply rebuilt.
+ *
+ * The Catalogue is safe to use from several threads. The reconciling and
+ * the watching of the base directory for changes, see watch(), are meant 
+ * to run on a background thread, and the files are never read or written
+ * while holding the lock, apart from the index itself. A Listener is told
+ * of every change, on the thread that made it.
+ */
+package phillockett65.Tartan;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import phillockett65.Debug.Debug;
+
+
+public class Catalogue {
+
+    // Debug delta used to adjust the local logging level.
+    private static final int DD = 0;
+
+    private static final int MAGIC = 0x54434154;    // "TCAT"
+    private static final int VERSION = 2;
+
+    private final Path base;
+    private final Path indexFile;
+    private final String dataFile;
+
+    // Modification time of the base directory when it was last listed.
+    private long listed = 0;
+
+    private class Entry {
+        public Entry(long fileTime, Metadata metadata) {
+            this.fileTime = fileTime;
+            this.metadata = metadata;
+        }
+
+        private final long fileTime;
+        private final Metadata metadata;
+    }
+    private final TreeMap<String, Entry> entries = new TreeMap<String, Entry>(String.CASE_INSENSITIVE_ORDER);
+
+    /**
+     * Listener is told whenever a design is added to, updated in or removed
+     * from the catalogue.
+     */
+    public interface Listener {
+        /**
+         * @param name of the design directory.
+         * @param metadata of the design, or null if it has been removed.
+         */
+        void changed(String name, Metadata metadata);
+    }
+    private Listener listener;
+
+    private WatchService watcher;
+    private volatile boolean closed = false;
+
+
+
+    /************************************************************************
+     * Support code for the Initialization of the Catalogue.
+     */
+
+    /**
+     * Constructor.
+     * @param base directory holding a directory for each design.
+     * @param indexName name of the index file in the base directory.
+     * @param dataFile name of the settings file in each design directory.
+     */
+    public Catalogue(Path base, String indexName, String dataFile) {
+        this.base = base;
+        this.indexFile = base.resolve(indexName);
+        this.dataFile = dataFile;
+    }
+
+    /**
+     * Subscribe to the changes of the catalogue. Must be called before the
+     * catalogue is used from another thread.
+     * @param listener called on each change.
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+
+
+    /************************************************************************
+     * Support code for the entries.
+     */
+
+    private synchronized Entry getEntry(String name) {
+        return entries.get(name);
+    }
+
+    private synchronized void putEntry(String name, Entry entry) {
+        entries.put(name, entry);
+        if (listener != null) {
+            listener.changed(name, entry.metadata);
+        }
+    }
+
+    private synchronized boolean removeEntry(String name) {
+        if (entries.remove(name) == null) {
+            return false;
+        }
+
+        if (listener != null) {
+            listener.changed(name, null);
+        }
+
+        return true;
+    }
+
+    private synchronized void removeAll() {
+        for (Iterator<String> it = entries.keySet().iterator(); it.hasNext(); ) {
+            final String name = it.next();
+            it.remove();
+            if (listener != null) {
+                listener.changed(name, null);
+            }
+        }
+        listed = 0;
+    }
+
+
+
+    /************************************************************************
+     * Support code for the index file.
+     */
+
+    /**
+     * Read the index file, if there is one.
+     * @return true if the index was read, false otherwise.
+     */
+    private synchronized boolean readIndex() {
+        removeAll();
+
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int)channel.size());
+            while (buffer.hasRemaining() && (channel.read(buffer) >= 0)) {
+            }
+            buffer.flip();
+
+            if ((buffer.getInt() != MAGIC) || (buffer.getShort() != VERSION)) {
+                Debug.info(DD, "Ignoring unrecognised index " + indexFile);
+                return false;
+            }
+
+            listed = buffer.getLong();
+            final int count = buffer.getInt();
+            for (int i = 0; i < count; ++i) {
+                final String name = DataStore2.getString(buffer);
+                final long fileTime = buffer.getLong();
+                final String title = DataStore2.getString(buffer);
+                final int columnCount = buffer.getInt();
+                final int rowCount = buffer.getInt();
+                final long modified = buffer.getLong();
+                final long hash = buffer.getLong();
+                final int swatches = DataStore2.getVarint(buffer);
+                int[] palette = null;
+                if (swatches > 0) {
+                    palette = new int[swatches];
+                    for (int s = 0; s < swatches; ++s) {
+                        palette[s] = buffer.getInt();
+                    }
+                }
+                final int labelCount = DataStore2.getVarint(buffer);
+                String[] labels = null;
+                if (labelCount > 0) {
+                    labels = new String[labelCount];
+                    for (int s = 0; s < labelCount; ++s) {
+                        labels[s] = DataStore2.getString(buffer);
+                    }
+                }
+
+                putEntry(name, new Entry(fileTime, new Metadata(title, columnCount, rowCount, palette, labels, modified, hash)));
+            }
+
+            return true;
+        } catch (NoSuchFileException e) {
+            Debug.info(DD, "No index " + indexFile);
+        } catch (IOException | BufferUnderflowException e) {
+            Debug.critical(DD, "readIndex() - " + e.getMessage());
+        }
+
+        removeAll();
+
+        return false;
+    }
+
+    /**
+     * Write the index file.
+     * @return true if the index was written, false otherwise.
+     */
+    private synchronized boolean writeIndex() {
+        // Encode the strings first to find the size of the index.
+        ArrayList<byte[]> names = new ArrayList<byte[]>(entries.size() * 2);
+        int size = 4 + 2 + 8 + 4;
+        for (Map.Entry<String, Entry> item : entries.entrySet()) {
+            final Metadata metadata = item.getValue().metadata;
+            final int[] palette = metadata.getPalette();
+            final String[] labels = metadata.getSwatchNames();
+            names.add(item.getKey().getBytes(StandardCharsets.UTF_8));
+            names.add(metadata.getName().getBytes(StandardCharsets.UTF_8));
+            if (labels != null) {
+                for (String label : labels) {
+                    names.add(label.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            size += 8 + 4 + 4 + 8 + 8 + 5 + 5;
+            size += (palette == null) ? 0 : palette.length * 4;
+        }
+        for (byte[] name : names) {
+            size += 5 + name.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC);
+        buffer.putShort((short)VERSION);
+        buffer.putLong(listed);
+        buffer.putInt(entries.size());
+        int i = 0;
+        for (Entry entry : entries.values()) {
+            final Metadata metadata = entry.metadata;
+            DataStore2.putString(buffer, names.get(i++));
+            buffer.putLong(entry.fileTime);
+            DataStore2.putString(buffer, names.get(i++));
+            buffer.putInt(metadata.getColumnCount());
+            buffer.putInt(metadata.getRowCount());
+            buffer.putLong(metadata.getModified());
+            buffer.putLong(metadata.getHash());
+            final int[] palette = metadata.getPalette();
+            if (palette == null) {
+                DataStore2.putVarint(buffer, 0);
+            } else {
+                DataStore2.putVarint(buffer, palette.length);
+                for (int colour : palette) {
+                    buffer.putInt(colour);
+                }
+            }
+            final String[] labels = metadata.getSwatchNames();
+            if (labels == null) {
+                DataStore2.putVarint(buffer, 0);
+            } else {
+                DataStore2.putVarint(buffer, labels.length);
+                for (int s = 0; s < labels.length; ++s) {
+                    DataStore2.putString(buffer, names.get(i++));
+                }
+            }
+        }
+        buffer.flip();
+
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+
+            return true;
+        } catch (IOException e) {
+            Debug.critical(DD, "writeIndex() - " + e.getMessage());
+        }
+
+        return false;
+    }
+
+
+
+    /************************************************************************
+     * Support code for reconciling with the directory.
+     */
+
+    /**
+     * Get the modification time of a file.
+     * @param path of the file.
+     * @return the modification time, or -1 if the file does not exist.
+     */
+    private static long getFileTime(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Bring the entry for a design up to date, reading the header of its
+     * settings file only if the file has changed.
+     * @param name of the design directory.
+     * @return true if the entry changed, false otherwise.
+     */
+    private boolean refresh(String name) {
+        final Path settings = base.resolve(name).resolve(dataFile);
+        final long fileTime = getFileTime(settings);
+        final Entry entry = getEntry(name);
+
+        if (fileTime < 0) {
+            return removeEntry(name);
+        }
+        if ((entry != null) && (entry.fileTime == fileTime)) {
+            return false;
+        }
+
+        try {
+            putEntry(name, new Entry(fileTime, DataStore2.readMetadata(settings, name)));
+        } catch (IOException e) {
+            Debug.critical(DD, "refresh() - " + name + ": " + e.getMessage());
+            removeEntry(name);
+        }
+
+        return true;
+    }
+
+    /**
+     * @param name of an entry in the base directory.
+     * @return true if the entry may be a design directory. Hidden entries,
+     * such as the render cache, and the index are not, so changes to them
+     * are ignored.
+     */
+    private boolean isDesign(String name) {
+        return !name.startsWith(".") && !name.equals(indexFile.getFileName().toString());
+    }
+
+    /**
+     * Watch a design directory, so that a design saved in place, which only
+     * changes its settings file and not the base directory, is noticed.
+     * Registering a directory again is harmless.
+     * @param name of the design directory.
+     */
+    private void watchDesign(String name) {
+        final Path dir = base.resolve(name);
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+
+        try {
+            dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            Debug.critical(DD, "watchDesign() - " + name + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Bring the catalogue up to date with the events of a watch key. An
+     * event in the base directory names the design directory, an event in 
+     * a design directory names a file within it.
+     * @param key that has been signalled.
+     * @return true if any entries changed, false otherwise.
+     */
+    private boolean handle(WatchKey key) {
+        final Path dir = (Path)key.watchable();
+        final boolean top = dir.equals(base);
+        boolean changed = false;
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                changed |= list();
+                if (top) {
+                    for (String name : getNames()) {
+                        watchDesign(name);
+                    }
+                }
+            } else if (top) {
+                final String name = ((Path)event.context()).toString();
+                if (!isDesign(name)) {
+                    continue;
+                }
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                    watchDesign(name);
+                }
+                changed |= refresh(name);
+            } else {
+                changed |= refresh(dir.getFileName().toString());
+            }
+        }
+        key.reset();
+
+        return changed;
+    }
+
+    /**
+     * List the design directories to find any added or removed designs. The
+     * attributes are read from the directory stream, which on some systems
+     * does not need another access to the file system.
+     * @return true if any entries changed, false otherwise.
+     */
+    private boolean list() {
+        boolean changed = false;
+        final HashSet<String> found = new HashSet<String>();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(base)) {
+            for (Path dir : stream) {
+                if (closed) {
+                    return changed;
+                }
+                final String name = dir.getFileName().toString();
+                if (!isDesign(name) || !Files.readAttributes(dir, BasicFileAttributes.class).isDirectory()) {
+                    continue;
+                }
+
+                found.add(name);
+                if (refresh(name)) {
+                    changed = true;
+                }
+            }
+        } catch (IOException e) {
+            Debug.critical(DD, "list() - " + e.getMessage());
+            return false;
+        }
+
+        for (String name : getNames()) {
+            if (!found.contains(name)) {
+                changed |= removeEntry(name);
+            }
+        }
+
+        return changed;
+    }
+
+
+
+    /************************************************************************
+     * Public interface.
+     */
+
+    /**
+     * Load the index and reconcile it with the directory, writing the index
+     * back if anything has changed.
+     */
+    public void reconcile() {
+        boolean changed = !readIndex();
+
+        final long dirTime = getFileTime(base);
+        if (dirTime != listed) {
+            list();
+            synchronized (this) {
+                listed = dirTime;
+            }
+            changed = true;
+        } else {
+            for (String name : getNames()) {
+                changed |= refresh(name);
+            }
+        }
+
+        if (changed) {
+            writeIndex();
+        }
+    }
+
+    /**
+     * Watch the base directory and each design directory and keep the 
+     * catalogue up to date as designs are added, changed or removed by 
+     * anything, until close() is called. The design directories are watched
+     * as well, as saving a design over an existing one does not change the
+     * base directory. This blocks, so it must be called on a background 
+     * thread.
+     */
+    public void watch() {
+        try {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                watcher = base.getFileSystem().newWatchService();
+            }
+            base.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            for (String name : getNames()) {
+                watchDesign(name);
+            }
+
+            while (true) {
+                if (handle(watcher.take())) {
+                    synchronized (this) {
+                        listed = getFileTime(base);
+                    }
+                    writeIndex();
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            Debug.info(DD, "Stopped watching " + base);
+        } catch (IOException e) {
+            Debug.critical(DD, "watch() - " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stop watching the base directory.
+     */
+    public void close() {
+        final WatchService service;
+        synchronized (this) {
+            closed = true;
+            service = watcher;
+        }
+
+        try {
+            if (service != null) {
+                service.close();
+            }
+        } catch (IOException e) {
+            Debug.critical(DD, "close() - " + e.getMessage());
+        }
+    }
+
+    /**
+     * Update the entry of a single design, such as after it is saved, and
+     * write the index.
+     * @param name of the design directory.
+     */
+    public void update(String name) {
+        refresh(name);
+        synchronized (this) {
+            listed = getFileTime(base);
+        }
+        writeIndex();
+    }
+
+    /**
+     * @return the names of the designs in the catalogue in alphabetical
+     * order.
+     */
+    public synchronized ArrayList<String> getNames() {
+        return new ArrayList<String>(entries.keySet());
+    }
+
+    /**
+     * @param name of the design directory.
+     * @return the details of the design, or null if it is not catalogued.
+     */
+    public synchronized Metadata getMetadata(String name) {
+        final Entry entry = entries.get(name);
+
+        return (entry == null) ? null : entry.metadata;
+    }
+
+}
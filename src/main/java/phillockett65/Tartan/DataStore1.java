@@ -24,13 +24,14 @@
  */
 package phillockett65.Tartan;
 
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.ObjectStreamClass;
 import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 
 import javafx.scene.paint.Color;
@@ -95,29 +96,59 @@ public class DataStore1 extends DataStoreBase {
     }
 
 
+    public ArrayList<Integer> getRowList() { return rowList; }
+    public ArrayList<Integer> getColumnList() { return colList; }
+    public int getSwatchCount() { return colourSwatches.size(); }
+    public Color getSwatchColour(int index) { return colourSwatches.get(index).getColour(); }
+    public String getSwatchName(int index) { return colourSwatches.get(index).getName(); }
+    public int getThreadCount() { return threadCount; }
+
+    private static Color toColor(int argb) {
+        return Color.rgb((argb >> 16) & 0xFF, (argb >> 8) & 0xFF, argb & 0xFF);
+    }
+
+    private static ArrayList<Integer> toList(TartanDesign.Threads threads) {
+        ArrayList<Integer> list = new ArrayList<Integer>(threads.getCount());
+        for (int index = 0; index < threads.getCount(); ++index) {
+            list.add(threads.getColourIndex(index));
+        }
+
+        return list;
+    }
+
     /**
      * Data exchange from the model to this DataStore.
      * @param model contains the data.
      * @return true if data successfully pulled from the model, false otherwise.
      */
     public boolean pull(Model model) {
+        return pull(model.getDesign());
+    }
+
+    /**
+     * Data exchange from a snapshot of the design to this DataStore.
+     * @param design snapshot of the design.
+     * @return true if data successfully pulled from the design, false otherwise.
+     */
+    public boolean pull(TartanDesign design) {
         boolean success = true;
 
-        selectedSwatch = model.getSelectedColourIndex();
-        for (int i = 0; i < Default.SWATCH_COUNT.getInt(); ++i) {
-            colourSwatches.add(new ColourSwatch(model.getSwatchColour(i), model.getSwatchName(i)));
+        selectedSwatch = design.getSelectedSwatch();
+        colourSwatches.clear();
+        for (int i = 0; i < design.getSwatchCount(); ++i) {
+            colourSwatches.add(new ColourSwatch(toColor(design.getSwatchColour(i)), design.getSwatchName(i)));
         }
 
-        rowList = model.getRowList();
-        colList = model.getColumnList();
+        rowList = toList(design.getRows());
+        colList = toList(design.getColumns());
 
-        duplicate = model.isDuplicate();
-        showGuide = model.isShowGuide();
-        setGuideLineColour(model.getGuideLineColour());
+        duplicate = design.isDuplicate();
+        showGuide = design.isShowGuide();
+        setGuideLineColour(toColor(design.getGuideLineColour()));
 
-        threadCount = model.getThreadCount();
-        threadSize = model.getThreadSize();
-        borderThickness = model.getBorderThickness();
+        threadCount = design.getThreadCount();
+        threadSize = design.getThreadSize();
+        borderThickness = design.getBorderThickness();
 
         return success;
     }
@@ -157,23 +188,29 @@ public class DataStore1 extends DataStoreBase {
      */
 
     /**
-     * Static method that instantiates a DataStore, populates it from the 
-     * model and writes it to disc.
-     * @return true if data successfully written to disc, false otherwise.
+     * Static method that instantiates a DataStore and populates it from a
+     * snapshot of the design.
+     * @param design snapshot of the design.
+     * @return the populated DataStore.
      */
-    public static boolean writeData() {
-        boolean success = false;
-        Model model = Model.getInstance();
-
+    public static DataStore1 capture(TartanDesign design) {
         DataStore1 store = new DataStore1();
-        store.pull(model);
-        store.dump();
+        store.pull(design);
 
-        ObjectOutputStream objectOutputStream;
-        try {
-            objectOutputStream = new ObjectOutputStream(new FileOutputStream(model.getSettingsFile()));
+        return store;
+    }
 
-            objectOutputStream.writeObject(store);
+    /**
+     * Write this DataStore to disc.
+     * @param path of the settings file.
+     * @return true if data successfully written to disc, false otherwise.
+     */
+    public boolean save(Path path) {
+        boolean success = false;
+        dump();
+
+        try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(Files.newOutputStream(path))) {
+            objectOutputStream.writeObject(this);
             success = true;
         } catch (IOException e) {
             e.printStackTrace();
@@ -183,6 +220,38 @@ public class DataStore1 extends DataStoreBase {
         return success;
     }
 
+    /**
+     * Static method that instantiates a DataStore and populates it from disc.
+     * @param path of the settings file.
+     * @return the DataStore, or null if the file is of an unknown version.
+     * @throws IOException if the file cannot be read or is not valid.
+     */
+    public static DataStore1 read(Path path) throws IOException {
+        try (ObjectInputStream objectInputStream = new ObjectInputStream(Files.newInputStream(path))) {
+            DataStoreBase base = (DataStoreBase)objectInputStream.readObject();
+            long SVUID = ObjectStreamClass.lookup(base.getClass()).getSerialVersionUID();
+
+            if (SVUID == 1) {
+                return (DataStore1)base;
+            }
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException(e.getMessage());
+        }
+
+        return null;
+    }
+
+    /**
+     * Static method that instantiates a DataStore, populates it from the 
+     * model and writes it to disc.
+     * @return true if data successfully written to disc, false otherwise.
+     */
+    public static boolean writeData() {
+        Model model = Model.getInstance();
+
+        return capture(model.getDesign()).save(Paths.get(model.getSettingsFile()));
+    }
+
     /**
      * Static method that instantiates a DataStore, populates it from disc 
      * and writes it to the model.
@@ -192,24 +261,14 @@ public class DataStore1 extends DataStoreBase {
         boolean success = false;
         Model model = Model.getInstance();
 
-        ObjectInputStream objectInputStream;
         try {
-            objectInputStream = new ObjectInputStream(new FileInputStream(model.getSettingsFile()));
-
-            DataStoreBase base = (DataStoreBase)objectInputStream.readObject();
-            long SVUID = ObjectStreamClass.lookup(base.getClass()).getSerialVersionUID();
- 
-            DataStore1 store = null;
-            if (SVUID == 1) {
-                store = (DataStore1)base;
+            DataStore1 store = read(Paths.get(model.getSettingsFile()));
+            if (store != null) {
                 success = store.push(model);
                 store.dump();
             }
-
         } catch (IOException e) {
             Debug.critical(DD, e.getMessage());
-        } catch (ClassNotFoundException e) {
-            Debug.critical(DD, e.getMessage());
         }
 
         return success;
@@ -0,0 +1,684 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+/*
+ * DataStore2 is a class that saves and restores the settings data to and
+ * from disc in a compact binary format, read and written in one go through
+ * NIO channels.
+ *
+ * The file starts with a header, followed by the body:
+ *   header: magic "TRTN", version, header size, flags, selected swatch,
+ *           swatch count, column and row sett lengths, thread count, thread
+ *           size, border thickness, guide line colour and body size. From
+ *           version 3 these are followed by the time saved, a hash of the
+ *           body, the packed ARGB palette and the UTF-8 name, and from
+ *           version 4 by the swatch names.
+ *   body:   each swatch as packed ARGB and a UTF-8 name, then the column
+ *           and row setts as runs of (swatch, count), counts as varints.
+ *
+ * The header size is stored, so fields can be added to the end of the
+ * header without breaking older readers. From version 5 the header size is
+ * a 32 bit value, its high 16 bits held in what was a reserved field, so
+ * long names no longer truncate it; earlier versions wrote 0 there. The
+ * header alone is enough to list a design, see readMetadata(). Files that
+ * do not start with the magic number are passed on to DataStore1, so
+ * existing designs still load and are rewritten in this format when next
+ * saved. A file is replaced by an atomic move, so a failed save never
+ * destroys the previous one.
+ */
+package phillockett65.Tartan;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import javafx.scene.paint.Color;
+import phillockett65.Debug.Debug;
+
+public class DataStore2 {
+
+    // Debug delta used to adjust the local logging level.
+    private static final int DD = 0;
+
+    public static final int MAGIC = 0x5452544E;    // "TRTN"
+    public static final int VERSION = 5;
+
+    // Size of the fields common to all versions.
+    public static final int FIXED_HEADER_SIZE = 52;
+
+    // Positions of the low and high 16 bits of the header size.
+    private static final int HEADER_SIZE_LOW = 6;
+    private static final int HEADER_SIZE_HIGH = 14;
+
+    private static final int DUPLICATE_FLAG = 0x01;
+    private static final int SHOW_GUIDE_FLAG = 0x02;
+
+    private int selectedSwatch = 0;
+    private int[] swatchColours;
+    private String[] swatchNames;
+
+    private Sett colSett;
+    private Sett rowSett;
+
+    private boolean duplicate = true;
+    private boolean showGuide = true;
+    private int guideLineColour = 0xFFFF0000;
+
+    private int threadCount = 1;
+    private double threadSize = 1.0;
+    private double borderThickness = 1.0;
+
+    private String name = "";
+    private long modified = 0;
+    private long hash = 0;
+
+
+
+    /************************************************************************
+     * Support code for the varints.
+     */
+
+    /**
+     * Write an unsigned varint, 7 bits per byte, least significant first.
+     * @param buffer to write to.
+     * @param value to write, treated as unsigned.
+     */
+    static void putVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte)value);
+    }
+
+    /**
+     * Read an unsigned varint.
+     * @param buffer to read from.
+     * @return the value read.
+     * @throws IOException if the varint is too long.
+     */
+    static int getVarint(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final int b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IOException("Malformed varint");
+    }
+
+    static void putString(ByteBuffer buffer, byte[] bytes) {
+        putVarint(buffer, bytes.length);
+        buffer.put(bytes);
+    }
+
+    static String getString(ByteBuffer buffer) throws IOException {
+        byte[] bytes = new byte[getVarint(buffer)];
+        buffer.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void putSett(ByteBuffer buffer, Sett sett) {
+        putVarint(buffer, sett.getRunCount());
+        for (int run = 0; run < sett.getRunCount(); ++run) {
+            buffer.put((byte)sett.getRunColour(run));
+            putVarint(buffer, sett.getRunLength(run));
+        }
+    }
+
+    /**
+     * Calculate the 64 bit FNV-1a hash of part of a buffer.
+     * @param buffer to hash.
+     * @param from first byte to hash.
+     * @param to position after the last byte to hash.
+     * @return the hash.
+     */
+    private static long hash(ByteBuffer buffer, int from, int to) {
+        long result = 0xcbf29ce484222325L;
+        for (int pos = from; pos < to; ++pos) {
+            result ^= buffer.get(pos) & 0xFF;
+            result *= 0x100000001b3L;
+        }
+
+        return result;
+    }
+
+    /**
+     * Read the header size from the fixed header.
+     * @param buffer holding the fixed header, from position 0.
+     * @return the header size in bytes.
+     */
+    private static int getHeaderSize(ByteBuffer buffer) {
+        return (buffer.getShort(HEADER_SIZE_LOW) & 0xFFFF) | ((buffer.getShort(HEADER_SIZE_HIGH) & 0xFFFF) << 16);
+    }
+
+    private static Sett getSett(ByteBuffer buffer, int length, int swatches) throws IOException {
+        Sett sett = new Sett();
+        final int runs = getVarint(buffer);
+        for (int run = 0; run < runs; ++run) {
+            final int colour = buffer.get() & 0xFF;
+            if (colour >= swatches) {
+                throw new IOException("Bad swatch index " + colour);
+            }
+            sett.append(colour, getVarint(buffer));
+        }
+
+        if (sett.getLength() != length) {
+            throw new IOException("Sett length " + sett.getLength() + " does not match header " + length);
+        }
+
+        return sett;
+    }
+
+
+
+    /************************************************************************
+     * Support code for the Initialization, getters and setters of DataStore2.
+     */
+
+    private DataStore2() {
+    }
+
+    /**
+     * Data exchange from the model to this DataStore.
+     * @param model contains the data.
+     * @return true if data successfully pulled from the model, false otherwise.
+     */
+    public boolean pull(Model model) {
+        return pull(model.getDesign());
+    }
+
+    /**
+     * Data exchange from a snapshot of the design to this DataStore. Does
+     * not refer to the model, so may be called on any thread.
+     * @param design snapshot of the design.
+     * @return true if data successfully pulled from the design, false otherwise.
+     */
+    public boolean pull(TartanDesign design) {
+        boolean success = true;
+
+        selectedSwatch = design.getSelectedSwatch();
+        final int count = design.getSwatchCount();
+        swatchColours = design.getPalette();
+        swatchNames = new String[count];
+        for (int i = 0; i < count; ++i) {
+            swatchNames[i] = design.getSwatchName(i);
+        }
+
+        colSett = design.getColumns().toSett();
+        rowSett = design.getRows().toSett();
+
+        duplicate = design.isDuplicate();
+        showGuide = design.isShowGuide();
+        guideLineColour = design.getGuideLineColour();
+
+        threadCount = design.getThreadCount();
+        threadSize = design.getThreadSize();
+        borderThickness = design.getBorderThickness();
+
+        name = design.getName();
+
+        return success;
+    }
+
+    /**
+     * Data exchange from this DataStore to the model.
+     * @param model contains the data.
+     * @return true if data successfully pushed to the model, false otherwise.
+     */
+    public boolean push(Model model) {
+        boolean success = true;
+
+        model.setSelectedColourIndex(selectedSwatch);
+        for (int i = 0; i < swatchColours.length; ++i) {
+            model.setSwatch(i, toColor(swatchColours[i]), swatchNames[i]);
+        }
+
+        // Set up the swatches before we use them in the rows and columns.
+        model.setRowSett(rowSett);
+        model.setColumnSett(colSett);
+
+        model.setDuplicate(duplicate);
+        model.setShowGuide(showGuide);
+        model.setGuideLineColour(toColor(guideLineColour));
+
+        model.initThreadCount(threadCount);
+        model.initThreadSize(threadSize);
+        model.initBorderThickness(borderThickness);
+
+        return success;
+    }
+
+    public int[] getSwatchColours() { return swatchColours; }
+    public String[] getSwatchNames() { return swatchNames; }
+    public int getSelectedSwatch() { return selectedSwatch; }
+    public Sett getColumnSett() { return colSett; }
+    public Sett getRowSett() { return rowSett; }
+
+    public boolean isDuplicate() { return duplicate; }
+    public boolean isShowGuide() { return showGuide; }
+    public int getGuideLineColour() { return guideLineColour; }
+    public int getThreadCount() { return threadCount; }
+    public double getThreadSize() { return threadSize; }
+    public double getBorderThickness() { return borderThickness; }
+    public String getName() { return name; }
+
+    private static Color toColor(int argb) {
+        return Color.rgb((argb >> 16) & 0xFF, (argb >> 8) & 0xFF, argb & 0xFF, (argb >>> 24) / 255.0);
+    }
+
+
+
+    /************************************************************************
+     * Support code for the file format.
+     */
+
+    /**
+     * Encode this DataStore into a buffer ready for writing.
+     * @return the encoded file, flipped for reading.
+     */
+    private ByteBuffer encode() {
+        final byte[] title = name.getBytes(StandardCharsets.UTF_8);
+        int headerSize = FIXED_HEADER_SIZE + 8 + 8 + (swatchColours.length * 4) + 5 + title.length;
+
+        byte[][] names = new byte[swatchNames.length][];
+        int bodySize = 0;
+        for (int i = 0; i < swatchNames.length; ++i) {
+            names[i] = swatchNames[i].getBytes(StandardCharsets.UTF_8);
+            headerSize += 5 + names[i].length;
+            bodySize += 4 + 5 + names[i].length;
+        }
+        // Worst case of a byte and a 5 byte varint per run.
+        bodySize += 10 + ((colSett.getRunCount() + rowSett.getRunCount()) * 6);
+
+        ByteBuffer buffer = ByteBuffer.allocate(headerSize + bodySize);
+        buffer.putInt(MAGIC);
+        buffer.putShort((short)VERSION);
+        buffer.putShort((short)0);
+        buffer.putShort((short)((duplicate ? DUPLICATE_FLAG : 0) | (showGuide ? SHOW_GUIDE_FLAG : 0)));
+        buffer.putShort((short)selectedSwatch);
+        buffer.putShort((short)swatchColours.length);
+        buffer.putShort((short)0);
+        buffer.putInt(colSett.getLength());
+        buffer.putInt(rowSett.getLength());
+        buffer.putInt(threadCount);
+        buffer.putDouble(threadSize);
+        buffer.putDouble(borderThickness);
+        buffer.putInt(guideLineColour);
+        final int bodySizePos = buffer.position();
+        buffer.putInt(0);
+
+        modified = System.currentTimeMillis();
+        buffer.putLong(modified);
+        final int hashPos = buffer.position();
+        buffer.putLong(0);
+        for (int colour : swatchColours) {
+            buffer.putInt(colour);
+        }
+        putString(buffer, title);
+        for (byte[] label : names) {
+            putString(buffer, label);
+        }
+
+        final int bodyStart = buffer.position();
+        buffer.putShort(HEADER_SIZE_LOW, (short)bodyStart);
+        buffer.putShort(HEADER_SIZE_HIGH, (short)(bodyStart >>> 16));
+
+        for (int i = 0; i < swatchColours.length; ++i) {
+            buffer.putInt(swatchColours[i]);
+            putString(buffer, names[i]);
+        }
+        putSett(buffer, colSett);
+        putSett(buffer, rowSett);
+
+        buffer.putInt(bodySizePos, buffer.position() - bodyStart);
+        hash = hash(buffer, bodyStart, buffer.position());
+        buffer.putLong(hashPos, hash);
+        buffer.flip();
+
+        return buffer;
+    }
+
+    /**
+     * Decode a file into this DataStore.
+     * @param buffer holding the whole file.
+     * @throws IOException if the file is not valid.
+     */
+    private void decode(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Not a DataStore2 file");
+        }
+        final int version = buffer.getShort();
+        if (version < 2) {
+            throw new IOException("Unsupported version " + version);
+        }
+        final int headerSize = getHeaderSize(buffer);
+        buffer.getShort();
+        final int flags = buffer.getShort();
+        selectedSwatch = buffer.getShort();
+        final int swatches = buffer.getShort();
+        buffer.getShort();
+        final int colCount = buffer.getInt();
+        final int rowCount = buffer.getInt();
+        threadCount = buffer.getInt();
+        threadSize = buffer.getDouble();
+        borderThickness = buffer.getDouble();
+        guideLineColour = buffer.getInt();
+        final int bodySize = buffer.getInt();
+
+        if ((version >= 3) && (headerSize > FIXED_HEADER_SIZE)) {
+            modified = buffer.getLong();
+            hash = buffer.getLong();
+            buffer.position(buffer.position() + (swatches * 4));
+            name = getString(buffer);
+        }
+
+        // Skip any header fields added by later versions.
+        if ((headerSize < FIXED_HEADER_SIZE) || (headerSize > buffer.limit())) {
+            throw new IOException("Bad header size " + headerSize);
+        }
+        buffer.position(headerSize);
+        if (buffer.remaining() < bodySize) {
+            throw new IOException("File truncated");
+        }
+        if ((hash != 0) && (hash(buffer, headerSize, headerSize + bodySize) != hash)) {
+            throw new IOException("Content hash mismatch");
+        }
+
+        duplicate = (flags & DUPLICATE_FLAG) != 0;
+        showGuide = (flags & SHOW_GUIDE_FLAG) != 0;
+
+        swatchColours = new int[swatches];
+        swatchNames = new String[swatches];
+        for (int i = 0; i < swatches; ++i) {
+            swatchColours[i] = buffer.getInt();
+            swatchNames[i] = getString(buffer);
+        }
+        colSett = getSett(buffer, colCount, swatches);
+        rowSett = getSett(buffer, rowCount, swatches);
+    }
+
+    /**
+     * Write this DataStore to a file. The data is written to a temporary
+     * file beside it, which is then moved into place, so a failure part 
+     * way through leaves any previous file untouched.
+     * @param path of the file.
+     * @throws IOException if the file cannot be written.
+     */
+    private void write(Path path) throws IOException {
+        final ByteBuffer buffer = encode();
+        final Path temp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Read a whole file into a buffer.
+     * @param path of the file.
+     * @return the contents of the file, flipped for reading.
+     * @throws IOException if the file cannot be read.
+     */
+    private static ByteBuffer readFile(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large");
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate((int)size);
+            while (buffer.hasRemaining() && (channel.read(buffer) >= 0)) {
+            }
+            buffer.flip();
+
+            return buffer;
+        }
+    }
+
+    /**
+     * Read the details of a design from the header of its settings file,
+     * reading only the header. Older files only give the name and the time
+     * the file was written.
+     * @param path of the settings file.
+     * @param fallback name of the design, used if the header has no name.
+     * @return the details of the design.
+     * @throws IOException if the file cannot be read or is not valid.
+     */
+    public static Metadata readMetadata(Path path, String fallback) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer fixed = ByteBuffer.allocate(FIXED_HEADER_SIZE);
+            while (fixed.hasRemaining() && (channel.read(fixed) >= 0)) {
+            }
+            fixed.flip();
+
+            if ((fixed.remaining() < FIXED_HEADER_SIZE) || !isDataStore2(fixed)) {
+                final long time = Files.getLastModifiedTime(path).toMillis();
+                return new Metadata(fallback, -1, -1, null, null, time, 0);
+            }
+
+            final int version = fixed.getShort(4);
+            final int headerSize = getHeaderSize(fixed);
+            final int swatches = fixed.getShort(12);
+            final int colCount = fixed.getInt(16);
+            final int rowCount = fixed.getInt(20);
+            if ((version < 3) || (headerSize <= FIXED_HEADER_SIZE)) {
+                final long time = Files.getLastModifiedTime(path).toMillis();
+                return new Metadata(fallback, colCount, rowCount, null, null, time, 0);
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(headerSize - FIXED_HEADER_SIZE);
+            while (header.hasRemaining() && (channel.read(header) >= 0)) {
+            }
+            header.flip();
+
+            try {
+                final long time = header.getLong();
+                final long contentHash = header.getLong();
+                int[] palette = new int[swatches];
+                for (int i = 0; i < swatches; ++i) {
+                    palette[i] = header.getInt();
+                }
+                final String title = getString(header);
+                String[] labels = null;
+                if (version >= 4) {
+                    labels = new String[swatches];
+                    for (int i = 0; i < swatches; ++i) {
+                        labels[i] = getString(header);
+                    }
+                }
+
+                return new Metadata(title.isEmpty() ? fallback : title, colCount, rowCount, palette, labels, time, contentHash);
+            } catch (BufferUnderflowException e) {
+                throw new IOException("Header truncated: " + path);
+            }
+        }
+    }
+
+    /**
+     * Read the swatches and setts of a design without loading it into the
+     * model, such as to draw a preview.
+     * @param path of the settings file.
+     * @return the design, or null if the file is in an older format.
+     * @throws IOException if the file cannot be read or is not valid.
+     */
+    public static DataStore2 readDesign(Path path) throws IOException {
+        final ByteBuffer buffer = readFile(path);
+        if (!isDataStore2(buffer)) {
+            return null;
+        }
+
+        DataStore2 store = new DataStore2();
+        try {
+            store.decode(buffer);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("File truncated: " + path);
+        }
+
+        return store;
+    }
+
+    /**
+     * Check whether a buffer holds a DataStore2 file.
+     * @param buffer holding the start of the file.
+     * @return true if the buffer starts with the magic number.
+     */
+    private static boolean isDataStore2(ByteBuffer buffer) {
+        return (buffer.remaining() >= 4) && (buffer.getInt(buffer.position()) == MAGIC);
+    }
+
+
+
+    /************************************************************************
+     * Support code for static public interface.
+     */
+
+    /**
+     * Static method that instantiates a DataStore and populates it from a
+     * snapshot of the design, on any thread.
+     * @param design snapshot of the design.
+     * @return the populated DataStore.
+     */
+    public static DataStore2 capture(TartanDesign design) {
+        DataStore2 store = new DataStore2();
+        store.pull(design);
+
+        return store;
+    }
+
+    /**
+     * Write this DataStore to disc. Does not refer to the model, so may be
+     * called on any thread.
+     * @param path of the settings file.
+     * @return true if data successfully written to disc, false otherwise.
+     */
+    public boolean save(Path path) {
+        boolean success = false;
+        dump();
+
+        try {
+            write(path);
+            success = true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            Debug.critical(DD, e.getMessage());
+        }
+
+        return success;
+    }
+
+    /**
+     * Static method that instantiates a DataStore, populates it from the 
+     * model and writes it to disc.
+     * @return true if data successfully written to disc, false otherwise.
+     */
+    public static boolean writeData() {
+        Model model = Model.getInstance();
+
+        return capture(model.getDesign()).save(Paths.get(model.getSettingsFile()));
+    }
+
+    /**
+     * Static method that instantiates a DataStore, populates it from disc 
+     * and writes it to the model. Files in the DataStore1 format are read 
+     * by DataStore1.
+     * @return true if data successfully read from disc, false otherwise.
+     */
+    public static boolean readData() {
+        boolean success = false;
+        Model model = Model.getInstance();
+
+        try {
+            final ByteBuffer buffer = readFile(Paths.get(model.getSettingsFile()));
+            if (!isDataStore2(buffer)) {
+                return DataStore1.readData();
+            }
+
+            DataStore2 store = new DataStore2();
+            store.decode(buffer);
+            success = store.push(model);
+            store.dump();
+        } catch (IOException e) {
+            Debug.critical(DD, e.getMessage());
+        } catch (BufferUnderflowException e) {
+            Debug.critical(DD, "File truncated: " + model.getSettingsFile());
+        }
+
+        return success;
+    }
+
+
+
+    /************************************************************************
+     * Support code for debug.
+     */
+
+    /**
+     * Print data store on the command line.
+     */
+    public void dump() {
+        Debug.info(DD, "");
+        Debug.info(DD, "Row Colours" + rowSett);
+        Debug.info(DD, "Col Colours" + colSett);
+        Debug.info(DD, "");
+
+        Debug.info(DD, "Selected Swatch: " + selectedSwatch);
+        Debug.info(DD, "Swatches[" + swatchColours.length + "] = { ");
+        for (int i = 0; i < swatchColours.length; ++i)
+            Debug.info(DD, "  " + i + " ARGB(" + Integer.toHexString(swatchColours[i]) + ") - " + swatchNames[i]);
+        Debug.info(DD, "}");
+        Debug.info(DD, "");
+
+        Debug.info(DD, "Duplicate Flag: " + duplicate);
+        Debug.info(DD, "Show Guide Lines: " + showGuide);
+        Debug.info(DD, "Guide Line Colour: ARGB(" + Integer.toHexString(guideLineColour) + ")");
+        Debug.info(DD, "");
+
+        Debug.info(DD, "Thread Repeat Count: " + threadCount);
+        Debug.info(DD, "Thread Size: " + threadSize);
+        Debug.info(DD, "Border Thickness: " + borderThickness);
+        Debug.info(DD, "");
+
+        Debug.info(DD, "Name: " + name);
+        Debug.info(DD, "Modified: " + modified);
+        Debug.info(DD, "Hash: " + Long.toHexString(hash));
+        Debug.info(DD, "");
+    }
+
+}
@@ -48,6 +48,21 @@ public enum Default {
     INIT_THREAD_SIZE (6F),
     INIT_THREAD_COUNT (114F),
     MIN_THREAD_COUNT (20F),
+    MAX_THREAD_COUNT (20000F),
+    INIT_EXPORT_SIZE (2000F),
+    MAX_EXPORT_SIZE (100000F),
+    MAX_EXPORT_THREADS (64F),
+    MAX_TILE_SIZE (2048F),
+    LOD_THREAD_SIZE (2F),
+    MIN_BORDER_SIZE (4F),
+    MIN_ZOOM (0.05F),
+    MAX_ZOOM (8F),
+    THUMBNAIL_SIZE (64F),
+    THUMBNAIL_QUEUE_SIZE (64F),
+    THUMBNAIL_CACHE_SIZE (4194304F),
+    RENDER_MEMORY_SIZE (33554432F),
+    RENDER_DISC_SIZE (268435456F),
+    UNDO_MEMORY_SIZE (16777216F),
     INIT_BORDER_THICKNESS (1.0F);
 
     private final int	iValue;
@@ -0,0 +1,180 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Downsampler is a class that renders a tartan design at low zoom, where a
+ * thread is smaller than a pixel, into an ARGB pixel buffer. It has the same
+ * span interface as the Rasterizer.
+ *
+ * Rendering the individual cells at this size only produces aliasing, so
+ * each pixel is given the average colour of the area it covers instead. A
+ * 2/2 twill shows the row and the column threads equally, so the average is
+ * half the average of the rows covered plus half the average of the columns
+ * covered. The averages are found from running totals of the sett colours,
+ * so the cost of a pixel does not depend on how many threads it covers, and
+ * the result does not depend on the phase of the twill.
+ */
+package phillockett65.Tartan;
+
+
+public class Downsampler {
+
+    private static final int CHANNELS = 4;
+
+    private final double size;
+    private final int left;
+    private final int width;
+
+    // Running totals of each channel of the row and column colours.
+    private final long[] rowTotals;
+    private final long[] colTotals;
+
+    // Per pixel column averages, one entry per channel.
+    private final double[] xAverage;
+
+    // Scratch averages for the current scanline.
+    private final double[] yAverage = new double[CHANNELS];
+
+
+
+    /************************************************************************
+     * Support code for the averages.
+     */
+
+    /**
+     * Build the running totals of the channels of the sett colours.
+     * @param threads colour indices of the sett.
+     * @param palette ARGB colours indexed by the thread colour indices.
+     * @return the totals, CHANNELS entries for each thread boundary.
+     */
+    private static long[] buildTotals(int[] threads, int[] palette) {
+        long[] totals = new long[(threads.length + 1) * CHANNELS];
+        for (int i = 0; i < threads.length; ++i) {
+            final int colour = palette[threads[i]];
+            final int base = i * CHANNELS;
+            for (int c = 0; c < CHANNELS; ++c) {
+                totals[base + CHANNELS + c] = totals[base + c] + ((colour >>> (c * 8)) & 0xFF);
+            }
+        }
+
+        return totals;
+    }
+
+    /**
+     * Calculate the total of a channel from the start of the pattern to a
+     * position, allowing for any number of repeats of the sett.
+     * @param totals running totals of the sett.
+     * @param channel to total.
+     * @param pos in threads from the start of the pattern.
+     * @return the total of the channel over the range.
+     */
+    private static double total(long[] totals, int channel, double pos) {
+        final int count = (totals.length / CHANNELS) - 1;
+        final long cell = (long)Math.floor(pos);
+        final long repeats = Math.floorDiv(cell, count);
+        final int index = (int)(cell - (repeats * count));
+
+        final long full = totals[(count * CHANNELS) + channel];
+        final long whole = totals[(index * CHANNELS) + channel];
+        final long next = totals[((index + 1) * CHANNELS) + channel];
+
+        return (repeats * full) + whole + ((pos - cell) * (next - whole));
+    }
+
+    /**
+     * Calculate the average of each channel over a range of threads.
+     * @param totals running totals of the sett.
+     * @param from position of the start of the range in threads.
+     * @param to position of the end of the range in threads.
+     * @param result to store the CHANNELS averages in.
+     * @param offset into result of the first average.
+     */
+    private static void average(long[] totals, double from, double to, double[] result, int offset) {
+        final double span = to - from;
+        for (int c = 0; c < CHANNELS; ++c) {
+            result[offset + c] = (total(totals, c, to) - total(totals, c, from)) / span;
+        }
+    }
+
+
+
+    /************************************************************************
+     * Support code for the Initialization of the Downsampler.
+     */
+
+    /**
+     * Constructor for a window of the image.
+     * @param rows colour indices of the row threads.
+     * @param cols colour indices of the column threads.
+     * @param palette ARGB colours indexed by the thread colour indices.
+     * @param size of a thread in pixels.
+     * @param left first pixel column of the window.
+     * @param width of the window in pixels.
+     */
+    public Downsampler(int[] rows, int[] cols, int[] palette, double size, int left, int width) {
+        this.size = size;
+        this.left = left;
+        this.width = width;
+
+        rowTotals = buildTotals(rows, palette);
+        colTotals = buildTotals(cols, palette);
+
+        xAverage = new double[width * CHANNELS];
+        for (int x = 0; x < width; ++x) {
+            final double from = (left + x) / size;
+            average(colTotals, from, from + (1 / size), xAverage, x * CHANNELS);
+        }
+    }
+
+
+
+    /************************************************************************
+     * Public interface.
+     */
+
+    public int getLeft() { return left; }
+    public int getWidth() { return width; }
+
+    /**
+     * Render part of a single scanline.
+     * @param buffer to render the pixels into.
+     * @param offset into buffer of the first pixel.
+     * @param y the scanline to render.
+     * @param first pixel of the scanline to render, within the window.
+     * @param count of pixels to render.
+     */
+    public void renderSpan(int[] buffer, int offset, int y, int first, int count) {
+        final double from = y / size;
+        average(rowTotals, from, from + (1 / size), yAverage, 0);
+
+        first -= left;
+        for (int x = first; x < first + count; ++x) {
+            final int base = x * CHANNELS;
+            int pixel = 0;
+            for (int c = 0; c < CHANNELS; ++c) {
+                final int value = (int)Math.round((xAverage[base + c] + yAverage[c]) / 2);
+                pixel |= Math.min(value, 0xFF) << (c * 8);
+            }
+
+            buffer[offset++] = pixel;
+        }
+    }
+
+}
@@ -0,0 +1,258 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ExportControl is a class that is responsible for the controls of the 
+ * export image window.
+ */
+package phillockett65.Tartan;
+
+
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.Spinner;
+import javafx.scene.control.Tooltip;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Pane;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.Region;
+import javafx.scene.layout.VBox;
+import javafx.stage.Modality;
+import javafx.stage.Stage;
+import javafx.stage.StageStyle;
+
+public class ExportControl extends Stage {
+
+
+    /************************************************************************
+     * Support code for "Export" pop-up. 
+     */
+
+    private Model model;
+
+    private Scene scene;
+
+    private VBox root;
+
+    private Button export;
+    private Button cancel;
+
+    private double x = 0.0;
+    private double y = 0.0;
+
+    private boolean result = false;
+
+
+
+    /************************************************************************
+      * Support code for the Initialization of the Controller.
+      */
+
+    /**
+     * Builds the top-bar as a HBox and includes the cancel button the mouse 
+     * press and drag handlers.
+     * @return the HBox that represents the top-bar.
+     */
+    private HBox buildTopBar() {
+        HBox topBar = new HBox();
+        topBar.getStyleClass().add("top-bar");
+        topBar.setAlignment(Pos.CENTER);
+        topBar.setPrefHeight(Default.TOP_BAR_HEIGHT.getFloat());
+
+        // Make window dragable.
+        topBar.setOnMousePressed(mouseEvent -> {
+            x = mouseEvent.getSceneX();
+            y = mouseEvent.getSceneY();
+        });
+
+        topBar.setOnMouseDragged(mouseEvent -> {
+            this.setX(mouseEvent.getScreenX() - x);
+            this.setY(mouseEvent.getScreenY() - y);
+        });
+
+        Image image = new Image(getClass().getResourceAsStream("icon32.png"));
+        ImageView imageView = new ImageView(image);
+        imageView.setFitHeight(28);
+        imageView.setFitWidth(28);
+        imageView.setPickOnBounds(true);
+        imageView.setPreserveRatio(true);
+
+        Label heading = new Label(" " + this.getTitle());
+        Region region = new Region();
+
+        Pane cancel = Model.buildCancelButton();
+        cancel.setOnMouseClicked(event -> {
+            result = false;
+            this.close();
+        });
+
+        topBar.getChildren().add(imageView);
+        topBar.getChildren().add(heading);
+        topBar.getChildren().add(region);
+        topBar.getChildren().add(cancel);
+        
+        HBox.setHgrow(region, Priority.ALWAYS);
+
+        return topBar;
+    }
+
+    /**
+     * Builds the options buttons as a HBox and includes the action event 
+     * handlers for both the done and clear buttons.
+     * @return the HBox that represents the options buttons.
+     */
+    private HBox buildOptions() {
+        HBox options = new HBox();
+
+        cancel = new Button("Cancel");
+        export = new Button("Export");
+
+        cancel.setMnemonicParsing(false);
+        export.setMnemonicParsing(false);
+    
+        cancel.setOnAction(event -> {
+            result = false;
+            this.close();
+        });
+
+        export.setOnAction(event -> {
+            result = true;
+            this.close();
+        });
+
+        cancel.setTooltip(new Tooltip("Cancel export"));
+        export.setTooltip(new Tooltip("Export the tartan as an image of the specified size"));
+
+        Region region = new Region();
+
+        options.getChildren().add(cancel);
+        options.getChildren().add(region);
+        options.getChildren().add(export);
+
+        HBox.setHgrow(region, Priority.ALWAYS);
+
+        return options;
+    }
+
+    /**
+     * Builds the image size and parallelism spinners as a GridPane.
+     * @return the GridPane that captures the spinners.
+     */
+    private GridPane buildSizePanel() {
+        GridPane grid = new GridPane();
+        grid.setHgap(10);
+        grid.setVgap(10);
+
+        Spinner<Integer> widthSpinner = new Spinner<Integer>(model.getExportWidthSVF());
+        Spinner<Integer> heightSpinner = new Spinner<Integer>(model.getExportHeightSVF());
+        Spinner<Integer> threadsSpinner = new Spinner<Integer>(model.getExportParallelismSVF());
+
+        widthSpinner.setEditable(true);
+        heightSpinner.setEditable(true);
+
+        widthSpinner.setTooltip(new Tooltip("Set the width of the image in pixels"));
+        heightSpinner.setTooltip(new Tooltip("Set the height of the image in pixels"));
+        threadsSpinner.setTooltip(new Tooltip("Set the number of threads used to render the image"));
+
+        grid.add(new Label("Width:"), 0, 0);
+        grid.add(widthSpinner, 1, 0);
+        grid.add(new Label("Height:"), 0, 1);
+        grid.add(heightSpinner, 1, 1);
+        grid.add(new Label("Threads:"), 0, 2);
+        grid.add(threadsSpinner, 1, 2);
+
+        return grid;
+    }
+
+    /**
+     * Builds the User controls as a VBox.
+     * @return the VBox that captures the User controls.
+     */
+    private VBox buildControlPanel() {
+        VBox panel = new VBox();
+
+        panel.setSpacing(10);
+        panel.setPadding(new Insets(10.0));
+
+        Label prompt = new Label("Enter the size of the image in pixels:");
+
+        panel.getChildren().add(prompt);
+        panel.getChildren().add(buildSizePanel());
+        panel.getChildren().add(buildOptions());
+
+        return panel;
+    }
+
+    /**
+     * Initialize the control.
+     */
+    private void init(String title) {
+        model = Model.getInstance();
+
+        this.setTitle(title);
+        this.resizableProperty().setValue(false);
+        this.initStyle(StageStyle.UNDECORATED);
+        this.initModality(Modality.APPLICATION_MODAL);
+
+        root = new VBox();
+
+        root.getChildren().add(buildTopBar());
+        root.getChildren().add(buildControlPanel());
+        root.getStylesheets().add(getClass().getResource("application.css").toExternalForm());
+
+        scene = new Scene(root);
+
+        this.setScene(scene);
+    }
+
+
+
+    /************************************************************************
+     * Support code for the Operation of the Controller.
+     */
+
+    /**
+     * Constructor.
+     */
+    private ExportControl() {
+        super();
+    }
+
+
+    /**
+     * Construct and launch the Export Tartan Control and wait for user input.
+     * @return true if the export was requested, false if cancelled.
+     */
+    public static boolean showControl(String title) {
+        ExportControl control = new ExportControl();
+
+        control.init(title);
+        control.showAndWait();
+
+        return control.result;
+    }
+
+}
@@ -0,0 +1,358 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+/*
+ * History is a class that records the edits made to a design so that they
+ * can be undone and redone.
+ *
+ * Each Edit holds only what it changed, such as the threads it replaced
+ * and the threads it put in their place, never a copy of the whole design,
+ * so undoing or redoing it costs in proportion to the change. Edits made
+ * in quick succession are merged where the Edit allows, so that holding
+ * down a key or a spinner button is undone in one step, and edits made by
+ * a single user action can be grouped, see begin() and end().
+ *
+ * The memory held by the recorded edits is limited: the oldest edits are
+ * forgotten when the limit is exceeded. Edits recorded while an edit is
+ * being undone or redone are ignored, as they are the side effects of
+ * putting the design back. Like the Warp, it is pure data and is not 
+ * thread-safe.
+ */
+package phillockett65.Tartan;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+
+public class History {
+
+    // Longest time between edits that may be merged, in milliseconds.
+    private static final long MERGE_TIME = 500;
+
+    /**
+     * Edit is a change to the design that can be undone and redone.
+     */
+    public interface Edit {
+        /**
+         * Put the design back as it was before the edit.
+         */
+        void undo();
+
+        /**
+         * Make the edit again.
+         */
+        void redo();
+
+        /**
+         * @return an estimate of the memory held by the edit in bytes.
+         */
+        long getSize();
+
+        /**
+         * Combine this edit with the edit that followed it.
+         * @param next edit made after this one.
+         * @return a single edit equivalent to both, or null if they should 
+         * be kept apart.
+         */
+        Edit merge(Edit next);
+
+        /**
+         * @return true if the edit changes nothing, such as two rotations
+         * that cancel out, so that it need not be kept.
+         */
+        default boolean isEmpty() { return false; }
+    }
+
+    /**
+     * Group is an Edit made up of several edits, made by a single action.
+     */
+    private static class Group implements Edit {
+        private final Edit[] edits;
+
+        public Group(Edit[] edits) {
+            this.edits = edits;
+        }
+
+        @Override
+        public void undo() {
+            for (int i = edits.length - 1; i >= 0; --i) {
+                edits[i].undo();
+            }
+        }
+
+        @Override
+        public void redo() {
+            for (Edit edit : edits) {
+                edit.redo();
+            }
+        }
+
+        @Override
+        public long getSize() {
+            long size = 16;
+            for (Edit edit : edits) {
+                size += edit.getSize();
+            }
+
+            return size;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            for (Edit edit : edits) {
+                if (!edit.isEmpty()) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Groups of the same length are merged if each of their edits is.
+         */
+        @Override
+        public Edit merge(Edit next) {
+            if (!(next instanceof Group)) {
+                return null;
+            }
+
+            final Edit[] others = ((Group)next).edits;
+            if (others.length != edits.length) {
+                return null;
+            }
+
+            Edit[] merged = new Edit[edits.length];
+            for (int i = 0; i < edits.length; ++i) {
+                merged[i] = edits[i].merge(others[i]);
+                if (merged[i] == null) {
+                    return null;
+                }
+            }
+
+            return new Group(merged);
+        }
+    }
+
+    private final long capacity;
+
+    private final ArrayDeque<Edit> undoStack = new ArrayDeque<Edit>();
+    private final ArrayDeque<Edit> redoStack = new ArrayDeque<Edit>();
+    private long size = 0;
+
+    // Time of the last edit recorded, for merging.
+    private long lastTime = 0;
+
+    // Edits of the open group, and the nesting depth of begin().
+    private final ArrayList<Edit> group = new ArrayList<Edit>();
+    private int depth = 0;
+
+    private boolean replaying = false;
+
+
+
+    /************************************************************************
+     * Support code for the Initialization of the History.
+     */
+
+    /**
+     * Constructor.
+     * @param capacity maximum memory in bytes held by the recorded edits.
+     */
+    public History(long capacity) {
+        this.capacity = capacity;
+    }
+
+
+
+    /************************************************************************
+     * Support code for the stacks.
+     */
+
+    /**
+     * Forget all the edits that can be redone.
+     */
+    private void clearRedo() {
+        for (Edit edit : redoStack) {
+            size -= edit.getSize();
+        }
+        redoStack.clear();
+    }
+
+    /**
+     * Forget the oldest edits until the history is within its capacity.
+     */
+    private void trim() {
+        while ((size > capacity) && !undoStack.isEmpty()) {
+            size -= undoStack.removeLast().getSize();
+        }
+    }
+
+    /**
+     * Add a completed edit to the undo stack, merging it with the previous
+     * edit if they were made in quick succession. An edit that changes 
+     * nothing, including one merged from edits that cancel out, is dropped.
+     * @param edit to add.
+     */
+    private void push(Edit edit) {
+        clearRedo();
+
+        final long now = System.currentTimeMillis();
+        final Edit previous = undoStack.peekFirst();
+        if ((previous != null) && ((now - lastTime) < MERGE_TIME)) {
+            final Edit merged = previous.merge(edit);
+            if (merged != null) {
+                undoStack.removeFirst();
+                size -= previous.getSize();
+                edit = merged;
+            }
+        }
+
+        if (edit.isEmpty()) {
+            // Don't merge later edits with the edit now on top.
+            lastTime = 0;
+
+            return;
+        }
+        lastTime = now;
+
+        undoStack.addFirst(edit);
+        size += edit.getSize();
+        trim();
+    }
+
+
+
+    /************************************************************************
+     * Public interface.
+     */
+
+    /**
+     * @return the memory held by the recorded edits in bytes.
+     */
+    public long getSize() { return size; }
+
+    public boolean canUndo() { return !undoStack.isEmpty(); }
+    public boolean canRedo() { return !redoStack.isEmpty(); }
+
+    /**
+     * Record an edit that has just been made.
+     * @param edit made, ignored if null.
+     */
+    public void record(Edit edit) {
+        if ((edit == null) || replaying) {
+            return;
+        }
+
+        if (depth > 0) {
+            group.add(edit);
+        } else {
+            push(edit);
+        }
+    }
+
+    /**
+     * Start a group of edits that are undone and redone together. Groups
+     * may be nested, only the outermost group counts.
+     */
+    public void begin() {
+        ++depth;
+    }
+
+    /**
+     * End a group of edits started by begin().
+     */
+    public void end() {
+        if ((depth == 0) || (--depth > 0)) {
+            return;
+        }
+
+        if (group.size() == 1) {
+            push(group.get(0));
+        } else if (group.size() > 1) {
+            push(new Group(group.toArray(new Edit[group.size()])));
+        }
+        group.clear();
+    }
+
+    /**
+     * Undo the most recent edit.
+     * @return true if there was an edit to undo, false otherwise.
+     */
+    public boolean undo() {
+        final Edit edit = undoStack.pollFirst();
+        if (edit == null) {
+            return false;
+        }
+
+        ignore(edit::undo);
+        redoStack.addFirst(edit);
+        lastTime = 0;
+
+        return true;
+    }
+
+    /**
+     * Redo the most recently undone edit.
+     * @return true if there was an edit to redo, false otherwise.
+     */
+    public boolean redo() {
+        final Edit edit = redoStack.pollFirst();
+        if (edit == null) {
+            return false;
+        }
+
+        ignore(edit::redo);
+        undoStack.addFirst(edit);
+        lastTime = 0;
+
+        return true;
+    }
+
+    /**
+     * Run some code without recording any edits it makes, such as to bring
+     * the controls into line after an undo or redo.
+     * @param action to run.
+     */
+    public void ignore(Runnable action) {
+        final boolean previous = replaying;
+        replaying = true;
+        try {
+            action.run();
+        } finally {
+            replaying = previous;
+        }
+    }
+
+    /**
+     * Forget all the recorded edits, such as when a different design is
+     * loaded.
+     */
+    public void clear() {
+        undoStack.clear();
+        redoStack.clear();
+        group.clear();
+        depth = 0;
+        size = 0;
+        lastTime = 0;
+    }
+
+}
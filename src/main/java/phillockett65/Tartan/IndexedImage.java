@@ -0,0 +1,163 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * IndexedImage is a class that holds an image as a buffer of swatch indices
+ * and displays it through a palette look-up. The indices are rendered once,
+ * so changing a swatch colour only re-maps the buffer to the image and does
+ * not re-render the tartan.
+ */
+package phillockett65.Tartan;
+
+import java.nio.ByteBuffer;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+
+public class IndexedImage {
+
+    // Index of the thread border colour, following the swatch colours.
+    public static final int BORDER = Default.SWATCH_COUNT.getInt();
+
+    // Identity palette, so that a Rasterizer generates swatch indices.
+    public static final int[] INDICES = buildIndices();
+
+    private final int width;
+    private final int height;
+    private final byte[] indices;
+    private final WritableImage image;
+
+    private PixelFormat<ByteBuffer> format;
+
+    // Scratch buffer for a single rendered span.
+    private int[] span;
+
+
+
+    /************************************************************************
+     * Support code for the Initialization of the IndexedImage.
+     */
+
+    /**
+     * Build the identity palette.
+     * @return an array where each swatch index maps to itself.
+     */
+    private static int[] buildIndices() {
+        int[] result = new int[BORDER];
+        for (int i = 0; i < BORDER; ++i) {
+            result[i] = i;
+        }
+
+        return result;
+    }
+
+    /**
+     * Constructor.
+     * @param width of the image in pixels.
+     * @param height of the image in pixels.
+     * @param format palette to display the indices with.
+     */
+    public IndexedImage(int width, int height, PixelFormat<ByteBuffer> format) {
+        this.width = width;
+        this.height = height;
+        this.format = format;
+
+        indices = new byte[width * height];
+        image = new WritableImage(width, height);
+        span = new int[width];
+    }
+
+
+
+    /************************************************************************
+     * Public interface.
+     */
+
+    /**
+     * Build the palette look-up used to display the swatch indices.
+     * @param palette ARGB colours indexed by swatch.
+     * @param border ARGB colour of the thread borders.
+     * @return the byte indexed pixel format for the palette.
+     */
+    public static PixelFormat<ByteBuffer> createFormat(int[] palette, int border) {
+        int[] colours = new int[BORDER + 1];
+        System.arraycopy(palette, 0, colours, 0, Math.min(palette.length, BORDER));
+        colours[BORDER] = border;
+
+        return PixelFormat.createByteIndexedInstance(colours);
+    }
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    public Image getImage() { return image; }
+
+    /**
+     * Render a rectangular region of the image and display it. The
+     * rasterizer must have been built with the INDICES palette and the
+     * BORDER index.
+     * @param rasterizer that generates the swatch indices.
+     * @param srcX position in the rasterizer of the first pixel.
+     * @param srcY position in the rasterizer of the first scanline.
+     * @param x position of the region in the image.
+     * @param y position of the region in the image.
+     * @param w width of the region.
+     * @param h height of the region.
+     */
+    public void render(Rasterizer rasterizer, int srcX, int srcY, int x, int y, int w, int h) {
+        if ((w <= 0) || (h <= 0)) {
+            return;
+        }
+
+        for (int line = 0; line < h; ++line) {
+            rasterizer.renderSpan(span, 0, srcY + line, srcX, w);
+
+            int pos = ((y + line) * width) + x;
+            for (int i = 0; i < w; ++i) {
+                indices[pos++] = (byte)span[i];
+            }
+        }
+
+        image.getPixelWriter().setPixels(x, y, w, h, format, indices, (y * width) + x, width);
+    }
+
+    /**
+     * Render the whole image and display it.
+     * @param rasterizer that generates the swatch indices.
+     * @param srcX position in the rasterizer of the first pixel.
+     * @param srcY position in the rasterizer of the first scanline.
+     */
+    public void render(Rasterizer rasterizer, int srcX, int srcY) {
+        render(rasterizer, srcX, srcY, 0, 0, width, height);
+    }
+
+    /**
+     * Display the image with a different palette. The swatch indices are
+     * not re-rendered.
+     * @param format palette to display the indices with.
+     */
+    public void setFormat(PixelFormat<ByteBuffer> format) {
+        this.format = format;
+
+        image.getPixelWriter().setPixels(0, 0, width, height, format, indices, 0, width);
+    }
+
+}
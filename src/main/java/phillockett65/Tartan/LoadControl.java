@@ -24,14 +24,21 @@
  */
 package phillockett65.Tartan;
 
+import java.text.DateFormat;
+import java.util.Date;
+
 import javafx.beans.value.ChangeListener;
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.beans.value.ObservableValue;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
 import javafx.scene.control.ListView;
+import javafx.scene.control.TextField;
 import javafx.scene.control.Tooltip;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
@@ -39,7 +46,10 @@ import javafx.scene.layout.HBox;
 import javafx.scene.layout.Pane;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.Region;
+import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import javafx.stage.StageStyle;
@@ -62,6 +72,19 @@ public class LoadControl extends Stage {
     private Button load;
     private Button cancel;
 
+    private Label details;
+    private HBox palette;
+
+    private TextField search;
+    private ListView<String> selection;
+
+    // Keeps the search results up to date as the library changes.
+    private final ListChangeListener<String> libraryListener = change -> {
+        if (!search.getText().isBlank()) {
+            filter();
+        }
+    };
+
     private double x = 0.0;
     private double y = 0.0;
 
@@ -159,20 +182,114 @@ public class LoadControl extends Stage {
         return options;
     }
 
+    /**
+     * Builds the details display of the selected tartan.
+     * @return the VBox that represents the details display.
+     */
+    private VBox buildDetails() {
+        VBox panel = new VBox();
+        panel.setSpacing(4);
+
+        details = new Label(" ");
+        palette = new HBox();
+        palette.setSpacing(2);
+        palette.setPrefHeight(16);
+
+        panel.getChildren().add(details);
+        panel.getChildren().add(palette);
+
+        return panel;
+    }
+
+    /**
+     * Show the details of a tartan, read from the header of its settings 
+     * file only.
+     * @param tartan name of the tartan, or null to clear the details.
+     */
+    private void showDetails(String tartan) {
+        palette.getChildren().clear();
+        final Metadata metadata = (tartan == null) ? null : model.getMetadata(tartan);
+        if (metadata == null) {
+            details.setText(" ");
+            return;
+        }
+
+        final String saved = DateFormat.getDateTimeInstance().format(new Date(metadata.getModified()));
+        if (metadata.getColumnCount() < 0) {
+            details.setText("Saved: " + saved);
+        } else {
+            details.setText(metadata.getColumnCount() + " x " + metadata.getRowCount() + " threads, saved: " + saved);
+        }
+
+        if (metadata.isComplete()) {
+            for (int argb : metadata.getPalette()) {
+                final Color colour = Color.rgb((argb >> 16) & 0xFF, (argb >> 8) & 0xFF, argb & 0xFF, (argb >>> 24) / 255.0);
+                palette.getChildren().add(new Rectangle(16, 16, colour));
+            }
+        }
+    }
+
+    /**
+     * TartanCell is a list cell that shows the name of a tartan with its
+     * thumbnail. The thumbnail is made in the background if need be, and 
+     * is only shown if the cell still holds the same tartan when it is
+     * ready.
+     */
+    private class TartanCell extends ListCell<String> {
+        private final ImageView thumbnail = new ImageView();
+        private final StackPane frame = new StackPane(thumbnail);
+
+        public TartanCell() {
+            final double size = Default.THUMBNAIL_SIZE.getFloat();
+            frame.setMinSize(size, size);
+            frame.setPrefSize(size, size);
+        }
+
+        @Override
+        protected void updateItem(String item, boolean empty) {
+            super.updateItem(item, empty);
+
+            if (empty || (item == null)) {
+                setText(null);
+                setGraphic(null);
+                thumbnail.setImage(null);
+
+                return;
+            }
+
+            setText(item);
+            setGraphic(frame);
+            thumbnail.setImage(model.getThumbnail(item, image -> {
+                if (item.equals(getItem())) {
+                    thumbnail.setImage(image);
+                }
+            }));
+        }
+    }
+
     /**
      * Builds the selected pairs display as a HBox.
      * @return the HBox that represents the selected pairs display.
      */
     private ListView<String> buildListView() {
-        ListView<String> selection = new ListView<String>();
+        selection = new ListView<String>();
 
-        selection.setPrefSize(350, 240);
+        selection.setPrefSize(350, 360);
+        selection.setFixedCellSize(Default.THUMBNAIL_SIZE.getFloat() + 8);
+        selection.setCellFactory(list -> new TartanCell());
         selection.setItems(model.getTartanList());
         selection.getSelectionModel().selectedItemProperty().addListener(new ChangeListener<String>() {
             @Override
             public void changed(ObservableValue<? extends String> observable, String oldValue, String newValue) {
+                // The list is refreshed in the background, which may clear
+                // the selection.
+                if (newValue == null) {
+                    return;
+                }
+
                 model.setName(newValue);
                 load.setDisable(false);
+                showDetails(newValue);
             }
         } );
 
@@ -188,6 +305,37 @@ public class LoadControl extends Stage {
         return selection;
     }
 
+    /**
+     * Show the tartans that match the search text, or all of them if there
+     * is no search text.
+     */
+    private void filter() {
+        final String query = search.getText();
+        if ((query == null) || query.isBlank()) {
+            if (selection.getItems() != model.getTartanList()) {
+                selection.setItems(model.getTartanList());
+            }
+        } else {
+            selection.setItems(FXCollections.observableArrayList(model.searchTartans(query)));
+        }
+    }
+
+    /**
+     * Builds the search field, which filters the list as the user types.
+     * @return the TextField that captures the search text.
+     */
+    private TextField buildSearchField() {
+        search = new TextField();
+        search.setPromptText("Search names and colours");
+        search.textProperty().addListener((observable, oldValue, newValue) -> filter());
+
+        model.getTartanList().addListener(libraryListener);
+
+        search.setTooltip(new Tooltip("Type the start of any word of a tartan or swatch name"));
+
+        return search;
+    }
+
     /**
      * Builds the User controls as a VBox.
      * @return the VBox that captures the User controls.
@@ -201,7 +349,9 @@ public class LoadControl extends Stage {
         Label prompt = new Label("Select the tartan to load:");
 
         panel.getChildren().add(prompt);
+        panel.getChildren().add(buildSearchField());
         panel.getChildren().add(buildListView());
+        panel.getChildren().add(buildDetails());
         panel.getChildren().add(buildOptions());
 
         return panel;
@@ -227,6 +377,7 @@ public class LoadControl extends Stage {
         scene = new Scene(root);
 
         this.setScene(scene);
+        this.setOnHidden(event -> model.getTartanList().removeListener(libraryListener));
     }
 
 
@@ -0,0 +1,99 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+/*
+ * Metadata is a class that holds the details of a saved design that can be
+ * read from the header of its settings file, without reading the rest of
+ * the file or touching the Model. It is pure data.
+ */
+package phillockett65.Tartan;
+
+import java.util.Arrays;
+
+
+public class Metadata {
+
+    private final String name;
+    private final int columnCount;
+    private final int rowCount;
+    private final int[] palette;
+    private final String[] swatchNames;
+    private final long modified;
+    private final long hash;
+
+
+
+    /************************************************************************
+     * Support code for the Initialization of the Metadata.
+     */
+
+    /**
+     * Constructor.
+     * @param name of the design.
+     * @param columnCount number of threads in the column sett, or -1 if
+     * not known.
+     * @param rowCount number of threads in the row sett, or -1 if not known.
+     * @param palette ARGB colours of the swatches, or null if not known.
+     * @param swatchNames names of the swatches, or null if not known.
+     * @param modified time the design was saved in milliseconds since the
+     * epoch.
+     * @param hash of the contents of the design, or 0 if not known.
+     */
+    public Metadata(String name, int columnCount, int rowCount, int[] palette, String[] swatchNames, long modified, long hash) {
+        this.name = name;
+        this.columnCount = columnCount;
+        this.rowCount = rowCount;
+        this.palette = (palette == null) ? null : Arrays.copyOf(palette, palette.length);
+        this.swatchNames = (swatchNames == null) ? null : Arrays.copyOf(swatchNames, swatchNames.length);
+        this.modified = modified;
+        this.hash = hash;
+    }
+
+
+
+    /************************************************************************
+     * Public interface.
+     */
+
+    public String getName() { return name; }
+    public int getColumnCount() { return columnCount; }
+    public int getRowCount() { return rowCount; }
+    public long getModified() { return modified; }
+    public long getHash() { return hash; }
+
+    /**
+     * @return a copy of the ARGB colours of the swatches, or null if not
+     * known.
+     */
+    public int[] getPalette() { return (palette == null) ? null : Arrays.copyOf(palette, palette.length); }
+
+    /**
+     * @return a copy of the names of the swatches, or null if not known.
+     */
+    public String[] getSwatchNames() { return (swatchNames == null) ? null : Arrays.copyOf(swatchNames, swatchNames.length); }
+
+    /**
+     * @return true if the details came from a header, false if only the
+     * name and the time are known, as for a DataStore1 file.
+     */
+    public boolean isComplete() { return palette != null; }
+
+}
@@ -25,21 +25,22 @@
  */
 package phillockett65.Tartan;
 
-import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Consumer;
 
-import javax.imageio.ImageIO;
-
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
-import javafx.embed.swing.SwingFXUtils;
 import javafx.scene.Parent;
-import javafx.scene.SnapshotParameters;
-import javafx.scene.canvas.Canvas;
-import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.control.SpinnerValueFactory;
-import javafx.scene.image.WritableImage;
+import javafx.scene.image.Image;
 import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Line;
@@ -53,8 +54,12 @@ public class Model {
     private static final int DD = 0;
 
     private final static String DATAFILE = "Settings.dat";
+    private final static String CATALOGUE = "catalogue.dat";
     private final static String SWATCHES = "swatches";
     private final static String IMAGEFILE = "tartan.png";
+    private final static String THUMBNAIL = "thumbnail.png";
+    private final static String RENDERCACHE = ".render-cache";
+    private final static String EXPORTFILE = "print-";
 
     private static Model model = new Model();
 
@@ -115,6 +120,22 @@ public class Model {
 
 
 
+    /**
+     * Convert a Color to a packed ARGB value.
+     * @param colour to convert.
+     * @return the colour as a packed ARGB int.
+     */
+    public static int toARGB(Color colour) {
+        final int a = (int)Math.round(colour.getOpacity() * 255);
+        final int r = (int)Math.round(colour.getRed() * 255);
+        final int g = (int)Math.round(colour.getGreen() * 255);
+        final int b = (int)Math.round(colour.getBlue() * 255);
+
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+
+
     /************************************************************************
      * Support code for the Initialization of the Model.
      */
@@ -148,6 +169,7 @@ public class Model {
 
         initializeColourPalette();
         initializeLayout();
+        initializeExport();
         initializeSample();
         initializeStatusLine();
 
@@ -164,12 +186,15 @@ public class Model {
         sample.init();
 
         defaultSettings();
+        history.clear();
     }
 
     /**
-     * Set all attributes to the default values.
+     * Set all attributes to the default values. The changes to the design
+     * are recorded as a single edit, so that they can be undone.
      */
     public void defaultSettings() {
+        history.begin();
         clearSwatches();
         setSelectedColourIndex(1);
         setSwatch(0, Color.WHITE, "Blank");
@@ -190,6 +215,7 @@ public class Model {
 
         sample.clear();
         sample.syncThreadSize();
+        history.end();
     }
 
     public PrimaryController getController() { return controller; }
@@ -197,6 +223,9 @@ public class Model {
     public String getTitle() { return stage.getTitle(); }
 
     public void close() {
+        saver.close();
+        catalogue.close();
+        thumbnails.close();
         sample.close();
         stage.close();
     }
@@ -207,20 +236,12 @@ public class Model {
      */
 
     /**
-     * Call the static DataStore1 method, to save the data to disc.
-     * @return true if data successfully written to disc, false otherwise.
-     */
-    private boolean writeData() {
-        return DataStore1.writeData();
-    }
-
-
-    /**
-     * Call the static DataStore1 method, to read the data from disc.
+     * Call the static DataStore2 method, to read the data from disc. Older
+     * DataStore1 files are also read.
      * @return true if data successfully read from disc, false otherwise.
      */
     private boolean readData() {
-        if (DataStore1.readData() == true) {
+        if (DataStore2.readData() == true) {
             return true;
         }
 
@@ -234,12 +255,70 @@ public class Model {
      */
 
     public void setRowList(ArrayList<Integer> list) {
+        history.begin();
         setRowCountSVF(list.size());
         sample.setRowList(list);
+        history.end();
     }
     public void setColumnList(ArrayList<Integer> list) {
+        history.begin();
         setColumnCountSVF(list.size());
         sample.setColumnList(list);
+        history.end();
+    }
+
+    public void setRowSett(Sett sett) {
+        history.begin();
+        setRowCountSVF(sett.getLength());
+        sample.setRowSett(sett);
+        history.end();
+    }
+    public void setColumnSett(Sett sett) {
+        history.begin();
+        setColumnCountSVF(sett.getLength());
+        sample.setColumnSett(sett);
+        history.end();
+    }
+
+    /**
+     * Build the threadcount of the column sett, choosing a colour code for
+     * each swatch used.
+     * @return the threadcount of the design.
+     */
+    public Threadcount getThreadcount() {
+        final Sett sett = getColumnSett();
+        String[] codes = new String[Default.SWATCH_COUNT.getInt()];
+        for (int run = 0; run < sett.getRunCount(); ++run) {
+            final int index = sett.getRunColour(run);
+            if (codes[index] == null) {
+                codes[index] = Threadcount.chooseCode(getSwatchName(index), toARGB(getSwatchColour(index)), codes);
+            }
+        }
+
+        return new Threadcount(null, codes, sett);
+    }
+
+    /**
+     * Replace the design with a threadcount. Each colour code is given a
+     * swatch of the usual colour for the code, and the sett is used for
+     * both the columns and the rows.
+     * @param threadcount to use.
+     */
+    public void setThreadcount(Threadcount threadcount) {
+        history.begin();
+        final String[] codes = threadcount.getCodes();
+        for (int i = 0; i < codes.length; ++i) {
+            final int argb = Threadcount.getStandardColour(codes[i]);
+            final Color colour = Color.rgb((argb >> 16) & 0xFF, (argb >> 8) & 0xFF, argb & 0xFF);
+            setSwatch(i, colour, Threadcount.getStandardName(codes[i]));
+        }
+        sample.syncColour();
+
+        // Set up the swatches before we use them in the rows and columns.
+        setColumnSett(threadcount.getSett());
+        setRowSett(threadcount.getSett());
+        setDuplicate(true);
+        history.end();
     }
 
     /**
@@ -247,10 +326,12 @@ public class Model {
      * @param size the column count is to be set to.
      */
     public void setColumnCount(int size) {
+        history.begin();
         sample.setColumnCount(size);
         if (duplicate) {
             setRowCountSVF(getColumnCount());
         }
+        history.end();
     }
     /**
      * Called from SVF listener, so we don't update the SVF.
@@ -260,6 +341,8 @@ public class Model {
 
     public ArrayList<Integer> getRowList() { return sample.getRowList(); }
     public ArrayList<Integer> getColumnList() { return sample.getColumnList(); }
+    public Sett getRowSett() { return sample.getRowSett(); }
+    public Sett getColumnSett() { return sample.getColumnSett(); }
 
     public int getColumnCount() { return sample.getColumnCount(); }
     public int getRowCount() { return sample.getRowCount(); }
@@ -276,43 +359,265 @@ public class Model {
 
 
 
+    /************************************************************************
+     * Support code for the edit history.
+     */
+
+    private final History history = new History(Default.UNDO_MEMORY_SIZE.getInt());
+
+    /**
+     * SwatchEdit is the Edit of the colour and name of a swatch.
+     */
+    private class SwatchEdit implements History.Edit {
+        private final int index;
+        private final Color oldColour;
+        private final String oldName;
+        private final Color newColour;
+        private final String newName;
+
+        public SwatchEdit(int index, Color oldColour, String oldName, Color newColour, String newName) {
+            this.index = index;
+            this.oldColour = oldColour;
+            this.oldName = oldName;
+            this.newColour = newColour;
+            this.newName = newName;
+        }
+
+        private void apply(Color colour, String name) {
+            final ColourSwatch swatch = colourSwatches.get(index);
+            swatch.colour = colour;
+            swatch.name = name;
+            sample.syncColour();
+        }
+
+        @Override
+        public void undo() { apply(oldColour, oldName); }
+
+        @Override
+        public void redo() { apply(newColour, newName); }
+
+        @Override
+        public long getSize() { return 64 + (2 * (oldName.length() + newName.length())); }
+
+        @Override
+        public boolean isEmpty() { return oldColour.equals(newColour) && oldName.equals(newName); }
+
+        /**
+         * Successive changes to the same swatch, such as dragging in the 
+         * colour picker or typing the name, are merged.
+         */
+        @Override
+        public History.Edit merge(History.Edit next) {
+            if (!(next instanceof SwatchEdit)) {
+                return null;
+            }
+
+            final SwatchEdit other = (SwatchEdit)next;
+            if (other.index != index) {
+                return null;
+            }
+
+            return new SwatchEdit(index, oldColour, oldName, other.newColour, other.newName);
+        }
+    }
+
+    /**
+     * DuplicateEdit is the Edit of the duplicate the column threads for the
+     * rows setting. The threads changed with it are recorded separately.
+     */
+    private class DuplicateEdit implements History.Edit {
+        private final boolean state;
+
+        public DuplicateEdit(boolean state) {
+            this.state = state;
+        }
+
+        @Override
+        public void undo() { duplicate = !state; }
+
+        @Override
+        public void redo() { duplicate = state; }
+
+        @Override
+        public long getSize() { return 16; }
+
+        @Override
+        public History.Edit merge(History.Edit next) { return null; }
+    }
+
+    /**
+     * Record the change of a swatch, if anything has changed.
+     */
+    private void recordSwatch(int index, Color oldColour, String oldName) {
+        final ColourSwatch swatch = colourSwatches.get(index);
+        if (swatch.colour.equals(oldColour) && swatch.name.equals(oldName)) {
+            return;
+        }
+
+        history.record(new SwatchEdit(index, oldColour, oldName, swatch.colour, swatch.name));
+    }
+
+    /**
+     * Synchronise the spinners, the sample and the controls to the design 
+     * after an undo or redo, without recording the changes made.
+     */
+    private void syncHistory() {
+        history.ignore(() -> {
+            syncColumnCountSVF();
+            syncRowCountSVF();
+            sample.syncColour();
+            sample.syncDesign();
+            controller.syncUI();
+        });
+    }
+
+    public History getHistory() { return history; }
+    public boolean canUndo() { return history.canUndo(); }
+    public boolean canRedo() { return history.canRedo(); }
+
+    /**
+     * Undo the most recent edit of the design.
+     * @return true if there was an edit to undo, false otherwise.
+     */
+    public boolean undo() {
+        if (!history.undo()) {
+            return false;
+        }
+
+        syncHistory();
+
+        return true;
+    }
+
+    /**
+     * Redo the most recently undone edit of the design.
+     * @return true if there was an edit to redo, false otherwise.
+     */
+    public boolean redo() {
+        if (!history.redo()) {
+            return false;
+        }
+
+        syncHistory();
+
+        return true;
+    }
+
+
+
     /************************************************************************
      * Support code for "Load" panel.
      */
 
     private ObservableList<String> tartanList = FXCollections.observableArrayList();
 
+    private Catalogue catalogue;
+
+    // Catalogue changes waiting to be applied to tartanList on the FX thread,
+    // the metadata of an added or updated design, null for a removed one.
+    private final HashMap<String, Metadata> pendingTartans = new HashMap<String, Metadata>();
+    private boolean pendingFlush = false;
+
+    private final SearchIndex searchIndex = new SearchIndex();
+    private final static int SEARCH_LIMIT = 500;
+
+    private Thumbnails thumbnails;
+
     /**
-     * Builds a list of tartans using the names of directories in the base 
-     * directory.
-     * @return true if the list contains entries, alse otherwise.
+     * Called by the catalogue, on any thread, when a design is added, 
+     * updated or removed. The changes are gathered up and applied to the
+     * list once per pulse, so a scan of a large library does not flood the
+     * FX thread.
+     * @param name of the design directory.
+     * @param metadata of the design, or null if it has been removed.
      */
-    private boolean fillDirectoryList() {
-
-        final String directoryName = getBaseDirectory();
-        final File tartanPath= new File(directoryName);
+    private void catalogueChanged(String name, Metadata metadata) {
+        synchronized (pendingTartans) {
+            pendingTartans.put(name, metadata);
+            if (!pendingFlush) {
+                pendingFlush = true;
+                Platform.runLater(this::fillDirectoryList);
+            }
+        }
+    }
 
-        tartanList.clear();
-        for (final File tartan : tartanPath.listFiles()) {
-            if (tartan.isDirectory()) {
-                Debug.info(DD, directoryName + "\\" + tartan.getName());
-                tartanList.add(tartan.getName());
+    /**
+     * Apply the pending catalogue changes to the list of tartans, keeping
+     * the list in alphabetical order, and to the search index.
+     */
+    private void fillDirectoryList() {
+        TreeSet<String> names = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
+        names.addAll(tartanList);
+
+        synchronized (pendingTartans) {
+            for (Map.Entry<String, Metadata> change : pendingTartans.entrySet()) {
+                final String name = change.getKey();
+                final Metadata metadata = change.getValue();
+                thumbnails.invalidate(name);
+                if (metadata != null) {
+                    names.add(name);
+                    searchIndex.add(name, metadata.getSwatchNames());
+                } else {
+                    names.remove(name);
+                    searchIndex.remove(name);
+                }
             }
+            pendingTartans.clear();
+            pendingFlush = false;
         }
 
-        return !tartanList.isEmpty();
+        if (names.size() != tartanList.size() || !tartanList.containsAll(names)) {
+            tartanList.setAll(names);
+        }
     }
 
     /**
-     * Provide access to the latest list of tartans.
+     * Provide access to the list of tartans. The list is kept up to date in
+     * the background, so it may still be filling when first displayed.
      * @return the latest list of tartans.
      */
     public ObservableList<String> getTartanList() {
-        fillDirectoryList();
-
         return tartanList;
     }
 
+    /**
+     * Find the tartans whose name, or the name of one of whose swatches, has
+     * words starting with the words of a query.
+     * @param query words typed by the user.
+     * @return the names of the matching tartans, best match first.
+     */
+    public ArrayList<String> searchTartans(String query) {
+        return searchIndex.search(query, SEARCH_LIMIT);
+    }
+
+    /**
+     * Get the thumbnail image of a saved design. Called on the FX thread.
+     * @param tartan name of a saved design.
+     * @param ready called on the FX thread with the thumbnail if it is not
+     * yet available, the caller should check that it still wants it.
+     * @return the thumbnail, or null if it is being made in the background.
+     */
+    public Image getThumbnail(String tartan, Consumer<Image> ready) {
+        return thumbnails.request(tartan, ready);
+    }
+
+    /**
+     * Start keeping the catalogue up to date on a background thread, first
+     * reconciling it with the base directory and then watching for changes.
+     */
+    private void initializeCatalogue() {
+        thumbnails = new Thumbnails(Paths.get(getBaseDirectory()), DATAFILE, IMAGEFILE, THUMBNAIL);
+        catalogue = new Catalogue(Paths.get(getBaseDirectory()), CATALOGUE, DATAFILE);
+        catalogue.setListener(this::catalogueChanged);
+
+        Thread thread = new Thread(() -> {
+            catalogue.reconcile();
+            catalogue.watch();
+        }, "Catalogue");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
 
  
      /************************************************************************
@@ -367,10 +672,14 @@ public class Model {
     public boolean setSwatch(int index, Color colour, String name) {
         if (index < colourSwatches.size()) {
             ColourSwatch swatch = colourSwatches.get(index);
+            final Color oldColour = swatch.colour;
+            final String oldName = swatch.name;
 
             swatch.colour = colour;
             swatch.name = name;
-            
+            recordSwatch(index, oldColour, oldName);
+            sample.syncColour();
+
             return true;
         }
 
@@ -379,7 +688,11 @@ public class Model {
 
     public boolean setSwatchColour(int index, Color colour) {
         if (index < colourSwatches.size()) {
-            colourSwatches.get(index).colour = colour;
+            ColourSwatch swatch = colourSwatches.get(index);
+            final Color oldColour = swatch.colour;
+
+            swatch.colour = colour;
+            recordSwatch(index, oldColour, swatch.name);
             sample.syncColour();
 
             return true;
@@ -390,7 +703,11 @@ public class Model {
 
     public boolean setSwatchName(int index, String name) {
         if (index < colourSwatches.size()) {
-            colourSwatches.get(index).name = name;
+            ColourSwatch swatch = colourSwatches.get(index);
+            final String oldName = swatch.name;
+
+            swatch.name = name;
+            recordSwatch(index, swatch.colour, oldName);
 
             return true;
         }
@@ -400,9 +717,15 @@ public class Model {
 
 
     public void clearSwatches() {
-        for (ColourSwatch swatch : colourSwatches) {
+        for (int i = 0; i < colourSwatches.size(); ++i) {
+            ColourSwatch swatch = colourSwatches.get(i);
+            final Color oldColour = swatch.colour;
+            final String oldName = swatch.name;
+
             swatch.clear();
+            recordSwatch(i, oldColour, oldName);
         }
+        sample.syncColour();
     }
 
     /**
@@ -426,6 +749,7 @@ public class Model {
 
     private boolean duplicate = true;
     private boolean showGuide = true;
+    private boolean pixelBuffer = false;
 
     private SpinnerValueFactory<Integer> threadCountSVF;
 
@@ -443,6 +767,7 @@ public class Model {
 
     public boolean isDuplicate() { return duplicate; }
     public boolean isShowGuide() { return showGuide; }
+    public boolean isPixelBuffer() { return pixelBuffer; }
     public int getThreadCount() { return threadCountSVF.getValue(); }
     public double getThreadSize() { return threadSizeSVF.getValue(); }
     public Color getBorderColour() { return Color.BLACK; }
@@ -457,18 +782,28 @@ public class Model {
     public void syncThreadSize() { sample.syncThreadSize(); }
 
     public void setDuplicate(boolean state) {
+        history.begin();
+        if (duplicate != state) {
+            history.record(new DuplicateEdit(state));
+        }
         duplicate = state;
 
         if (duplicate) {
             setRowCountSVF(getColumnCount());
             sample.syncDuplicateThreads();
         }
+        history.end();
     }
 
     public void setShowGuide(boolean state) {
         showGuide = state;
         sample.syncGuideVisible();
     }
+
+    public void setPixelBuffer(boolean state) {
+        pixelBuffer = state;
+        sample.syncSurface();
+    }
     public void initThreadCount(int value) { threadCountSVF.setValue(value); }
     public void initThreadSize(double value) { threadSizeSVF.setValue(value); }
     public void setGuideLineColour(Color colour) {
@@ -482,8 +817,8 @@ public class Model {
      * Initialize "Layout" panel.
      */
     private void initializeLayout() {
-        columnCountSVF = new SpinnerValueFactory.IntegerSpinnerValueFactory(Default.MIN_THREAD_COUNT.getInt(), Default.WIDTH.getInt(), Default.INIT_THREAD_COUNT.getInt());
-        rowCountSVF = new SpinnerValueFactory.IntegerSpinnerValueFactory(Default.MIN_THREAD_COUNT.getInt(), Default.HEIGHT.getInt(), Default.INIT_THREAD_COUNT.getInt());
+        columnCountSVF = new SpinnerValueFactory.IntegerSpinnerValueFactory(Default.MIN_THREAD_COUNT.getInt(), Default.MAX_THREAD_COUNT.getInt(), Default.INIT_THREAD_COUNT.getInt());
+        rowCountSVF = new SpinnerValueFactory.IntegerSpinnerValueFactory(Default.MIN_THREAD_COUNT.getInt(), Default.MAX_THREAD_COUNT.getInt(), Default.INIT_THREAD_COUNT.getInt());
         threadCountSVF = new SpinnerValueFactory.IntegerSpinnerValueFactory(1, 8, 1);
         threadSizeSVF = new SpinnerValueFactory.DoubleSpinnerValueFactory(2.0, 40.0, 30.0, 1.0);
         borderThicknessSVF = new SpinnerValueFactory.DoubleSpinnerValueFactory(0.0, 10.0, 1.0, 0.1);
@@ -491,6 +826,38 @@ public class Model {
 
 
 
+    /************************************************************************
+     * Support code for "Export" panel.
+     */
+
+    private SpinnerValueFactory<Integer> exportWidthSVF;
+
+    private SpinnerValueFactory<Integer> exportHeightSVF;
+
+    private SpinnerValueFactory<Integer> exportParallelismSVF;
+
+    public SpinnerValueFactory<Integer> getExportWidthSVF() { return exportWidthSVF; }
+    public SpinnerValueFactory<Integer> getExportHeightSVF() { return exportHeightSVF; }
+    public SpinnerValueFactory<Integer> getExportParallelismSVF() { return exportParallelismSVF; }
+
+    public int getExportWidth() { return exportWidthSVF.getValue(); }
+    public int getExportHeight() { return exportHeightSVF.getValue(); }
+    public int getExportParallelism() { return exportParallelismSVF.getValue(); }
+
+
+    /**
+     * Initialize "Export" panel.
+     */
+    private void initializeExport() {
+        exportWidthSVF = new SpinnerValueFactory.IntegerSpinnerValueFactory(1, Default.MAX_EXPORT_SIZE.getInt(), Default.INIT_EXPORT_SIZE.getInt());
+        exportHeightSVF = new SpinnerValueFactory.IntegerSpinnerValueFactory(1, Default.MAX_EXPORT_SIZE.getInt(), Default.INIT_EXPORT_SIZE.getInt());
+
+        final int processors = Runtime.getRuntime().availableProcessors();
+        exportParallelismSVF = new SpinnerValueFactory.IntegerSpinnerValueFactory(1, Default.MAX_EXPORT_THREADS.getInt(), processors);
+    }
+
+
+
     /************************************************************************
      * Support code for "Status Line" panel.
      */
@@ -542,8 +909,8 @@ public class Model {
         return dir.mkdir();
     }
 
-    private String getOutputImageFile() {
-        return getOutputPath() + "\\" + IMAGEFILE;
+    private String getOutputExportFile(int width, int height) {
+        return getOutputPath() + "\\" + EXPORTFILE + width + "x" + height + ".png";
     }
 
     /**
@@ -553,102 +920,109 @@ public class Model {
         return getOutputPath() + "\\" + DATAFILE;
     }
 
-    private Color getRowColour(int i) { return getSwatchColour(getRowColourIndex(i)); }
-    private Color getColColour(int i) { return getSwatchColour(getColColourIndex(i)); }
+    /**
+     * @param tartan name of a saved design.
+     * @return the file path of the settings data file of the design.
+     */
+    public String getSettingsFile(String tartan) {
+        return getBaseDirectory() + "\\" + tartan + "\\" + DATAFILE;
+    }
 
     /**
-     * Save the tartan design as an image.
-     * @return true if the image was generated, false otherwise.
+     * Read the details of a saved design from the catalogue, or from the 
+     * header of its settings file, without loading it.
+     * @param tartan name of a saved design.
+     * @return the details of the design, or null if they cannot be read.
      */
-    private boolean saveImage() {
-        boolean success = false;
-        final Canvas canvas;
-        final GraphicsContext gc;
-        final double size = getThreadSize();
-        final double size2 = size * 2;
-        final double size4 = size * 4;
+    public Metadata getMetadata(String tartan) {
+        final Metadata metadata = catalogue.getMetadata(tartan);
+        if (metadata != null) {
+            return metadata;
+        }
 
-        final int cCount = getColumnCount();
-        final int rCount = getRowCount();
-        final double xMax = cCount * size2;
-        final double yMax = rCount * size2;
-        canvas = new Canvas(xMax, yMax);
+        try {
+            return DataStore2.readMetadata(Paths.get(getSettingsFile(tartan)), tartan);
+        } catch (IOException | InvalidPathException e) {
+            Debug.critical(DD, "getMetadata() - " + e.getMessage());
+        }
 
-        gc = canvas.getGraphicsContext2D();
+        return null;
+    }
 
-        gc.setStroke(getBorderColour());
-        gc.setLineWidth(getBorderThickness());
+    /**
+     * Build the ARGB palette from the swatch colours.
+     * @return an array of ARGB colours indexed by swatch.
+     */
+    public int[] getPalette() {
+        final int count = Default.SWATCH_COUNT.getInt();
+        int[] palette = new int[count];
+        for (int i = 0; i < count; ++i) {
+            palette[i] = toARGB(getSwatchColour(i));
+        }
 
-        double xPos = 0;
-        double yPos = 0;
-        int count = cCount / 2;
-        for (int i = 0; i < (rCount * 2); ++i) {
-            final Color colour = getRowColour(i);
-            
-            int c = i % 4;
-            c = (4 - c) % 4;
-            xPos = size * c;
-            for (int j = 0; j < count; ++j) {
-                gc.setFill(colour);
-                gc.fillRect(xPos, yPos, size2, size);
-                gc.strokeRect(xPos, yPos, size2, size);
+        return palette;
+    }
 
-                xPos += size4;
-            }
-            yPos += size;
-        }
+    private RenderCache renderCache;
+    private Saver saver;
 
-        count = rCount / 2;
-        xPos = 0;
-        yPos = 0;
-        for (int i = 0; i < (cCount * 2); ++i) {
-            final Color colour = getColColour(i);
-            
-            int r = i % 4;
-            r = (6 - r) % 4;
-            yPos = size * r;
-            for (int j = 0; j < count; ++j) {
-                gc.setFill(colour);
-                gc.fillRect(xPos, yPos, size, size2);
-                gc.strokeRect(xPos, yPos, size, size2);
-
-                yPos += size4;
-            }
-            xPos += size;
+    /**
+     * Take an immutable snapshot of the current design, which can be used 
+     * on any thread while editing continues. The threads are shared with 
+     * the Warps until they next change, so this does not depend on the 
+     * length of the setts.
+     * @return the snapshot of the current design.
+     */
+    public TartanDesign getDesign() {
+        final int count = Default.SWATCH_COUNT.getInt();
+        String[] swatchNames = new String[count];
+        for (int i = 0; i < count; ++i) {
+            swatchNames[i] = getSwatchName(i);
         }
 
+        return new TartanDesign(isNamed() ? getName() : "", 
+            sample.getRowThreads(), sample.getColumnThreads(), 
+            getPalette(), swatchNames, getSelectedColourIndex(), 
+            getThreadCount(), getThreadSize(), getBorderThickness(), 
+            toARGB(getBorderColour()), toARGB(getGuideLineColour()), 
+            isDuplicate(), isShowGuide());
+    }
 
-        SnapshotParameters parameters = new SnapshotParameters();
-        parameters.setFill(Color.TRANSPARENT);
-
-        WritableImage snapshot = new WritableImage((int)xMax, (int)yMax);
-        try {
-            canvas.snapshot(parameters, snapshot);
-        } catch (IllegalStateException e) {
-            Debug.critical(DD, "saveImage() - Failed to take snapshot: " + e);
-        }
+    /**
+     * @return the width in pixels of an image 2 sett repeats wide.
+     */
+    public int getImageWidth() { return (int)(getColumnCount() * getThreadSize() * 2); }
 
-        try {
-            final BufferedImage image = SwingFXUtils.fromFXImage(snapshot, null);
-            File output = new File(getOutputImageFile());
+    /**
+     * @return the height in pixels of an image 2 sett repeats high.
+     */
+    public int getImageHeight() { return (int)(getRowCount() * getThreadSize() * 2); }
 
-            ImageIO.write(image, "png", output);
-            success = true;
-        } catch (Exception e) {
-            Debug.critical(DD, "saveImage() - Failed saving image: " + e);
-        }
+    /**
+     * Export the tartan design as an image of the given size, such as a 
+     * fabric print. The design is captured now and the image is rendered
+     * in the background, copied from the render cache if it has been 
+     * rendered before. The progress is shown on the status line.
+     * @param width of the image in pixels.
+     * @param height of the image in pixels.
+     * @return the file path the image is being exported to.
+     */
+    public String exportTartan(int width, int height) {
+        makeTartanDirectory();
+        final String path = getOutputExportFile(width, height);
+        saver.export(getDesign(), Paths.get(path), width, height, getExportParallelism());
 
-        return success;
+        return path;
     }
 
     /**
-     * Save the tartan design data and as an image.
-     * @return the file path of the saved data.
+     * Save the tartan design data and as an image, 2 sett repeats wide and
+     * 2 sett repeats high. The design is captured now and saved in the 
+     * background, the progress is shown on the status line.
+     * @return the file path the data is being saved to.
      */
     public String saveTartan() {
-        makeTartanDirectory();
-        writeData();
-        saveImage();
+        saver.save(getName(), getDesign(), getImageWidth(), getImageHeight(), getExportParallelism());
 
         return getOutputPath();
     }
@@ -658,7 +1032,9 @@ public class Model {
      * @return the name of the loaded data.
      */
     public String loadTartan() {
+        saver.finish(getName());
         readData();
+        history.clear();
 
         return getName();
     }
@@ -668,6 +1044,11 @@ public class Model {
      */
     private void initializeStatusLine() {
         makeTartanDirectory();
+        renderCache = new RenderCache(Paths.get(getBaseDirectory()).resolve(RENDERCACHE),
+            Default.RENDER_MEMORY_SIZE.getInt(), Default.RENDER_DISC_SIZE.getInt());
+        initializeCatalogue();
+        saver = new Saver(Paths.get(getBaseDirectory()), DATAFILE, IMAGEFILE, renderCache,
+            catalogue, message -> controller.setStatusMessage(message));
     }
 
 
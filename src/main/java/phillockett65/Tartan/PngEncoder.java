@@ -0,0 +1,237 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * PngEncoder is a class that writes a PNG image one scanline at a time. Only
+ * the current scanline and the deflate buffers are held in memory, so the
+ * size of the image is limited by the disc rather than the heap.
+ */
+package phillockett65.Tartan;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+
+public class PngEncoder implements Closeable {
+
+    private static final byte[] SIGNATURE = { (byte)0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private static final byte COLOUR_TYPE_RGB = 2;
+    private static final byte FILTER_NONE = 0;
+
+    private final DataOutputStream out;
+    private final Deflater deflater;
+    private final DeflaterOutputStream idat;
+
+    private final int width;
+    private final int height;
+    private final byte[] line;
+    private int lines = 0;
+
+
+
+    /************************************************************************
+     * Support code for the IDAT chunk stream.
+     */
+
+    /**
+     * Write a single chunk with its length and CRC.
+     * @param type of the chunk.
+     * @param data of the chunk.
+     * @param length of the data.
+     */
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        final byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+
+        CRC32 crc = new CRC32();
+        crc.update(name);
+        crc.update(data, 0, length);
+
+        out.writeInt(length);
+        out.write(name);
+        out.write(data, 0, length);
+        out.writeInt((int)crc.getValue());
+    }
+
+    /**
+     * Class to split the compressed image data into IDAT chunks.
+     */
+    private class ChunkStream extends OutputStream {
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+        private int count = 0;
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                flush();
+            }
+
+            buffer[count++] = (byte)b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length) {
+                    flush();
+                }
+
+                final int size = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, size);
+                count += size;
+                off += size;
+                len -= size;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (count > 0) {
+                writeChunk("IDAT", buffer, count);
+                count = 0;
+            }
+        }
+    }
+
+
+
+    /************************************************************************
+     * Support code for the Initialization of the PngEncoder.
+     */
+
+    /**
+     * Write the PNG signature and the image header.
+     */
+    private void writeHeader() throws IOException {
+        out.write(SIGNATURE);
+
+        byte[] header = new byte[13];
+        header[0] = (byte)(width >>> 24);
+        header[1] = (byte)(width >>> 16);
+        header[2] = (byte)(width >>> 8);
+        header[3] = (byte)width;
+        header[4] = (byte)(height >>> 24);
+        header[5] = (byte)(height >>> 16);
+        header[6] = (byte)(height >>> 8);
+        header[7] = (byte)height;
+        header[8] = 8;                  // Bit depth.
+        header[9] = COLOUR_TYPE_RGB;
+        header[10] = 0;                 // Compression method.
+        header[11] = 0;                 // Filter method.
+        header[12] = 0;                 // No interlace.
+
+        writeChunk("IHDR", header, header.length);
+    }
+
+    /**
+     * Constructor. Writes the PNG header to the stream.
+     * @param stream to write the PNG image to.
+     * @param width of the image in pixels.
+     * @param height of the image in pixels.
+     */
+    public PngEncoder(OutputStream stream, int width, int height) throws IOException {
+        this.out = new DataOutputStream(stream);
+        this.width = width;
+        this.height = height;
+
+        line = new byte[1 + (width * 3)];
+        deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        idat = new DeflaterOutputStream(new ChunkStream(), deflater, CHUNK_SIZE);
+
+        writeHeader();
+    }
+
+
+
+    /************************************************************************
+     * Public interface.
+     */
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+
+    /**
+     * Append a scanline to the image.
+     * @param pixels ARGB pixels of the scanline, alpha is ignored.
+     * @param offset into pixels of the first pixel of the scanline.
+     */
+    public void writeLine(int[] pixels, int offset) throws IOException {
+        if (lines >= height) {
+            throw new IOException("PNG image already has " + height + " scanlines");
+        }
+
+        line[0] = FILTER_NONE;
+        int pos = 1;
+        for (int x = offset; x < offset + width; ++x) {
+            final int pixel = pixels[x];
+            line[pos++] = (byte)(pixel >>> 16);
+            line[pos++] = (byte)(pixel >>> 8);
+            line[pos++] = (byte)pixel;
+        }
+
+        idat.write(line);
+        lines++;
+    }
+
+    /**
+     * Append a band of consecutive scanlines to the image.
+     * @param pixels ARGB pixels of the scanlines in row order.
+     * @param count of scanlines to append.
+     */
+    public void writeLines(int[] pixels, int count) throws IOException {
+        int offset = 0;
+        for (int i = 0; i < count; ++i) {
+            writeLine(pixels, offset);
+            offset += width;
+        }
+    }
+
+    /**
+     * Complete the image data and write the end chunk. The underlying
+     * stream is closed. If fewer than height scanlines were written, the
+     * end chunk is not written, so a truncated image can't be mistaken for
+     * a complete one.
+     * @throws IOException if the image is incomplete or can't be written.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (lines != height) {
+                throw new IOException("PNG image has " + lines + " of " + height + " scanlines");
+            }
+
+            idat.finish();
+            idat.flush();
+            writeChunk("IEND", new byte[0], 0);
+            out.flush();
+        } finally {
+            deflater.end();
+            out.close();
+        }
+    }
+
+}
@@ -24,6 +24,7 @@
  */
 package phillockett65.Tartan;
 
+import java.text.ParseException;
 import java.util.ArrayList;
 
 import javafx.event.ActionEvent;
@@ -36,6 +37,8 @@ import javafx.scene.control.Spinner;
 import javafx.scene.control.TextField;
 import javafx.scene.control.ToggleGroup;
 import javafx.scene.control.Tooltip;
+import javafx.scene.input.Clipboard;
+import javafx.scene.input.ClipboardContent;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.HBox;
@@ -74,7 +77,7 @@ public class PrimaryController {
      * Synchronise all controls with the model. This should be the last step 
      * in the initialisation.
      */
-    private void syncUI() {
+    public void syncUI() {
 
         for (int i = 0; i < Default.SWATCH_COUNT.getInt(); ++i) {
             setSwatch(i, model.getSwatchColour(i), model.getSwatchName(i));
@@ -88,6 +91,7 @@ public class PrimaryController {
         rowCountSpinner.setDisable(model.isDuplicate());
         duplicateCheckbox.setSelected(model.isDuplicate());
         showGuideCheckbox.setSelected(model.isShowGuide());
+        pixelBufferCheckbox.setSelected(model.isPixelBuffer());
 
         guideLineColourPicker.setValue(model.getGuideLineColour());
     }
@@ -218,7 +222,7 @@ public class PrimaryController {
             final String prompt = model.saveTartan();
 
             if (prompt != null)
-                setStatusMessage("Saved to: " + prompt);
+                setStatusMessage("Saving to: " + prompt);
         }
         else
             launchSaveAsWindow();
@@ -229,11 +233,61 @@ public class PrimaryController {
         launchSaveAsWindow();
     }
 
+    @FXML
+    private void fileExportOnAction() {
+        launchExportWindow();
+    }
+
     @FXML
     private void fileCloseOnAction() {
         model.close();
     }
 
+    @FXML
+    private void editUndoOnAction() {
+        if (model.undo()) {
+            setStatusMessage("Undone");
+        } else {
+            setStatusMessage("Nothing to undo");
+        }
+    }
+
+    @FXML
+    private void editRedoOnAction() {
+        if (model.redo()) {
+            setStatusMessage("Redone");
+        } else {
+            setStatusMessage("Nothing to redo");
+        }
+    }
+
+    @FXML
+    private void editCopyThreadcountOnAction() {
+        final String threadcount = model.getThreadcount().format();
+
+        ClipboardContent content = new ClipboardContent();
+        content.putString(threadcount);
+        Clipboard.getSystemClipboard().setContent(content);
+        setStatusMessage("Copied: " + threadcount);
+    }
+
+    @FXML
+    private void editPasteThreadcountOnAction() {
+        final String text = Clipboard.getSystemClipboard().getString();
+        if (text == null) {
+            setStatusMessage("No threadcount to paste");
+            return;
+        }
+
+        try {
+            model.setThreadcount(Threadcount.parse(text, Default.SWATCH_COUNT.getInt()));
+            syncUI();
+            setStatusMessage("Pasted threadcount");
+        } catch (ParseException e) {
+            setStatusMessage("Invalid threadcount: " + e.getMessage());
+        }
+    }
+
     @FXML
     private void editClearOnAction() {
         model.defaultSettings();
@@ -266,7 +320,17 @@ public class PrimaryController {
 
     private boolean launchSaveAsWindow() {
         if (SaveAsControl.showControl("Save Tartan")) {
-            setStatusMessage("Saved to " + model.saveTartan());
+            setStatusMessage("Saving to " + model.saveTartan());
+
+            return true;
+        }
+
+        return false;
+    }
+
+    private boolean launchExportWindow() {
+        if (ExportControl.showControl("Export Tartan")) {
+            setStatusMessage("Exporting to " + model.exportTartan(model.getExportWidth(), model.getExportHeight()));
 
             return true;
         }
@@ -570,6 +634,9 @@ public class PrimaryController {
     @FXML
     private CheckBox showGuideCheckbox;
 
+    @FXML
+    private CheckBox pixelBufferCheckbox;
+
     @FXML
     private ColorPicker guideLineColourPicker;
 
@@ -593,6 +660,11 @@ public class PrimaryController {
         model.setShowGuide(showGuideCheckbox.isSelected());
     }
 
+    @FXML
+    void pixelBufferCheckboxOnAction(ActionEvent event) {
+        model.setPixelBuffer(pixelBufferCheckbox.isSelected());
+    }
+
     @FXML
     void guideLineColourPickerActionPerformed(ActionEvent event) {
         model.setGuideLineColour(guideLineColourPicker.getValue());
@@ -612,6 +684,7 @@ public class PrimaryController {
         rowCountSpinner.setTooltip(new Tooltip("Set the row repeat count"));
         duplicateCheckbox.setTooltip(new Tooltip("Duplicate the column threads for the rows (or vice versa)"));
         showGuideCheckbox.setTooltip(new Tooltip("Display guide lines"));
+        pixelBufferCheckbox.setTooltip(new Tooltip("Render the sample directly into a shared pixel buffer instead of a canvas"));
         guideLineColourPicker.setTooltip(new Tooltip("Select the colour for guide lines and thread highlight"));
         threadCountSpinner.setTooltip(new Tooltip("Set the number of adjacent threads to the selected colour"));
         threadSizeSpinner.setTooltip(new Tooltip("Set the thread size in pixels"));
@@ -652,7 +725,7 @@ public class PrimaryController {
      * Set the status line message.
      * @param message to display on the status line.
      */
-    private void setStatusMessage(String message) {
+    public void setStatusMessage(String message) {
         statusLabel.setText(message);
     }
 
@@ -0,0 +1,252 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Rasterizer is a class that renders a tartan design directly into an ARGB
+ * pixel buffer. It does not depend on JavaFX, so it can be used without a
+ * running toolkit and is not limited by the snapshot texture size.
+ *
+ * The weave is a 2/2 twill: the thread cell at column X and row Y shows the
+ * row thread when (X + Y) % 4 is 0 or 1, otherwise it shows the column
+ * thread. Each visible stretch of thread (a "stitch") is two cells long and
+ * is outlined with a border of the given thickness. An optional phase shifts
+ * the twill, so that an image of a single sett can be rendered to match any
+ * position in a repeating pattern. An optional left edge allows a window of
+ * a much larger image to be rendered, with look-up tables only as wide as
+ * the window.
+ */
+package phillockett65.Tartan;
+
+
+public class Rasterizer {
+
+    private static final int LEFT = 1;
+    private static final int RIGHT = 2;
+    private static final int TOP = 1;
+    private static final int BOTTOM = 2;
+
+    private final int[] rows;
+    private final int[] cols;
+    private final int[] palette;
+    private final int border;
+
+    private final double size;
+    private final double half;
+    private final int phase;
+
+    private final int left;
+    private final int width;
+    private final int height;
+
+    // Per pixel column look-up tables.
+    private final int[] xColour;
+    private final byte[] xPhase;
+    private final byte[] xEdge;
+
+
+
+    /************************************************************************
+     * Support code for the Initialization of the Rasterizer.
+     */
+
+    /**
+     * Determine which thread borders a pixel falls on. A pixel is on a
+     * border if its centre lies within half the thickness of the edge.
+     * @param pos of the pixel centre relative to the start of the cell.
+     * @return the combination of LEFT (TOP) and RIGHT (BOTTOM) flags.
+     */
+    private byte edgeFlags(double pos) {
+        int flags = 0;
+        if (pos < half) {
+            flags |= LEFT;
+        }
+        if (pos >= size - half) {
+            flags |= RIGHT;
+        }
+
+        return (byte)flags;
+    }
+
+    /**
+     * Build the per pixel column look-up tables.
+     */
+    private void initColumns() {
+        final int count = cols.length;
+        for (int x = 0; x < width; ++x) {
+            final double centre = left + x + 0.5;
+            final int cell = (int)(centre / size);
+
+            xColour[x] = palette[cols[cell % count]];
+            xPhase[x] = (byte)(cell & 3);
+            xEdge[x] = edgeFlags(centre - (cell * size));
+        }
+    }
+
+    /**
+     * Constructor for a window of the image.
+     * @param rows colour indices of the row threads.
+     * @param cols colour indices of the column threads.
+     * @param palette ARGB colours indexed by the thread colour indices.
+     * @param border ARGB colour of the thread borders.
+     * @param size of a thread in pixels.
+     * @param thickness of the thread borders in pixels.
+     * @param left first pixel column of the window.
+     * @param width of the window in pixels.
+     * @param height of the output image in pixels.
+     * @param phase of the twill, added to the cell position (0 to 3).
+     */
+    public Rasterizer(int[] rows, int[] cols, int[] palette, int border,
+        double size, double thickness, int left, int width, int height, int phase) {
+        this.rows = rows;
+        this.cols = cols;
+        this.palette = palette;
+        this.border = border;
+
+        this.size = size;
+        this.half = thickness / 2;
+        this.phase = phase & 3;
+
+        this.left = left;
+        this.width = width;
+        this.height = height;
+
+        xColour = new int[width];
+        xPhase = new byte[width];
+        xEdge = new byte[width];
+
+        initColumns();
+    }
+
+    /**
+     * Constructor for an image starting at the first pixel column.
+     */
+    public Rasterizer(int[] rows, int[] cols, int[] palette, int border,
+        double size, double thickness, int width, int height, int phase) {
+        this(rows, cols, palette, border, size, thickness, 0, width, height, phase);
+    }
+
+    /**
+     * Constructor for an image that starts at the beginning of the twill.
+     */
+    public Rasterizer(int[] rows, int[] cols, int[] palette, int border,
+        double size, double thickness, int width, int height) {
+        this(rows, cols, palette, border, size, thickness, width, height, 0);
+    }
+
+
+
+    /************************************************************************
+     * Public interface.
+     */
+
+    public int getLeft() { return left; }
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+
+    /**
+     * Calculate the first pixel that falls within a thread.
+     * @param index of the thread.
+     * @return the first pixel whose centre lies within the thread.
+     */
+    public int getFirstPixel(int index) {
+        return (int)Math.ceil((index * size) - 0.5);
+    }
+
+    /**
+     * Render part of a single scanline.
+     * @param buffer to render the pixels into.
+     * @param offset into buffer of the first pixel.
+     * @param y the scanline to render.
+     * @param first pixel of the scanline to render, within the window.
+     * @param count of pixels to render.
+     */
+    public void renderSpan(int[] buffer, int offset, int y, int first, int count) {
+        final double centre = y + 0.5;
+        final int cell = (int)(centre / size);
+        final int rowColour = palette[rows[cell % rows.length]];
+        final int linePhase = (cell + phase) & 3;
+        final int edge = edgeFlags(centre - (cell * size));
+
+        // Index the look-up tables relative to the left of the window.
+        first -= left;
+        offset -= first;
+        for (int x = first; x < first + count; ++x) {
+            final int weave = (xPhase[x] + linePhase) & 3;
+            final boolean line;
+            final int colour;
+
+            if (weave < 2) {
+                // Row thread is on top, so a stitch runs horizontally.
+                line = (edge != 0) || ((xEdge[x] & (weave == 0 ? LEFT : RIGHT)) != 0);
+                colour = rowColour;
+            } else {
+                // Column thread is on top, so a stitch runs vertically.
+                line = (xEdge[x] != 0) || ((edge & (weave == 2 ? TOP : BOTTOM)) != 0);
+                colour = xColour[x];
+            }
+
+            buffer[offset + x] = line ? border : colour;
+        }
+    }
+
+    /**
+     * Render a single scanline.
+     * @param buffer to render the scanline into.
+     * @param offset into buffer of the first pixel.
+     * @param y the scanline to render.
+     */
+    public void renderLine(int[] buffer, int offset, int y) {
+        renderSpan(buffer, offset, y, left, width);
+    }
+
+    /**
+     * Render a band of consecutive scanlines.
+     * @param buffer to render the scanlines into, at least width * count.
+     * @param y the first scanline to render.
+     * @param count of scanlines to render.
+     */
+    public void renderLines(int[] buffer, int y, int count) {
+        int offset = 0;
+        for (int line = y; line < y + count; ++line) {
+            renderLine(buffer, offset, line);
+            offset += width;
+        }
+    }
+
+    /**
+     * Render the whole image.
+     * @param buffer to render the image into, at least width * height.
+     */
+    public void render(int[] buffer) {
+        renderLines(buffer, 0, height);
+    }
+
+    /**
+     * Render the whole image into a newly allocated buffer.
+     * @return the ARGB pixels of the image in row order.
+     */
+    public int[] render() {
+        int[] buffer = new int[width * height];
+        render(buffer);
+
+        return buffer;
+    }
+
+}
@@ -0,0 +1,322 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+/*
+ * RenderCache is a class that remembers the images rendered for saves and
+ * exports, so that an image that has been rendered before is copied rather
+ * than rendered again.
+ *
+ * An image is identified by a SHA-256 hash of everything that affects its
+ * pixels: the row and column colour indices, the palette, the border
+ * colour, the thread size, the border thickness and the image size. The
+ * name of the design plays no part, so an identical design saved under
+ * another name is found too. Encoded images are held in two tiers:
+ *   memory: a least recently used map of the PNG bytes, limited to a
+ *           number of bytes, for repeated saves of the same design.
+ *   disc:   a directory of PNG files named by their hash, limited to a
+ *           number of bytes by discarding the least recently used files,
+ *           for images rendered in earlier sessions.
+ * Files are added to the directory by an atomic move, so a partly written
+ * file is never found. The RenderCache is safe to use from several threads.
+ */
+package phillockett65.Tartan;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import phillockett65.Debug.Debug;
+
+
+public class RenderCache {
+
+    // Debug delta used to adjust the local logging level.
+    private static final int DD = 0;
+
+    // Changed whenever the rendering changes, so old images are not used.
+    private static final int VERSION = 1;
+
+    private static final String SUFFIX = ".png";
+
+    private final Path dir;
+    private final long memorySize;
+    private final long discSize;
+
+    // Least recently used PNG images by key.
+    private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+    private long memoryUsed = 0;
+
+    // Bytes held in the directory, -1 until it is first listed.
+    private long discUsed = -1;
+
+
+
+    /************************************************************************
+     * Support code for the Initialization of the RenderCache.
+     */
+
+    /**
+     * Constructor.
+     * @param dir directory to hold the cached images, created when needed.
+     * @param memorySize maximum number of bytes of images held in memory.
+     * @param discSize maximum number of bytes of images held on disc.
+     */
+    public RenderCache(Path dir, long memorySize, long discSize) {
+        this.dir = dir;
+        this.memorySize = memorySize;
+        this.discSize = discSize;
+    }
+
+
+
+    /************************************************************************
+     * Support code for the memory tier.
+     */
+
+    /**
+     * Add an image to memory, discarding the least recently used images
+     * until the memory tier is within its size. Images larger than a
+     * quarter of the memory tier are not held, so one export cannot flush
+     * everything else.
+     * @param key of the image.
+     * @param png encoded image.
+     */
+    private synchronized void remember(String key, byte[] png) {
+        if (png.length > (memorySize / 4)) {
+            return;
+        }
+
+        final byte[] previous = memory.put(key, png);
+        if (previous != null) {
+            memoryUsed -= previous.length;
+        }
+        memoryUsed += png.length;
+
+        Iterator<byte[]> it = memory.values().iterator();
+        while ((memoryUsed > memorySize) && it.hasNext()) {
+            final byte[] eldest = it.next();
+            if (eldest == png) {
+                break;
+            }
+            memoryUsed -= eldest.length;
+            it.remove();
+        }
+    }
+
+    private synchronized byte[] recall(String key) {
+        return memory.get(key);
+    }
+
+
+
+    /************************************************************************
+     * Support code for the disc tier.
+     */
+
+    /**
+     * @param key of an image.
+     * @return the path of the image in the directory.
+     */
+    private Path getPath(String key) {
+        return dir.resolve(key + SUFFIX);
+    }
+
+    /**
+     * List the cached images, least recently used first.
+     * @return the paths of the images.
+     */
+    private ArrayList<Path> list() throws IOException {
+        ArrayList<Path> files = new ArrayList<Path>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+
+        final LinkedHashMap<Path, Long> times = new LinkedHashMap<Path, Long>();
+        for (Path file : files) {
+            times.put(file, Files.getLastModifiedTime(file).toMillis());
+        }
+        Collections.sort(files, (a, b) -> Long.compare(times.get(a), times.get(b)));
+
+        return files;
+    }
+
+    /**
+     * Record that an image has been added to the directory, discarding the
+     * least recently used images until the directory is within its size.
+     * @param bytes added to the directory.
+     */
+    private synchronized void grow(long bytes) throws IOException {
+        if (discUsed < 0) {
+            discUsed = 0;
+            for (Path file : list()) {
+                discUsed += Files.size(file);
+            }
+        } else {
+            discUsed += bytes;
+        }
+
+        if (discUsed <= discSize) {
+            return;
+        }
+
+        for (Path file : list()) {
+            if (discUsed <= discSize) {
+                break;
+            }
+            final long size = Files.size(file);
+            if (Files.deleteIfExists(file)) {
+                discUsed -= size;
+            }
+        }
+    }
+
+
+
+    /************************************************************************
+     * Public interface.
+     */
+
+    /**
+     * Calculate the key of an image from everything that affects its 
+     * pixels.
+     * @param rows colour indices of the row threads.
+     * @param cols colour indices of the column threads.
+     * @param palette ARGB colours indexed by the thread colour indices.
+     * @param border ARGB colour of the thread borders.
+     * @param size of a thread in pixels.
+     * @param thickness of the thread borders in pixels.
+     * @param width of the image in pixels.
+     * @param height of the image in pixels.
+     * @return the key as a hexadecimal string.
+     */
+    public static String getKey(int[] rows, int[] cols, int[] palette, int border,
+        double size, double thickness, int width, int height) {
+        ByteBuffer buffer = ByteBuffer.allocate(4 * (10 + rows.length + cols.length + palette.length) + 16);
+        buffer.putInt(VERSION);
+        buffer.putInt(rows.length);
+        for (int row : rows) {
+            buffer.putInt(row);
+        }
+        buffer.putInt(cols.length);
+        for (int col : cols) {
+            buffer.putInt(col);
+        }
+        buffer.putInt(palette.length);
+        for (int colour : palette) {
+            buffer.putInt(colour);
+        }
+        buffer.putInt(border);
+        buffer.putDouble(size);
+        buffer.putDouble(thickness);
+        buffer.putInt(width);
+        buffer.putInt(height);
+        buffer.flip();
+
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(buffer.array());
+            StringBuilder key = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                key.append(Character.forDigit((b >> 4) & 0xF, 16));
+                key.append(Character.forDigit(b & 0xF, 16));
+            }
+
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Write a cached image to a file, if there is one.
+     * @param key of the image.
+     * @param target path of the file to write.
+     * @return true if the image was cached and written, false otherwise.
+     */
+    public boolean fetch(String key, Path target) {
+        try {
+            final byte[] png = recall(key);
+            if (png != null) {
+                Files.write(target, png);
+                return true;
+            }
+
+            final Path cached = getPath(key);
+            if (!Files.exists(cached)) {
+                return false;
+            }
+
+            Files.copy(cached, target, StandardCopyOption.REPLACE_EXISTING);
+            Files.setLastModifiedTime(cached, FileTime.fromMillis(System.currentTimeMillis()));
+            if (Files.size(target) <= (memorySize / 4)) {
+                remember(key, Files.readAllBytes(target));
+            }
+
+            return true;
+        } catch (IOException e) {
+            Debug.critical(DD, "fetch() - " + e.getMessage());
+        }
+
+        return false;
+    }
+
+    /**
+     * Add a newly rendered image to the cache.
+     * @param key of the image.
+     * @param source path of the rendered image.
+     */
+    public void store(String key, Path source) {
+        try {
+            final long size = Files.size(source);
+            if (size <= (memorySize / 4)) {
+                remember(key, Files.readAllBytes(source));
+            }
+            if (size > discSize) {
+                return;
+            }
+
+            Files.createDirectories(dir);
+            final Path cached = getPath(key);
+            if (Files.exists(cached)) {
+                return;
+            }
+            final Path temp = Files.createTempFile(dir, key, ".tmp");
+            Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temp, cached, StandardCopyOption.ATOMIC_MOVE);
+            grow(size);
+        } catch (IOException e) {
+            Debug.critical(DD, "store() - " + e.getMessage());
+        }
+    }
+
+}
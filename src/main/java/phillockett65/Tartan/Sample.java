@@ -25,7 +25,10 @@
 package phillockett65.Tartan;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 
+import javafx.animation.AnimationTimer;
 import javafx.application.Platform;
 import javafx.collections.ObservableList;
 import javafx.geometry.Pos;
@@ -67,14 +70,17 @@ public class Sample extends Stage {
     private Model model;
 
     private Group group;
-    private Canvas canvas;
-    private GraphicsContext gc;
+    private Surface surface;
+    private Canvas overlay;
+    private GraphicsContext overlayGc;
 
     private double dx;	// Difference between the size of the stage and the size of the scene.
     private double dy;
 
-    private Warp rowList = new Warp(true, Default.MIN_THREAD_COUNT.getInt(), Default.HEIGHT.getInt());
-    private Warp colList = new Warp(false, Default.MIN_THREAD_COUNT.getInt(), Default.WIDTH.getInt());
+    private Warp rowList = new Warp(true, Default.MIN_THREAD_COUNT.getInt(), Default.MAX_THREAD_COUNT.getInt());
+    private Warp colList = new Warp(false, Default.MIN_THREAD_COUNT.getInt(), Default.MAX_THREAD_COUNT.getInt());
+    private WarpView rowView = new WarpView(rowList);
+    private WarpView colView = new WarpView(colList);
 
     private ArrayList<Line> guides = new ArrayList<Line>(Default.TOTAL_GUIDE_COUNT.getInt());
 
@@ -86,6 +92,17 @@ public class Sample extends Stage {
     private double x = 0.0;
     private double y = 0.0;
 
+    // First column and row of the sett displayed in the viewport.
+    private int colScroll = 0;
+    private int rowScroll = 0;
+
+    // Display scale, independent of the thread size of the design.
+    private double zoom = 1.0;
+
+    private boolean repaintPending = false;
+    private boolean rebuildPending = true;
+    private boolean recolourPending = true;
+
     private VBox root;
     private HBox topBar;
     private Label heading = new Label();
@@ -98,6 +115,9 @@ public class Sample extends Stage {
 
     private static double OFFSET = Default.BORDER_WIDTH.getFloat();
     private static double TOPBARSIZE = Default.TOP_BAR_HEIGHT.getFloat();
+    private static int CANVAS_WIDTH = (int)(Default.MPC_WIDTH.getFloat() - OFFSET);
+    private static int CANVAS_HEIGHT = (int)(Default.MPC_HEIGHT.getFloat() - OFFSET);
+    private static double ZOOM_STEP = 1.25;
 
     /**
      * Calculate the column from the mouse x pos in the scene.
@@ -106,8 +126,8 @@ public class Sample extends Stage {
      * @return the column number (0 to getColumnCount()-1)
      */
     private int xPosToCol(double x) {
-        final double size = model.getThreadSize();
-        return (int)((x - OFFSET) / size);
+        final double size = getDisplaySize();
+        return (int)((x - OFFSET) / size) + colScroll;
     }
 
     /**
@@ -117,21 +137,25 @@ public class Sample extends Stage {
      * @return the row number (0 to getRowCount()-1)
      */
     private int yPosToRow(double y) {
-        final double size = model.getThreadSize();
-        return (int)((y - (OFFSET + TOPBARSIZE)) / size);
+        final double size = getDisplaySize();
+        return (int)((y - (OFFSET + TOPBARSIZE)) / size) + rowScroll;
     }
 
     /**
-     * Get the width of the swatch in pixels.
-     * @return the width of the swatch in pixels.
+     * Get the width of the visible part of the swatch in pixels.
+     * @return the width of the swatch from the first displayed column.
      */
-    private double getSwatchWidth() { return model.getThreadSize() * getColumnCount(); }
+    private double getSwatchWidth() { 
+        return Math.min(getDisplaySize() * (getColumnCount() - colScroll), CANVAS_WIDTH);
+    }
 
     /**
-     * Get the height of the swatch in pixels.
-     * @return the height of the swatch in pixels.
+     * Get the height of the visible part of the swatch in pixels.
+     * @return the height of the swatch from the first displayed row.
      */
-    private double getSwatchHeight() { return model.getThreadSize() * getRowCount(); }
+    private double getSwatchHeight() { 
+        return Math.min(getDisplaySize() * (getRowCount() - rowScroll), CANVAS_HEIGHT);
+    }
 
 
     /**
@@ -141,9 +165,15 @@ public class Sample extends Stage {
      * @param y pos of the mouse in the scene.
      * @return ROW_ZONE if the pos is in the row thread selector, 
      * COLUMN_ZONE if the pos is in the column thread selector or
-     * NONE_ZONE otherwise.
+     * NONE_ZONE otherwise, including at low zoom, where the thread 
+     * selectors are not drawn.
      */
     private int getZone(double x, double y) {
+        // Thread selectors hidden?
+        if (getDisplaySize() < Default.LOD_THREAD_SIZE.getFloat()) {
+            return NONE_ZONE;
+        }
+
         // In the top-bar?
         y -= TOPBARSIZE;
         if (y < 0) {
@@ -185,37 +215,285 @@ public class Sample extends Stage {
 
 
     /************************************************************************
-     * Support code for the key handlers. 
+     * Support code for the repaint scheduler.
      */
 
-    private void rotateUp() {
-        rowList.rotateIncrease();
-        if (model.isDuplicate()) {
-            colList.rotateIncrease();
+    /**
+     * Timer used to flush all the outstanding changes once per pulse. It is 
+     * only running while a repaint is pending.
+     */
+    private final AnimationTimer repaintTimer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            flush();
+        }
+    };
+
+    /**
+     * Request a repaint on the next pulse. Multiple requests made before the
+     * pulse are merged into a single repaint.
+     */
+    private void requestRepaint() {
+        if (repaintPending) {
+            return;
         }
+
+        repaintPending = true;
+        repaintTimer.start();
     }
 
-    private void rotateDown() {
-        rowList.rotateDecrease();
-        if (model.isDuplicate()) {
-            colList.rotateDecrease();
+    /**
+     * Redraw everything that has changed since the last pulse. The surface
+     * only redraws the tartan if the design, the palette or the rotation 
+     * has changed, otherwise only the overlay of thread selectors and 
+     * highlights is redrawn.
+     */
+    private void flush() {
+        repaintTimer.stop();
+        repaintPending = false;
+
+        final boolean reshaped = rebuildPending || rowList.isReshaped() || colList.isReshaped();
+        final BitSet changedRows = rowList.getChanged();
+        final BitSet changedCols = colList.getChanged();
+        if (reshaped) {
+            surface.setDesign(rowList.getColours(), colList.getColours(), 
+                getDisplaySize(), getDisplayThickness());
+        } else if (!changedRows.isEmpty() || !changedCols.isEmpty()) {
+            surface.setColours(rowList.getColours(), colList.getColours(), changedRows, changedCols);
+        }
+
+        // A new design may come with new swatches, so the palette is always
+        // passed on with it.
+        if (recolourPending || reshaped) {
+            surface.setPalette(model.getPalette(), Model.toARGB(defaultColour));
         }
+
+        rebuildPending = false;
+        recolourPending = false;
+        rowList.clearChanges();
+        colList.clearChanges();
+
+        // Pass the ring buffer position of the first displayed thread, and
+        // the twill phase that keeps the weave aligned with the sett.
+        final int colStart = (colList.getOffset() + colScroll) % getColumnCount();
+        final int rowStart = (rowList.getOffset() + rowScroll) % getRowCount();
+        final int phase = (colScroll + rowScroll - colStart - rowStart) & 3;
+        surface.draw(colStart, rowStart, phase);
+
+        overlayGc.clearRect(-OFFSET, -OFFSET, CANVAS_WIDTH + OFFSET, CANVAS_HEIGHT + OFFSET);
+        rowView.drawOverlay(rowScroll, colScroll, getDisplaySize());
+        colView.drawOverlay(colScroll, rowScroll, getDisplaySize());
     }
 
-    private void rotateLeft() {
-        colList.rotateIncrease();
-        if (model.isDuplicate()) {
-            rowList.rotateIncrease();
+
+
+    /************************************************************************
+     * Support code for the viewport.
+     */
+
+    /**
+     * @return the displayed size of a thread in pixels, which is the thread
+     * size of the design scaled by the zoom.
+     */
+    private double getDisplaySize() { return model.getThreadSize() * zoom; }
+
+    /**
+     * Scale the thread borders with the zoom, dropping them altogether when
+     * the threads are too small for a border to be seen.
+     * @return the displayed thickness of the thread borders in pixels.
+     */
+    private double getDisplayThickness() {
+        if (getDisplaySize() < Default.MIN_BORDER_SIZE.getFloat()) {
+            return 0;
+        }
+
+        return model.getBorderThickness() * zoom;
+    }
+
+    /**
+     * @return the number of whole columns that fit in the viewport.
+     */
+    private int getVisibleColumns() { return (int)(CANVAS_WIDTH / getDisplaySize()); }
+
+    /**
+     * @return the number of whole rows that fit in the viewport.
+     */
+    private int getVisibleRows() { return (int)(CANVAS_HEIGHT / getDisplaySize()); }
+
+    /**
+     * Keep the scroll position within the sett, so that the end of the sett 
+     * can be brought into view but not beyond.
+     */
+    private void clampScroll() {
+        colScroll = Math.max(0, Math.min(colScroll, getColumnCount() - getVisibleColumns()));
+        rowScroll = Math.max(0, Math.min(rowScroll, getRowCount() - getVisibleRows()));
+    }
+
+    /**
+     * Scroll the viewport to a new position. Only the visible range of 
+     * threads is redrawn, so the cost does not depend on the sett length.
+     * @param col first column of the sett to display.
+     * @param row first row of the sett to display.
+     */
+    private void scrollTo(int col, int row) {
+        final int lastCol = colScroll;
+        final int lastRow = rowScroll;
+
+        colScroll = col;
+        rowScroll = row;
+        clampScroll();
+
+        if ((colScroll != lastCol) || (rowScroll != lastRow)) {
+            syncGuideLinePositions();
+            requestRepaint();
+        }
+    }
+
+    private void scrollColumns(int delta) { scrollTo(colScroll + delta, rowScroll); }
+    private void scrollRows(int delta) { scrollTo(colScroll, rowScroll + delta); }
+
+    /**
+     * Convert a scroll event distance to a number of threads, moving at
+     * least one thread for any movement.
+     * @param delta distance scrolled in pixels.
+     * @return the number of threads to scroll by.
+     */
+    private int deltaToThreads(double delta) {
+        if (delta == 0) {
+            return 0;
+        }
+
+        final int threads = (int)Math.round(-delta / getDisplaySize());
+        if (threads == 0) {
+            return (delta < 0) ? 1 : -1;
+        }
+
+        return threads;
+    }
+
+    /**
+     * Change the display scale, keeping the thread at the centre of the
+     * viewport in place. The tartan is rebuilt at the new size, so the 
+     * surface decides whether to draw individual cells or a downsampled 
+     * image.
+     * @param value new zoom, limited to MIN_ZOOM..MAX_ZOOM.
+     */
+    private void setZoom(double value) {
+        value = Math.max(Default.MIN_ZOOM.getFloat(), Math.min(value, Default.MAX_ZOOM.getFloat()));
+        if (value == zoom) {
+            return;
         }
+
+        final double col = colScroll + (getVisibleColumns() / 2.0);
+        final double row = rowScroll + (getVisibleRows() / 2.0);
+
+        zoom = value;
+        colScroll = (int)Math.round(col - (getVisibleColumns() / 2.0));
+        rowScroll = (int)Math.round(row - (getVisibleRows() / 2.0));
+
+        rebuildPending = true;
+        syncGuideLinePositions();
+        requestRepaint();
+    }
+
+    private void zoomIn() { setZoom(zoom * ZOOM_STEP); }
+    private void zoomOut() { setZoom(zoom / ZOOM_STEP); }
+
+
+
+    /************************************************************************
+     * Support code for the edit history. Each change to a Warp is made by
+     * one of these methods, which return the edit for the History.
+     */
+
+    private History.Edit rotate(Warp warp, int step) {
+        warp.rotate(step);
+
+        return new WarpEdit.Rotation(warp, step);
+    }
+
+    private History.Edit colourThreads(Warp warp, int pos, int colourIndex, int count) {
+        final int[] before = warp.getColours(pos, count);
+        warp.colourThreads(pos, colourIndex, count);
+
+        return WarpEdit.splice(warp, pos, before, warp.getColours(pos, before.length), false);
     }
 
-    private void rotateRight() {
-        colList.rotateDecrease();
+    private History.Edit deleteThreads(Warp warp, int pos, int count) {
+        final int active = warp.getActive();
+        final int[] before = warp.getColours(pos, count);
+        warp.deleteThreads(pos, count);
+
+        final int deleted = active - warp.getActive();
+
+        return WarpEdit.splice(warp, pos, Arrays.copyOf(before, deleted), new int[0], false);
+    }
+
+    private History.Edit insertThreads(Warp warp, int pos, int count, int colourIndex) {
+        final int active = warp.getActive();
+        warp.insertThreads(pos, count, colourIndex);
+
+        final int inserted = warp.getActive() - active;
+
+        return WarpEdit.splice(warp, pos, new int[0], warp.getColours(pos, inserted), false);
+    }
+
+    /**
+     * Change the number of threads in a sett, recording only the threads
+     * removed from or added to the end.
+     */
+    private History.Edit resize(Warp warp, int size, int colourIndex) {
+        final int active = warp.getActive();
+        final int first = Math.max(0, Math.min(active, size));
+        final int[] tail = warp.getColours(first, active - first);
+        warp.setActive(size, colourIndex);
+
+        final int pos = Math.min(active, warp.getActive());
+        final int[] before = Arrays.copyOfRange(tail, pos - first, tail.length);
+        final int[] after = warp.getColours(pos, warp.getActive() - pos);
+
+        return WarpEdit.splice(warp, pos, before, after, true);
+    }
+
+    /**
+     * Replace all the threads of a sett, recording the whole sett.
+     */
+    private History.Edit replace(Warp warp, Runnable change) {
+        final int[] before = warp.getColours(0, warp.getActive());
+        change.run();
+
+        return WarpEdit.splice(warp, 0, before, warp.getColours(0, warp.getActive()), false);
+    }
+
+
+
+    /************************************************************************
+     * Support code for the key handlers. 
+     */
+
+    /**
+     * Rotate a sett, and the other sett if they are duplicated, as a 
+     * single edit.
+     * @param warp to rotate.
+     * @param other warp to rotate if the setts are duplicated.
+     * @param step to rotate by.
+     */
+    private void rotate(Warp warp, Warp other, int step) {
+        final History history = model.getHistory();
+
+        history.begin();
+        history.record(rotate(warp, step));
         if (model.isDuplicate()) {
-            rowList.rotateDecrease();
+            history.record(rotate(other, step));
         }
+        history.end();
     }
 
+    private void rotateUp() { rotate(rowList, colList, 1); }
+    private void rotateDown() { rotate(rowList, colList, -1); }
+    private void rotateLeft() { rotate(colList, rowList, 1); }
+    private void rotateRight() { rotate(colList, rowList, -1); }
+
 
     private void augmentHeading(String label) {
         if ((label == null) || (label.isBlank()))
@@ -323,6 +601,53 @@ public class Sample extends Stage {
                 rotateRight();
                 break;
 
+            case PAGE_UP:
+                if (event.isShiftDown())
+                    scrollColumns(-getVisibleColumns());
+                else
+                    scrollRows(-getVisibleRows());
+                break;
+
+            case PAGE_DOWN:
+                if (event.isShiftDown())
+                    scrollColumns(getVisibleColumns());
+                else
+                    scrollRows(getVisibleRows());
+                break;
+
+            case HOME:
+                scrollTo(0, 0);
+                break;
+
+            case END:
+                scrollTo(getColumnCount(), getRowCount());
+                break;
+
+            case EQUALS:
+            case ADD:
+                zoomIn();
+                break;
+
+            case MINUS:
+            case SUBTRACT:
+                zoomOut();
+                break;
+
+            case DIGIT0:
+            case NUMPAD0:
+                setZoom(1.0);
+                break;
+
+            case Z:
+                if (event.isShortcutDown())
+                    model.undo();
+                break;
+
+            case Y:
+                if (event.isShortcutDown())
+                    model.redo();
+                break;
+
             default:
                 break;
             }
@@ -382,6 +707,23 @@ public class Sample extends Stage {
             lastPos = pos;
         });
 
+        scene.setOnScroll(event -> {
+            // Control zooms, Shift scrolls the columns, as does a horizontal
+            // scroll.
+            if (event.isControlDown()) {
+                if (event.getDeltaY() > 0)
+                    zoomIn();
+                else if (event.getDeltaY() < 0)
+                    zoomOut();
+            } else if (event.isShiftDown()) {
+                final double delta = (event.getDeltaY() != 0) ? event.getDeltaY() : event.getDeltaX();
+                scrollColumns(deltaToThreads(delta));
+            } else {
+                scrollColumns(deltaToThreads(event.getDeltaX()));
+                scrollRows(deltaToThreads(event.getDeltaY()));
+            }
+        });
+
         scene.setOnMouseExited(event -> {
             final int scope = model.isDuplicate() ? BOTH_ZONE : lastZone;
             clearHighlights(scope);
@@ -465,6 +807,25 @@ public class Sample extends Stage {
         return topBar;
     }
 
+    /**
+     * Builds the rendering backend selected by the model.
+     * @return the Surface that displays the tartan, positioned after the
+     * thread selection border.
+     */
+    private Surface buildSurface() {
+        Surface result;
+        if (model.isPixelBuffer()) {
+            result = new BufferSurface(CANVAS_WIDTH, CANVAS_HEIGHT);
+        } else {
+            result = new CanvasSurface(CANVAS_WIDTH, CANVAS_HEIGHT);
+        }
+
+        result.getNode().setLayoutX(OFFSET);
+        result.getNode().setLayoutY(OFFSET);
+
+        return result;
+    }
+
     /**
      * Builds the tartan swatch display as a Group.
      * @return the Group that displays the tartan swatch.
@@ -475,17 +836,20 @@ public class Sample extends Stage {
         // Use a silver background.
         Rectangle background = new Rectangle(width, height, Color.SILVER);
 
-        canvas = new Canvas(width-OFFSET, height-OFFSET);
-        canvas.setLayoutX(OFFSET);
-        canvas.setLayoutY(OFFSET);
+        surface = buildSurface();
+
+        // The thread selectors and highlights are drawn on a transparent 
+        // overlay, so that they can change without redrawing the tartan.
+        overlay = new Canvas(width, height);
+        overlay.setMouseTransparent(true);
 
         group.getChildren().add(background);
-        group.getChildren().add(canvas);
+        group.getChildren().add(surface.getNode());
+        group.getChildren().add(overlay);
 
-        // Grab the graphics context while we are here.
-        gc = canvas.getGraphicsContext2D();
-        gc.setFill(Color.GRAY);
-        gc.fillRect(0, 0, width-OFFSET, height-OFFSET);
+        // Use the top left of the tartan as the origin of the overlay.
+        overlayGc = overlay.getGraphicsContext2D();
+        overlayGc.translate(OFFSET, OFFSET);
 
         return group;
     }
@@ -557,35 +921,43 @@ public class Sample extends Stage {
      */
 
     private void deleteThreads(int scope, int pos) {
+        final History history = model.getHistory();
+
+        history.begin();
         if (scope == BOTH_ZONE) {
-            rowList.deleteThreads(pos);
-            colList.deleteThreads(pos);
+            history.record(deleteThreads(rowList, pos, model.getThreadCount()));
+            history.record(deleteThreads(colList, pos, model.getThreadCount()));
             model.syncRowCountSVF();
             model.syncColumnCountSVF();
         } else if (scope == ROW_ZONE) {
-            rowList.deleteThreads(pos);
+            history.record(deleteThreads(rowList, pos, model.getThreadCount()));
             model.syncRowCountSVF();
         } else if (scope == COLUMN_ZONE) {
-            colList.deleteThreads(pos);
+            history.record(deleteThreads(colList, pos, model.getThreadCount()));
             model.syncColumnCountSVF();
         }
+        history.end();
 
         syncGuideLinePositions();
     }
 
     private void insertThreads(int scope, int pos) {
+        final History history = model.getHistory();
+
+        history.begin();
         if (scope == BOTH_ZONE) {
-            rowList.insertThreads(pos);
-            colList.insertThreads(pos);
+            history.record(insertThreads(rowList, pos, model.getThreadCount(), model.getSelectedColourIndex()));
+            history.record(insertThreads(colList, pos, model.getThreadCount(), model.getSelectedColourIndex()));
             model.syncRowCountSVF();
             model.syncColumnCountSVF();
         } else if (scope == ROW_ZONE) {
-            rowList.insertThreads(pos);
+            history.record(insertThreads(rowList, pos, model.getThreadCount(), model.getSelectedColourIndex()));
             model.syncRowCountSVF();
         } else if (scope == COLUMN_ZONE) {
-            colList.insertThreads(pos);
+            history.record(insertThreads(colList, pos, model.getThreadCount(), model.getSelectedColourIndex()));
             model.syncColumnCountSVF();
         }
+        history.end();
 
         syncGuideLinePositions();
     }
@@ -600,16 +972,19 @@ public class Sample extends Stage {
     private void setThreadColour(int scope, int pos) {
         final int COLOURINDEX = model.getSelectedColourIndex();
         final int COUNT = model.getThreadCount();
-        final int REPEAT = (scope == COLUMN_ZONE) ? getColumnCount() : getRowCount();
 
+        final History history = model.getHistory();
+
+        history.begin();
         if (scope == BOTH_ZONE) {
-            rowList.colourThreads(pos, COLOURINDEX, COUNT, REPEAT);
-            colList.colourThreads(pos, COLOURINDEX, COUNT, REPEAT);
+            history.record(colourThreads(rowList, pos, COLOURINDEX, COUNT));
+            history.record(colourThreads(colList, pos, COLOURINDEX, COUNT));
         } else if (scope == ROW_ZONE) {
-            rowList.colourThreads(pos, COLOURINDEX, COUNT, REPEAT);
+            history.record(colourThreads(rowList, pos, COLOURINDEX, COUNT));
         } else if (scope == COLUMN_ZONE) {
-            colList.colourThreads(pos, COLOURINDEX, COUNT, REPEAT);
+            history.record(colourThreads(colList, pos, COLOURINDEX, COUNT));
         }
+        history.end();
     }
 
 
@@ -620,17 +995,16 @@ public class Sample extends Stage {
 
     private void clearHighlights(int scope) {
         if (scope == BOTH_ZONE) {
-            rowList.clearThreads();
-            colList.clearThreads();
+            rowView.clearThreads();
+            colView.clearThreads();
         } else if (scope == ROW_ZONE) {
-            rowList.clearThreads();
+            rowView.clearThreads();
         } else if (scope == COLUMN_ZONE) {
-            colList.clearThreads();
+            colView.clearThreads();
         }
     }
 
     private void highlightThreads(int scope, int pos, boolean highlight) {
-        final Color COLOUR = highlight ? model.getGuideLineColour() : defaultColour;
         final int COUNT = model.getThreadCount();
         final int REPEAT = (scope == COLUMN_ZONE) ? getColumnCount() : getRowCount();
 
@@ -639,22 +1013,22 @@ public class Sample extends Stage {
                 if (pos >= REPEAT)
                     break;
 
-                rowList.highlightThread(pos, highlight, COLOUR);
-                colList.highlightThread(pos, highlight, COLOUR);
+                rowView.highlightThread(pos, highlight);
+                colView.highlightThread(pos, highlight);
             }
         } else if (scope == ROW_ZONE) {
             for (int c = COUNT; c > 0; c--, pos++) {
                 if (pos >= REPEAT)
                     break;
 
-                rowList.highlightThread(pos, highlight, COLOUR);
+                rowView.highlightThread(pos, highlight);
             }
         } else if (scope == COLUMN_ZONE) {
             for (int c = COUNT; c > 0; c--, pos++) {
                 if (pos >= REPEAT)
                     break;
 
-                colList.highlightThread(pos, highlight, COLOUR);
+                colView.highlightThread(pos, highlight);
             }
         }
     }
@@ -666,17 +1040,34 @@ public class Sample extends Stage {
      */
 
     public void setRowList(ArrayList<Integer> list) {
-        rowList.setList(list);
+        model.getHistory().record(replace(rowList, () -> rowList.setList(list)));
 
         syncGuideLinePositions();
     }
 
     public void setColumnList(ArrayList<Integer> list) {
-        colList.setList(list);
+        model.getHistory().record(replace(colList, () -> colList.setList(list)));
+
+        syncGuideLinePositions();
+    }
+
+    public void setRowSett(Sett sett) {
+        model.getHistory().record(replace(rowList, () -> rowList.setSett(sett)));
 
         syncGuideLinePositions();
     }
 
+    public void setColumnSett(Sett sett) {
+        model.getHistory().record(replace(colList, () -> colList.setSett(sett)));
+
+        syncGuideLinePositions();
+    }
+
+    public Sett getRowSett() { return rowList.getSett(); }
+    public Sett getColumnSett() { return colList.getSett(); }
+    public TartanDesign.Threads getRowThreads() { return rowList.snapshot(); }
+    public TartanDesign.Threads getColumnThreads() { return colList.snapshot(); }
+
     public ArrayList<Integer> getRowList() {
         return rowList.getList();
     }
@@ -686,13 +1077,13 @@ public class Sample extends Stage {
     }
 
     public void setRowCount(int size) {
-        rowList.setActive(size);
+        model.getHistory().record(resize(rowList, size, model.getSelectedColourIndex()));
 
         syncGuideLinePositions();
     }
 
     public void setColumnCount(int size) {
-        colList.setActive(size);
+        model.getHistory().record(resize(colList, size, model.getSelectedColourIndex()));
 
         syncGuideLinePositions();
     }
@@ -709,8 +1100,16 @@ public class Sample extends Stage {
     }
 
     public void clear() {
-        rowList.clear();
-        colList.clear();
+        final History history = model.getHistory();
+
+        history.begin();
+        history.record(replace(rowList, rowList::clear));
+        history.record(replace(colList, colList::clear));
+        history.end();
+
+        colScroll = 0;
+        rowScroll = 0;
+        zoom = 1.0;
     }
 
 
@@ -720,44 +1119,55 @@ public class Sample extends Stage {
      */
 
     /**
-     * Synchronise to the current swatch colour.
+     * Synchronise to the current swatch colour. The displayed tartan holds
+     * swatch indices, so it only needs to be re-mapped, not re-rendered.
      */
     public void syncColour() {
-        rowList.syncColour();
-        colList.syncColour();
+        recolourPending = true;
+        requestRepaint();
+    }
+
+    /**
+     * Synchronise to the selected rendering backend, replacing the current
+     * surface and redrawing everything.
+     */
+    public void syncSurface() {
+        final ObservableList<Node> items = group.getChildren();
+        final int index = items.indexOf(surface.getNode());
+
+        surface = buildSurface();
+        items.set(index, surface.getNode());
+
+        rebuildPending = true;
+        recolourPending = true;
+        requestRepaint();
     }
 
     /**
      * Synchronise to the thread size.
      */
     public void syncThreadSize() {
-        gc.setFill(Color.GRAY);
-        final double WIDTH = Default.MPC_WIDTH.getFloat()-OFFSET;
-        final double HEIGHT = Default.MPC_HEIGHT.getFloat()-OFFSET;
-        gc.fillRect(0, 0, WIDTH, HEIGHT);
-        gc.setStroke(defaultColour);
-        gc.setLineWidth(model.getBorderThickness());
-
-        rowList.syncThreadSize();
-        colList.syncThreadSize();
+        rebuildPending = true;
+        requestRepaint();
 
         syncGuideLinePositions();
     }
 
+    /**
+     * Synchronise to threads changed outside of the Sample, such as by an
+     * undo or redo.
+     */
+    public void syncDesign() {
+        syncGuideLinePositions();
+        requestRepaint();
+    }
 
     /**
      * Synchronize to duplicate the column threads for the rows.
      * Assumes that the row count has been set to the column count.
      */
     public void syncDuplicateThreads() {
-        final int ACTIVE = colList.getActive();
-
-        for (int index = 0; index < ACTIVE; ++index) {
-            final int colourIndex = colList.getColourIndex(index);
-
-            rowList.setColourIndex(index, colourIndex);
-        }
-        rowList.setActive(ACTIVE);
+        model.getHistory().record(replace(rowList, () -> rowList.setList(colList.getList())));
 
         syncGuideLinePositions();
     }
@@ -767,19 +1177,24 @@ public class Sample extends Stage {
      * thread counts.
      */
     private void syncGuideLinePositions() {
+        clampScroll();
 
-        final double CSIZE = getSwatchWidth();
-        final double RSIZE = getSwatchHeight();
+        final double size = getDisplaySize();
+        final double CSIZE = size * getColumnCount();
+        final double RSIZE = size * getRowCount();
 
         final double CSTEP = CSIZE / (Default.GUIDE_COUNT.getFloat() + 1);
         final double RSTEP = RSIZE / (Default.GUIDE_COUNT.getFloat() + 1);
 
-        final double CLENGTH = OFFSET + RSIZE;
-        final double RLENGTH = OFFSET + CSIZE;
+        final double CLENGTH = OFFSET + getSwatchHeight();
+        final double RLENGTH = OFFSET + getSwatchWidth();
 
-        final double STARTPOS = OFFSET + (model.getThreadSize() / 2);
-        double xPos = STARTPOS + CSTEP;
-        double yPos = STARTPOS + RSTEP;
+        // The guides divide the whole sett, so shift them by the scroll 
+        // position and hide any that are outside the viewport.
+        final double STARTPOS = OFFSET + (size / 2);
+        final boolean show = model.isShowGuide();
+        double xPos = STARTPOS + CSTEP - (colScroll * size);
+        double yPos = STARTPOS + RSTEP - (rowScroll * size);
         for (int i = 0; i < Default.GUIDE_COUNT.getInt(); ++i) {
             Line guide = guides.get(i);
 
@@ -787,6 +1202,7 @@ public class Sample extends Stage {
             guide.setStartY(OFFSET);
             guide.setEndX(xPos);
             guide.setEndY(CLENGTH);
+            guide.setVisible(show && (xPos >= OFFSET) && (xPos < RLENGTH));
 
             guide = guides.get(i + Default.GUIDE_COUNT.getInt());
 
@@ -794,6 +1210,7 @@ public class Sample extends Stage {
             guide.setStartY(yPos);
             guide.setEndX(RLENGTH);
             guide.setEndY(yPos);
+            guide.setVisible(show && (yPos >= OFFSET) && (yPos < CLENGTH));
 
             xPos += CSTEP;
             yPos += RSTEP;
@@ -804,10 +1221,7 @@ public class Sample extends Stage {
      * Synchronize the displaying of the guide lines with the model.
      */
     public void syncGuideVisible() {
-        final boolean show = model.isShowGuide();
-        for (Line guide : guides) {
-            guide.setVisible(show);
-        }
+        syncGuideLinePositions();
     }
 
     /**
@@ -818,6 +1232,9 @@ public class Sample extends Stage {
         for (Line guide : guides) {
             guide.setStroke(colour);
         }
+
+        // The highlighted thread selectors use the guide line colour.
+        requestRepaint();
     }
 
 
@@ -847,8 +1264,10 @@ public class Sample extends Stage {
      * Initialization after the model has been initialised.
      */
     public void init() {
-        rowList.init(group, gc);
-        colList.init(group, gc);
+        rowList.addListener(this::requestRepaint);
+        colList.addListener(this::requestRepaint);
+        rowView.init(overlayGc, this::requestRepaint);
+        colView.init(overlayGc, this::requestRepaint);
 
         syncGuideLineColour();
         syncGuideLinePositions();
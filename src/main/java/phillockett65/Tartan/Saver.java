@@ -0,0 +1,284 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+/*
+ * Saver is a class that saves and exports designs in the background, so 
+ * that the FX thread is never held up rendering images or writing files.
+ *
+ * The design is captured on the FX thread as a TartanDesign snapshot, which
+ * does not refer to the Model and costs O(1) to take. The save then runs on
+ * a worker thread, which builds the settings and the image from the
+ * snapshot, writing the settings file on a second worker while the image
+ * is encoded. Saves of the same design are chained, so they always
+ * complete in the order they were made, while saves of different designs
+ * run side by side. Exports are chained in the same way by the file they
+ * write. The progress and the outcome of each save are reported, on the FX
+ * thread, through a status callback.
+ */
+package phillockett65.Tartan;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+import javafx.application.Platform;
+import phillockett65.Debug.Debug;
+
+
+public class Saver {
+
+    // Debug delta used to adjust the local logging level.
+    private static final int DD = 0;
+
+    // Longest time to wait for the outstanding saves when closing.
+    private static final long CLOSE_TIMEOUT = 60;
+
+    private final Path base;
+    private final String dataFile;
+    private final String imageFile;
+    private final RenderCache cache;
+    private final Catalogue catalogue;
+    private final Consumer<String> status;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "Save");
+        thread.setDaemon(true);
+
+        return thread;
+    });
+
+    // The last save of each design, or export to each file, that has not
+    // yet completed.
+    private final HashMap<String, CompletableFuture<Void>> pending = new HashMap<String, CompletableFuture<Void>>();
+
+
+
+    /************************************************************************
+     * Support code for the Initialization of the Saver.
+     */
+
+    /**
+     * Constructor.
+     * @param base directory holding a directory for each design.
+     * @param dataFile name of the settings file in each design directory.
+     * @param imageFile name of the image file in each design directory.
+     * @param cache of rendered images.
+     * @param catalogue to update when a design is saved.
+     * @param status called on the FX thread with progress messages.
+     */
+    public Saver(Path base, String dataFile, String imageFile, RenderCache cache,
+        Catalogue catalogue, Consumer<String> status) {
+        this.base = base;
+        this.dataFile = dataFile;
+        this.imageFile = imageFile;
+        this.cache = cache;
+        this.catalogue = catalogue;
+        this.status = status;
+    }
+
+
+
+    /************************************************************************
+     * Support code for the save pipeline.
+     */
+
+    /**
+     * Pass a message to the status callback on the FX thread.
+     * @param message to display.
+     */
+    private void report(String message) {
+        Platform.runLater(() -> status.accept(message));
+    }
+
+    /**
+     * Build a progress callback that reports the percentage of an image
+     * written, only when the percentage changes, to spare the FX thread.
+     * @param label to report the percentage with.
+     * @param height of the image in pixels.
+     * @return the progress callback, given the number of lines written.
+     */
+    private IntConsumer progress(String label, int height) {
+        final int[] reported = { -1 };
+
+        return lines -> {
+            final int percent = (int)((100L * lines) / height);
+            if (percent != reported[0]) {
+                reported[0] = percent;
+                report(label + ": " + percent + "%");
+            }
+        };
+    }
+
+    /**
+     * Run a job on a worker thread, after any earlier job with the same key
+     * has completed.
+     * @param key of the job, the design name or the exported file.
+     * @param failure message to report if the job fails.
+     * @param task to run.
+     */
+    private void submit(String key, String failure, Runnable task) {
+        synchronized (pending) {
+            final CompletableFuture<Void> previous = pending.get(key);
+            final CompletableFuture<Void> start = (previous == null) ? 
+                CompletableFuture.completedFuture(null) : previous.exceptionally(e -> null);
+
+            final CompletableFuture<Void> job = start.thenRunAsync(task, executor);
+            pending.put(key, job);
+
+            job.whenComplete((result, e) -> {
+                if (e != null) {
+                    Debug.critical(DD, "submit() - " + key + ": " + e);
+                    report(failure);
+                }
+                synchronized (pending) {
+                    if (pending.get(key) == job) {
+                        pending.remove(key);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Save a design, writing the settings and the image at the same time.
+     * Runs on a worker thread.
+     * @param name of the design.
+     * @param design snapshot of the design.
+     * @param width of the image in pixels.
+     * @param height of the image in pixels.
+     * @param parallelism number of worker threads to render the image with.
+     */
+    private void run(String name, TartanDesign design, int width, int height, int parallelism) {
+        final Path dir = base.resolve(name);
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            Debug.critical(DD, "run() - " + e.getMessage());
+            report("Save failed: " + name);
+
+            return;
+        }
+
+        final CompletableFuture<Boolean> data = CompletableFuture.supplyAsync(
+            () -> DataStore2.capture(design).save(dir.resolve(dataFile)), executor);
+
+        final TartanImage image = new TartanImage(design, width, height);
+        final boolean drawn = image.write(dir.resolve(imageFile), cache, parallelism,
+            progress("Saving " + name, image.getHeight()));
+
+        final boolean written = data.join();
+        catalogue.update(name);
+
+        if (written && drawn) {
+            report("Saved to " + dir);
+        } else {
+            report("Save failed: " + name);
+        }
+    }
+
+
+
+    /************************************************************************
+     * Public interface.
+     */
+
+    /**
+     * Save a design in the background, after any earlier saves of the same
+     * design have completed.
+     * @param name of the design.
+     * @param design snapshot of the design, taken on the FX thread.
+     * @param width of the image in pixels.
+     * @param height of the image in pixels.
+     * @param parallelism number of worker threads to render the image with.
+     */
+    public void save(String name, TartanDesign design, int width, int height, int parallelism) {
+        submit(name, "Save failed: " + name, () -> run(name, design, width, height, parallelism));
+    }
+
+    /**
+     * Export a design as an image in the background, such as a fabric 
+     * print, after any earlier export to the same file has completed.
+     * @param design snapshot of the design, taken on the FX thread.
+     * @param path of the image file.
+     * @param width of the image in pixels.
+     * @param height of the image in pixels.
+     * @param parallelism number of worker threads to render the image with.
+     */
+    public void export(TartanDesign design, Path path, int width, int height, int parallelism) {
+        final String key = path.toAbsolutePath().toString();
+
+        submit(key, "Export failed: " + path, () -> {
+            final TartanImage image = new TartanImage(design, width, height);
+            if (image.write(path, cache, parallelism, progress("Exporting", height))) {
+                report("Exported to " + path);
+            } else {
+                report("Export failed: " + path);
+            }
+        });
+    }
+
+    /**
+     * Wait for the outstanding saves of a design to complete, such as 
+     * before reading it back.
+     * @param name of the design.
+     */
+    public void finish(String name) {
+        final CompletableFuture<Void> job;
+        synchronized (pending) {
+            job = pending.get(name);
+        }
+
+        if (job != null) {
+            job.exceptionally(e -> null).join();
+        }
+    }
+
+    /**
+     * Wait for all the outstanding saves and exports to complete and stop the worker
+     * threads.
+     */
+    public void close() {
+        final ArrayList<CompletableFuture<Void>> jobs;
+        synchronized (pending) {
+            jobs = new ArrayList<CompletableFuture<Void>>(pending.values());
+        }
+
+        for (CompletableFuture<Void> job : jobs) {
+            job.exceptionally(e -> null).join();
+        }
+
+        executor.shutdown();
+        try {
+            executor.awaitTermination(CLOSE_TIMEOUT, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Debug.critical(DD, "close() - " + e.getMessage());
+        }
+    }
+
+}
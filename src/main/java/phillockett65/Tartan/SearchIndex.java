@@ -0,0 +1,342 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+/*
+ * SearchIndex is a class that finds saved designs by the words in their
+ * names and in the names of their swatches, as they are typed.
+ *
+ * Each word is lower-cased and held in a sorted map from the word to the
+ * designs that use it, so the words starting with a prefix are a single
+ * contiguous range of the map. A query costs O(log n) plus the size of the
+ * matching postings, not a pass over every design, and adding or removing
+ * a design only touches its own words. Designs are numbered internally and
+ * the scores are kept in reused arrays, so a short query that matches most
+ * of the library still fits in a frame. Like the Sett, it is pure data and
+ * is not thread-safe.
+ */
+package phillockett65.Tartan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+
+public class SearchIndex {
+
+    // Scores of the ways a query word can match a design.
+    private static final int SWATCH_SCORE = 1;
+    private static final int WORD_SCORE = 3;
+    private static final int EXACT_SCORE = 1;
+    private static final int START_SCORE = 8;
+
+    // Postings of a word: the ids of the designs that use it.
+    private class Postings {
+        private int[] ids = new int[4];
+        private int count = 0;
+
+        private void add(int id) {
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+            }
+            ids[count++] = id;
+        }
+
+        private void remove(int id) {
+            for (int i = 0; i < count; ++i) {
+                if (ids[i] == id) {
+                    ids[i] = ids[--count];
+                    return;
+                }
+            }
+        }
+    }
+
+    // Word index of the design names and of the swatch names.
+    private final TreeMap<String, Postings> nameWords = new TreeMap<String, Postings>();
+    private final TreeMap<String, Postings> swatchWords = new TreeMap<String, Postings>();
+
+    // The designs by id, with their lower-case names and words, so that
+    // they can be ranked and removed. Removed ids are reused.
+    private final HashMap<String, Integer> ids = new HashMap<String, Integer>();
+    private String[] designs = new String[64];
+    private String[] lowerNames = new String[64];
+    private ArrayList<ArrayList<String>> nameLists = new ArrayList<ArrayList<String>>();
+    private ArrayList<ArrayList<String>> swatchLists = new ArrayList<ArrayList<String>>();
+    private final ArrayList<Integer> free = new ArrayList<Integer>();
+
+    // Scratch arrays for a query, indexed by design id.
+    private int[] totals = new int[64];
+    private int[] best = new int[64];
+    private int[] matched = new int[64];
+
+
+
+    /************************************************************************
+     * Support code for the word maps.
+     */
+
+    /**
+     * Split text into lower-case words of letters and digits.
+     * @param text to split, may be null.
+     * @return the words of the text.
+     */
+    private static ArrayList<String> split(String text) {
+        ArrayList<String> words = new ArrayList<String>();
+        if (text == null) {
+            return words;
+        }
+
+        final String lower = text.toLowerCase();
+        int start = -1;
+        for (int i = 0; i <= lower.length(); ++i) {
+            final boolean letter = (i < lower.length()) && Character.isLetterOrDigit(lower.charAt(i));
+            if (letter && (start < 0)) {
+                start = i;
+            } else if (!letter && (start >= 0)) {
+                words.add(lower.substring(start, i));
+                start = -1;
+            }
+        }
+
+        return words;
+    }
+
+    private void add(TreeMap<String, Postings> map, String word, int id) {
+        Postings postings = map.get(word);
+        if (postings == null) {
+            postings = new Postings();
+            map.put(word, postings);
+        }
+        postings.add(id);
+    }
+
+    private void remove(TreeMap<String, Postings> map, String word, int id) {
+        final Postings postings = map.get(word);
+        if (postings == null) {
+            return;
+        }
+
+        postings.remove(id);
+        if (postings.count == 0) {
+            map.remove(word);
+        }
+    }
+
+    /**
+     * Allocate an id for a new design.
+     * @return the id.
+     */
+    private int allocate() {
+        if (!free.isEmpty()) {
+            return free.remove(free.size() - 1);
+        }
+
+        final int id = nameLists.size();
+        nameLists.add(null);
+        swatchLists.add(null);
+        if (id == designs.length) {
+            final int capacity = id * 2;
+            designs = Arrays.copyOf(designs, capacity);
+            lowerNames = Arrays.copyOf(lowerNames, capacity);
+            totals = new int[capacity];
+            best = new int[capacity];
+            matched = new int[capacity];
+        }
+
+        return id;
+    }
+
+    /**
+     * Record the best score of each design with a word starting with a 
+     * prefix.
+     * @param map of words to search.
+     * @param prefix of the words.
+     * @param score of a match.
+     */
+    private void match(TreeMap<String, Postings> map, String prefix, int score) {
+        for (Map.Entry<String, Postings> entry : map.subMap(prefix, prefix + Character.MAX_VALUE).entrySet()) {
+            final int value = entry.getKey().equals(prefix) ? score + EXACT_SCORE : score;
+            final Postings postings = entry.getValue();
+            for (int i = 0; i < postings.count; ++i) {
+                final int id = postings.ids[i];
+                if (best[id] < value) {
+                    best[id] = value;
+                }
+            }
+        }
+    }
+
+    /**
+     * Add the best scores of the current query word to the totals of the 
+     * designs that matched every previous word.
+     * @param map of words searched.
+     * @param prefix searched for.
+     * @param word number of the query word.
+     */
+    private void total(TreeMap<String, Postings> map, String prefix, int word) {
+        for (Postings postings : map.subMap(prefix, prefix + Character.MAX_VALUE).values()) {
+            for (int i = 0; i < postings.count; ++i) {
+                final int id = postings.ids[i];
+                if ((best[id] > 0) && (matched[id] == word)) {
+                    totals[id] += best[id];
+                    matched[id] = word + 1;
+                }
+                best[id] = 0;
+            }
+        }
+    }
+
+
+
+    /************************************************************************
+     * Public interface.
+     */
+
+    /**
+     * Add a design to the index, or update it if it is already indexed.
+     * @param design name of the design.
+     * @param swatchNames names of the swatches of the design, may be null.
+     */
+    public void add(String design, String[] swatchNames) {
+        remove(design);
+
+        final ArrayList<String> name = split(design);
+        ArrayList<String> swatch = new ArrayList<String>();
+        if (swatchNames != null) {
+            for (String label : swatchNames) {
+                swatch.addAll(split(label));
+            }
+        }
+
+        final int id = allocate();
+        ids.put(design, id);
+        designs[id] = design;
+        lowerNames[id] = design.toLowerCase();
+        nameLists.set(id, name);
+        swatchLists.set(id, swatch);
+
+        for (String word : name) {
+            add(nameWords, word, id);
+        }
+        for (String word : swatch) {
+            add(swatchWords, word, id);
+        }
+    }
+
+    /**
+     * Remove a design from the index.
+     * @param design name of the design.
+     */
+    public void remove(String design) {
+        final Integer id = ids.remove(design);
+        if (id == null) {
+            return;
+        }
+
+        for (String word : nameLists.get(id)) {
+            remove(nameWords, word, id);
+        }
+        for (String word : swatchLists.get(id)) {
+            remove(swatchWords, word, id);
+        }
+
+        designs[id] = null;
+        lowerNames[id] = null;
+        nameLists.set(id, null);
+        swatchLists.set(id, null);
+        free.add(id);
+    }
+
+    /**
+     * @return the number of designs in the index.
+     */
+    public int size() { return ids.size(); }
+
+    /**
+     * Find the designs that match every word of a query, where each query
+     * word is the start of a word of the design name or of a swatch name.
+     * Designs whose name starts with the query rank first, then matches in
+     * the design name, then matches in the swatch names, and then in 
+     * alphabetical order.
+     * @param query words to search for.
+     * @param limit maximum number of designs to return.
+     * @return the names of the matching designs, best first.
+     */
+    public ArrayList<String> search(String query, int limit) {
+        final ArrayList<String> words = split(query);
+        ArrayList<String> result = new ArrayList<String>();
+        if (words.isEmpty() || (limit <= 0)) {
+            return result;
+        }
+
+        final int count = nameLists.size();
+        Arrays.fill(totals, 0, count, 0);
+        Arrays.fill(matched, 0, count, 0);
+
+        // Total the scores of the designs that match each word in turn.
+        for (int w = 0; w < words.size(); ++w) {
+            final String word = words.get(w);
+            match(swatchWords, word, SWATCH_SCORE);
+            match(nameWords, word, WORD_SCORE);
+            total(swatchWords, word, w);
+            total(nameWords, word, w);
+        }
+
+        // Keep only the best matches in a heap with the worst on top, so a
+        // short query that matches most of the library is not fully sorted.
+        final String lower = query.trim().toLowerCase();
+        final int all = words.size();
+        final Comparator<Integer> ranking = (a, b) -> {
+            final int order = Integer.compare(totals[b], totals[a]);
+            return (order != 0) ? order : lowerNames[a].compareTo(lowerNames[b]);
+        };
+        PriorityQueue<Integer> top = new PriorityQueue<Integer>(limit + 1, ranking.reversed());
+        for (int id = 0; id < count; ++id) {
+            if (matched[id] != all) {
+                continue;
+            }
+
+            if (lowerNames[id].startsWith(lower)) {
+                totals[id] += START_SCORE;
+            }
+            if (top.size() < limit) {
+                top.add(id);
+            } else if (ranking.compare(id, top.peek()) < 0) {
+                top.poll();
+                top.add(id);
+            }
+        }
+
+        ArrayList<Integer> order = new ArrayList<Integer>(top);
+        Collections.sort(order, ranking);
+        for (int id : order) {
+            result.add(designs[id]);
+        }
+
+        return result;
+    }
+
+}
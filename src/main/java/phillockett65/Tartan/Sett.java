@@ -0,0 +1,263 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+/*
+ * Sett is a class that holds the colours of a sett as runs of threads of the
+ * same colour, (swatch index, count) pairs, rather than one entry per
+ * thread. Real setts are made of a few long stripes, so the memory used and
+ * the cost of storing, reading and comparing a sett depend on the number of
+ * stripes, not the number of threads. It is the form of the sett in the
+ * settings files, in threadcounts and in the thumbnails.
+ *
+ * Threads are only ever added to the end, and a thread of the same colour
+ * as the last run extends it, so the runs are always as few as possible.
+ * The sett is edited in the Warp, whose ring buffer gives the per thread
+ * colours that the display needs and rotates in constant time. Like the
+ * Warp, it is pure data and does not depend on JavaFX or the Model.
+ */
+package phillockett65.Tartan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+
+public class Sett {
+
+    // Initial capacity of the run arrays.
+    private static final int CAPACITY = 16;
+
+    private int[] colours;
+    private int[] lengths;
+
+    // Position after the end of each run, for finding a thread.
+    private int[] ends;
+
+    private int runs = 0;
+
+
+
+    /************************************************************************
+     * Support code for the run arrays.
+     */
+
+    /**
+     * Make sure the run arrays can hold a number of runs.
+     * @param size number of runs required.
+     */
+    private void ensureCapacity(int size) {
+        if (size <= colours.length) {
+            return;
+        }
+
+        final int capacity = Math.max(size, colours.length * 2);
+        colours = Arrays.copyOf(colours, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        ends = Arrays.copyOf(ends, capacity);
+    }
+
+    /**
+     * Find the run that holds a thread.
+     * @param pos of the thread, less than getLength().
+     * @return the index of the run.
+     */
+    private int find(int pos) {
+        int low = 0;
+        int high = runs - 1;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (ends[mid] > pos) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+
+        return low;
+    }
+
+
+
+    /************************************************************************
+     * Support code for the Initialization of the Sett.
+     */
+
+    /**
+     * Constructor for an empty sett.
+     */
+    public Sett() {
+        colours = new int[CAPACITY];
+        lengths = new int[CAPACITY];
+        ends = new int[CAPACITY];
+    }
+
+    /**
+     * Constructor from the per thread colours.
+     * @param threads colour indices of the threads.
+     */
+    public Sett(int[] threads) {
+        this();
+        for (int i = 0; i < threads.length; ) {
+            final int colour = threads[i];
+            final int start = i;
+            while ((i < threads.length) && (threads[i] == colour)) {
+                ++i;
+            }
+            append(colour, i - start);
+        }
+    }
+
+    /**
+     * Constructor from the per thread colours.
+     * @param threads colour indices of the threads.
+     */
+    public Sett(ArrayList<Integer> threads) {
+        this();
+        for (Integer colour : threads) {
+            append(colour, 1);
+        }
+    }
+
+    /**
+     * Copy constructor.
+     * @param other sett to copy.
+     */
+    public Sett(Sett other) {
+        colours = Arrays.copyOf(other.colours, Math.max(other.runs, CAPACITY));
+        lengths = Arrays.copyOf(other.lengths, colours.length);
+        ends = Arrays.copyOf(other.ends, colours.length);
+        runs = other.runs;
+    }
+
+
+
+    /************************************************************************
+     * Public interface.
+     */
+
+    /**
+     * @return the number of threads in the sett.
+     */
+    public int getLength() { return (runs == 0) ? 0 : ends[runs-1]; }
+
+    public int getRunCount() { return runs; }
+    public int getRunColour(int run) { return colours[run]; }
+    public int getRunLength(int run) { return lengths[run]; }
+
+    /**
+     * Get the colour of any thread, including the repeat threads, which
+     * are derived from the sett.
+     * @param index of the thread.
+     * @return the swatch index of the thread colour.
+     */
+    public int getColourIndex(int index) {
+        return colours[find(index % getLength())];
+    }
+
+    /**
+     * Add threads to the end of the sett.
+     * @param colourIndex of the swatch to use for the threads.
+     * @param count of threads to add.
+     */
+    public void append(int colourIndex, int count) {
+        if (count <= 0) {
+            return;
+        }
+
+        final int end = getLength() + count;
+        if ((runs > 0) && (colours[runs-1] == colourIndex)) {
+            lengths[runs-1] += count;
+            ends[runs-1] = end;
+        } else {
+            ensureCapacity(runs + 1);
+            colours[runs] = colourIndex;
+            lengths[runs] = count;
+            ends[runs] = end;
+            ++runs;
+        }
+    }
+
+    /**
+     * @return the colour indices of the threads.
+     */
+    public int[] toArray() {
+        int[] threads = new int[getLength()];
+        int start = 0;
+        for (int i = 0; i < runs; ++i) {
+            Arrays.fill(threads, start, ends[i], colours[i]);
+            start = ends[i];
+        }
+
+        return threads;
+    }
+
+    /**
+     * @return the colour indices of the threads.
+     */
+    public ArrayList<Integer> toList() {
+        ArrayList<Integer> threads = new ArrayList<Integer>(getLength());
+        for (int i = 0; i < runs; ++i) {
+            for (int j = 0; j < lengths[i]; ++j) {
+                threads.add(colours[i]);
+            }
+        }
+
+        return threads;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof Sett)) {
+            return false;
+        }
+
+        final Sett sett = (Sett)other;
+
+        return (runs == sett.runs) &&
+            Arrays.equals(colours, 0, runs, sett.colours, 0, runs) &&
+            Arrays.equals(lengths, 0, runs, sett.lengths, 0, runs);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 1;
+        for (int i = 0; i < runs; ++i) {
+            hash = (31 * hash) + colours[i];
+            hash = (31 * hash) + lengths[i];
+        }
+
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder output = new StringBuilder("[" + getLength() + "] = {");
+        for (int i = 0; i < runs; ++i) {
+            output.append(" ").append(colours[i]).append("x").append(lengths[i]);
+        }
+        output.append(" }");
+
+        return output.toString();
+    }
+
+}
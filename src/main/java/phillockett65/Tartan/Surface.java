@@ -0,0 +1,166 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Surface is the base class of the rendering backends that display the
+ * tartan in the Sample window. The Sample passes on the changes made since
+ * the last pulse and then calls draw(), leaving the backend to decide how
+ * much actually needs to be redrawn.
+ */
+package phillockett65.Tartan;
+
+import java.util.BitSet;
+
+import javafx.scene.Node;
+
+
+public abstract class Surface {
+
+    protected final int width;
+    protected final int height;
+
+    protected int[] rows;
+    protected int[] cols;
+    protected double size;
+    protected double thickness;
+    protected int[] palette;
+    protected int border;
+
+    // Changes since the last draw.
+    protected boolean reshaped = true;
+    protected boolean recoloured = true;
+    protected final BitSet changedRows = new BitSet();
+    protected final BitSet changedCols = new BitSet();
+
+
+
+    /************************************************************************
+     * Support code for the Initialization of the Surface.
+     */
+
+    /**
+     * Constructor.
+     * @param width of the displayed area in pixels.
+     * @param height of the displayed area in pixels.
+     */
+    protected Surface(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Forget the recorded changes. Called by the sub-classes at the end of
+     * draw().
+     */
+    protected void clearChanges() {
+        reshaped = false;
+        recoloured = false;
+        changedRows.clear();
+        changedCols.clear();
+    }
+
+    /**
+     * @return true if the threads are too small to be drawn individually,
+     * so that a downsampled image should be drawn instead.
+     */
+    protected boolean isLowDetail() {
+        return size < Default.LOD_THREAD_SIZE.getFloat();
+    }
+
+    /**
+     * @return true if any threads have changed colour since the last draw.
+     */
+    protected boolean isModified() {
+        return !changedRows.isEmpty() || !changedCols.isEmpty();
+    }
+
+
+
+    /************************************************************************
+     * Public interface.
+     */
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+
+    /**
+     * @return the scene graph node that displays the surface.
+     */
+    public abstract Node getNode();
+
+    /**
+     * Set up a new design, so that everything is redrawn.
+     * @param rows colour indices of the sett rows, in ring buffer order.
+     * @param cols colour indices of the sett columns, in ring buffer order.
+     * @param size of a thread in pixels.
+     * @param thickness of the thread borders in pixels.
+     */
+    public void setDesign(int[] rows, int[] cols, double size, double thickness) {
+        this.rows = rows;
+        this.cols = cols;
+        this.size = size;
+        this.thickness = thickness;
+
+        reshaped = true;
+        changedRows.clear();
+        changedCols.clear();
+    }
+
+    /**
+     * Update the colours of individual threads without changing the shape
+     * of the design.
+     * @param rows colour indices of the sett rows, in ring buffer order.
+     * @param cols colour indices of the sett columns, in ring buffer order.
+     * @param changedRows ring buffer positions of the changed rows.
+     * @param changedCols ring buffer positions of the changed columns.
+     */
+    public void setColours(int[] rows, int[] cols, BitSet changedRows, BitSet changedCols) {
+        this.rows = rows;
+        this.cols = cols;
+
+        if (!reshaped) {
+            this.changedRows.or(changedRows);
+            this.changedCols.or(changedCols);
+        }
+    }
+
+    /**
+     * Change the colours used to display the swatch indices.
+     * @param palette ARGB colours indexed by swatch.
+     * @param border ARGB colour of the thread borders.
+     */
+    public void setPalette(int[] palette, int border) {
+        this.palette = palette;
+        this.border = border;
+
+        recoloured = true;
+    }
+
+    /**
+     * Redraw whatever has changed since the last draw.
+     * @param colStart ring buffer position of the column at the left edge,
+     * less than the number of columns.
+     * @param rowStart ring buffer position of the row at the top edge, less
+     * than the number of rows.
+     * @param phase of the twill, added to the cell position.
+     */
+    public abstract void draw(int colStart, int rowStart, int phase);
+
+}
@@ -0,0 +1,199 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+/*
+ * TartanDesign is an immutable snapshot of a design: the thread colours of
+ * the rows and columns, the swatches and the layout settings. It does not 
+ * refer to JavaFX or the Model, so it can be handed to a worker thread, to 
+ * save or render the design, while the user carries on editing.
+ *
+ * The threads are held as Threads, which share the ring buffer of the Warp
+ * until the Warp next changes, so a snapshot costs O(1) in the length of
+ * the setts. Any work in proportion to the length, such as building the
+ * Sett or the array of colour indices, is left to the thread that uses the
+ * snapshot.
+ */
+package phillockett65.Tartan;
+
+import java.util.Arrays;
+
+
+public class TartanDesign {
+
+    /**
+     * Threads is an immutable view of the threads of a Warp at the time of
+     * the snapshot, in the same ring buffer order.
+     */
+    public static class Threads {
+        private final int[] colours;
+        private final int offset;
+        private final int count;
+
+        /**
+         * Constructor, used by Warp. The colours must not change after.
+         * @param colours ring buffer of the colour indices.
+         * @param offset position in the ring buffer of the first thread.
+         * @param count number of threads in the sett.
+         */
+        Threads(int[] colours, int offset, int count) {
+            this.colours = colours;
+            this.offset = offset;
+            this.count = count;
+        }
+
+        public int getCount() { return count; }
+
+        /**
+         * @param index of the thread in the sett, less than getCount().
+         * @return the swatch index of the thread colour.
+         */
+        public int getColourIndex(int index) {
+            final int pos = offset + index;
+
+            return colours[(pos < count) ? pos : pos - count];
+        }
+
+        /**
+         * @return the colour indices of the sett, first thread first.
+         */
+        public int[] toArray() {
+            int[] result = new int[count];
+            System.arraycopy(colours, offset, result, 0, count - offset);
+            System.arraycopy(colours, 0, result, count - offset, offset);
+
+            return result;
+        }
+
+        /**
+         * @return the threads as a run-length encoded sett.
+         */
+        public Sett toSett() {
+            Sett result = new Sett();
+
+            for (int index = 0; index < count; ) {
+                final int colour = getColourIndex(index);
+                final int start = index;
+                while ((index < count) && (getColourIndex(index) == colour)) {
+                    ++index;
+                }
+                result.append(colour, index - start);
+            }
+
+            return result;
+        }
+    }
+
+    private final String name;
+    private final Threads rows;
+    private final Threads cols;
+    private final int[] palette;
+    private final String[] swatchNames;
+    private final int selectedSwatch;
+
+    private final int threadCount;
+    private final double threadSize;
+    private final double borderThickness;
+    private final int borderColour;
+    private final int guideLineColour;
+    private final boolean duplicate;
+    private final boolean showGuide;
+
+
+
+    /************************************************************************
+     * Support code for the Initialization of the TartanDesign.
+     */
+
+    /**
+     * Constructor. The palette and swatch names are copied.
+     * @param name of the design, may be empty.
+     * @param rows threads of the row sett.
+     * @param cols threads of the column sett.
+     * @param palette ARGB colours indexed by swatch.
+     * @param swatchNames names indexed by swatch.
+     * @param selectedSwatch index of the selected swatch.
+     * @param threadCount number of threads changed at a time.
+     * @param threadSize size of a thread in pixels.
+     * @param borderThickness thickness of the thread borders in pixels.
+     * @param borderColour ARGB colour of the thread borders.
+     * @param guideLineColour ARGB colour of the guide lines.
+     * @param duplicate true if the columns duplicate the rows.
+     * @param showGuide true if the guide lines are shown.
+     */
+    public TartanDesign(String name, Threads rows, Threads cols, int[] palette,
+        String[] swatchNames, int selectedSwatch, int threadCount, double threadSize,
+        double borderThickness, int borderColour, int guideLineColour,
+        boolean duplicate, boolean showGuide) {
+        this.name = name;
+        this.rows = rows;
+        this.cols = cols;
+        this.palette = Arrays.copyOf(palette, palette.length);
+        this.swatchNames = Arrays.copyOf(swatchNames, swatchNames.length);
+        this.selectedSwatch = selectedSwatch;
+        this.threadCount = threadCount;
+        this.threadSize = threadSize;
+        this.borderThickness = borderThickness;
+        this.borderColour = borderColour;
+        this.guideLineColour = guideLineColour;
+        this.duplicate = duplicate;
+        this.showGuide = showGuide;
+    }
+
+
+
+    /************************************************************************
+     * Public interface.
+     */
+
+    public String getName() { return name; }
+    public Threads getRows() { return rows; }
+    public Threads getColumns() { return cols; }
+    public int getRowCount() { return rows.getCount(); }
+    public int getColumnCount() { return cols.getCount(); }
+    public int getSwatchCount() { return palette.length; }
+    public int getSelectedSwatch() { return selectedSwatch; }
+
+    public int getThreadCount() { return threadCount; }
+    public double getThreadSize() { return threadSize; }
+    public double getBorderThickness() { return borderThickness; }
+    public int getBorderColour() { return borderColour; }
+    public int getGuideLineColour() { return guideLineColour; }
+    public boolean isDuplicate() { return duplicate; }
+    public boolean isShowGuide() { return showGuide; }
+
+    /**
+     * @return a copy of the ARGB colours indexed by swatch.
+     */
+    public int[] getPalette() { return Arrays.copyOf(palette, palette.length); }
+
+    /**
+     * @param index of the swatch.
+     * @return the ARGB colour of the swatch.
+     */
+    public int getSwatchColour(int index) { return palette[index]; }
+
+    /**
+     * @param index of the swatch.
+     * @return the name of the swatch.
+     */
+    public String getSwatchName(int index) { return swatchNames[index]; }
+
+}
@@ -0,0 +1,173 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+/*
+ * TartanImage is a class that holds everything needed to render an image
+ * of a design: the thread colours, the palette, the sizes and the image
+ * size. It is immutable and does not refer to the Model, so it can be
+ * built from a TartanDesign snapshot and written on any thread.
+ */
+package phillockett65.Tartan;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.function.IntConsumer;
+
+import phillockett65.Debug.Debug;
+
+
+public class TartanImage {
+
+    // Debug delta used to adjust the local logging level.
+    private static final int DD = 0;
+
+    private final int[] rows;
+    private final int[] cols;
+    private final int[] palette;
+    private final int border;
+    private final double size;
+    private final double thickness;
+    private final int width;
+    private final int height;
+
+
+
+    /************************************************************************
+     * Support code for the Initialization of the TartanImage.
+     */
+
+    /**
+     * Constructor.
+     * @param design snapshot of the design to render.
+     * @param width of the image in pixels.
+     * @param height of the image in pixels.
+     */
+    public TartanImage(TartanDesign design, int width, int height) {
+        this.rows = design.getRows().toArray();
+        this.cols = design.getColumns().toArray();
+        this.palette = design.getPalette();
+        this.border = design.getBorderColour();
+        this.size = design.getThreadSize();
+        this.thickness = design.getBorderThickness();
+        this.width = width;
+        this.height = height;
+    }
+
+
+
+    /************************************************************************
+     * Support code for writing the image.
+     */
+
+    /**
+     * Generate the image and encode it to a file.
+     * @param path of the file.
+     * @param parallelism number of worker threads to render with.
+     * @param progress called with the number of scanlines written so far,
+     * may be null.
+     */
+    private void render(Path path, int parallelism, IntConsumer progress) throws IOException {
+        try (PngEncoder encoder = new PngEncoder(new BufferedOutputStream(Files.newOutputStream(path)), width, height)) {
+            final Rasterizer rasterizer = new Rasterizer(rows, cols, palette, border, size, thickness, width, height);
+            final BandRenderer renderer = new BandRenderer(rasterizer, parallelism);
+
+            renderer.render(encoder, progress);
+        }
+    }
+
+    /**
+     * Delete a temporary file that was not moved into place.
+     * @param temp file, may be null.
+     */
+    private static void deleteTemp(Path temp) {
+        if (temp == null) {
+            return;
+        }
+
+        try {
+            Files.deleteIfExists(temp);
+        } catch (IOException e) {
+            Debug.critical(DD, "deleteTemp() - " + e.getMessage());
+        }
+    }
+
+
+
+    /************************************************************************
+     * Public interface.
+     */
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+
+    /**
+     * @return the render cache key of the image.
+     */
+    public String getKey() {
+        return RenderCache.getKey(rows, cols, palette, border, size, thickness, width, height);
+    }
+
+    /**
+     * Write the image as a PNG file. If the same image has been rendered
+     * before, by this or any other design, it is copied from the render 
+     * cache. Otherwise the image is generated in bands on worker threads 
+     * and encoded in order as it is generated, so memory use is 
+     * proportional to the width and not the area, and then added to the 
+     * render cache. The image is written to a temporary file beside the
+     * target and moved into place when complete, so a failure leaves any
+     * previous image untouched.
+     * @param path of the image file.
+     * @param cache of rendered images.
+     * @param parallelism number of worker threads to render with.
+     * @param progress called with the number of scanlines written so far,
+     * may be null.
+     * @return true if the image was written, false otherwise.
+     */
+    public boolean write(Path path, RenderCache cache, int parallelism, IntConsumer progress) {
+        final String key = getKey();
+        boolean success = false;
+        Path temp = null;
+
+        try {
+            temp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+
+            final boolean cached = cache.fetch(key, temp);
+            if (!cached) {
+                render(temp, parallelism, progress);
+            }
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+            if (!cached) {
+                cache.store(key, path);
+            }
+            success = true;
+        } catch (IOException | RuntimeException e) {
+            Debug.critical(DD, "write() - Failed saving image: " + e);
+        } finally {
+            deleteTemp(temp);
+        }
+
+        return success;
+    }
+
+}
@@ -0,0 +1,525 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+/*
+ * Threadcount is a class that converts a sett to and from the threadcount
+ * notation used to exchange tartan designs, such as "K/4 R24 K24 Y/4". Each
+ * token is a colour code followed by a thread count. A '/' on a count marks
+ * a pivot: a sett with pivots is symmetric and is woven forwards and then
+ * backwards between the pivots, so "K/4 R24 Y/4" is the sett
+ * "K4 R24 Y4 R24". A sett without pivots simply repeats.
+ *
+ * A line may start with a name followed by ':', and '#' starts a comment.
+ * Each distinct colour code is given the next swatch. The Parser reads a 
+ * stream of setts, one per line, building the runs of each Sett directly 
+ * from the characters, so no String is made per thread or per token.
+ *
+ * Like the Sett, it is pure data and does not depend on JavaFX or the Model.
+ */
+package phillockett65.Tartan;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.text.ParseException;
+import java.util.Arrays;
+
+
+public class Threadcount {
+
+    // Longest colour code, so that a code can be packed into an int key.
+    private static final int MAX_CODE = 4;
+
+    private final String name;
+    private final String[] codes;
+    private final Sett sett;
+
+
+
+    /************************************************************************
+     * Support code for the standard colour codes.
+     */
+
+    private static final String[] STANDARD_CODES = {
+        "K", "W", "R", "G", "B", "Y", "A", "N", "P", "O", "T",
+        "DB", "DG", "DR", "LB", "LG", "LN", "LR"
+    };
+    private static final String[] STANDARD_NAMES = {
+        "Black", "White", "Red", "Green", "Blue", "Yellow", "Azure", "Grey", "Purple", "Orange", "Brown",
+        "Dark Blue", "Dark Green", "Dark Red", "Light Blue", "Light Green", "Light Grey", "Pink"
+    };
+    private static final int[] STANDARD_COLOURS = {
+        0xFF101010, 0xFFFFFFFF, 0xFFC80000, 0xFF006818, 0xFF2C2C80, 0xFFE8C000, 0xFF5C8CA8, 0xFF888888, 0xFF780078, 0xFFEC8048, 0xFF603000,
+        0xFF1C1C50, 0xFF004020, 0xFF880000, 0xFF82CFFD, 0xFF86C67C, 0xFFC8C8C8, 0xFFE89CB4
+    };
+
+    /**
+     * Find a standard colour by its code or its name.
+     * @param label code or name of the colour, ignoring case.
+     * @return the index into the standard colour tables, or -1 if not found.
+     */
+    private static int findStandard(String label) {
+        for (int i = 0; i < STANDARD_CODES.length; ++i) {
+            if (STANDARD_CODES[i].equalsIgnoreCase(label) || STANDARD_NAMES[i].equalsIgnoreCase(label)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Get the colour usually used for a colour code.
+     * @param code of the colour.
+     * @return the ARGB colour, grey if the code is not a standard code.
+     */
+    public static int getStandardColour(String code) {
+        final int index = findStandard(code);
+
+        return (index < 0) ? STANDARD_COLOURS[7] : STANDARD_COLOURS[index];
+    }
+
+    /**
+     * Get the name usually given to a colour code.
+     * @param code of the colour.
+     * @return the name of the colour, or the code if it is not a standard
+     * code.
+     */
+    public static String getStandardName(String code) {
+        final int index = findStandard(code);
+
+        return (index < 0) ? code : STANDARD_NAMES[index];
+    }
+
+    /**
+     * Choose the colour code for a swatch. A swatch named after a standard
+     * colour, or with a name that is itself a code, keeps that code, 
+     * otherwise the code of the nearest standard colour is used.
+     * @param label name of the swatch.
+     * @param argb colour of the swatch.
+     * @param used codes already chosen, which are avoided.
+     * @return the colour code.
+     */
+    public static String chooseCode(String label, int argb, String[] used) {
+        final int index = findStandard(label);
+        if ((index >= 0) && !contains(used, STANDARD_CODES[index])) {
+            return STANDARD_CODES[index];
+        }
+        if (isCode(label) && !contains(used, label.toUpperCase())) {
+            return label.toUpperCase();
+        }
+
+        int best = -1;
+        long bestDistance = Long.MAX_VALUE;
+        for (int i = 0; i < STANDARD_COLOURS.length; ++i) {
+            if (contains(used, STANDARD_CODES[i])) {
+                continue;
+            }
+
+            final long distance = distance(argb, STANDARD_COLOURS[i]);
+            if (distance < bestDistance) {
+                best = i;
+                bestDistance = distance;
+            }
+        }
+
+        return STANDARD_CODES[best];
+    }
+
+    private static boolean contains(String[] codes, String code) {
+        for (String c : codes) {
+            if (code.equals(c)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean isCode(String label) {
+        if ((label == null) || label.isEmpty() || (label.length() > MAX_CODE)) {
+            return false;
+        }
+        for (int i = 0; i < label.length(); ++i) {
+            if (!isLetter(label.charAt(i))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static long distance(int a, int b) {
+        final long dr = ((a >> 16) & 0xFF) - ((b >> 16) & 0xFF);
+        final long dg = ((a >> 8) & 0xFF) - ((b >> 8) & 0xFF);
+        final long db = (a & 0xFF) - (b & 0xFF);
+
+        return (dr * dr) + (dg * dg) + (db * db);
+    }
+
+    private static boolean isLetter(char c) {
+        return ((c >= 'A') && (c <= 'Z')) || ((c >= 'a') && (c <= 'z'));
+    }
+
+    private static boolean isDigit(char c) {
+        return (c >= '0') && (c <= '9');
+    }
+
+
+
+    /************************************************************************
+     * Support code for the Initialization of the Threadcount.
+     */
+
+    /**
+     * Constructor.
+     * @param name of the sett, or null.
+     * @param codes colour code of each swatch, null for unused swatches.
+     * @param sett the threads of the sett.
+     */
+    public Threadcount(String name, String[] codes, Sett sett) {
+        this.name = name;
+        this.codes = Arrays.copyOf(codes, codes.length);
+        this.sett = sett;
+    }
+
+
+
+    /************************************************************************
+     * Support code for the formatting.
+     */
+
+    /**
+     * Check whether the runs of the sett are symmetric about two pivots,
+     * the first and the middle run.
+     * @return true if the sett can be written with pivots.
+     */
+    private boolean isSymmetric() {
+        final int runs = sett.getRunCount();
+        if ((runs < 2) || ((runs & 1) != 0)) {
+            return false;
+        }
+
+        for (int k = 1; k < runs / 2; ++k) {
+            if ((sett.getRunColour(k) != sett.getRunColour(runs - k)) ||
+                (sett.getRunLength(k) != sett.getRunLength(runs - k))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void appendToken(Appendable out, int run, boolean pivot) throws IOException {
+        out.append(codes[sett.getRunColour(run)]);
+        if (pivot) {
+            out.append('/');
+        }
+        out.append(Integer.toString(sett.getRunLength(run)));
+    }
+
+
+
+    /************************************************************************
+     * Public interface.
+     */
+
+    public String getName() { return name; }
+    public Sett getSett() { return sett; }
+
+    /**
+     * @return a copy of the colour code of each swatch, null for unused
+     * swatches.
+     */
+    public String[] getCodes() { return Arrays.copyOf(codes, codes.length); }
+
+    /**
+     * Write the sett in threadcount notation, using pivots if the sett is
+     * symmetric.
+     * @param out to write to.
+     * @throws IOException if out cannot be written to.
+     */
+    public void format(Appendable out) throws IOException {
+        if (name != null) {
+            out.append(name).append(": ");
+        }
+
+        if (isSymmetric()) {
+            final int last = sett.getRunCount() / 2;
+            for (int run = 0; run <= last; ++run) {
+                if (run != 0) {
+                    out.append(' ');
+                }
+                appendToken(out, run, (run == 0) || (run == last));
+            }
+        } else {
+            for (int run = 0; run < sett.getRunCount(); ++run) {
+                if (run != 0) {
+                    out.append(' ');
+                }
+                appendToken(out, run, false);
+            }
+        }
+    }
+
+    /**
+     * @return the sett in threadcount notation.
+     */
+    public String format() {
+        StringBuilder output = new StringBuilder();
+        try {
+            format(output);
+        } catch (IOException e) {
+            // A StringBuilder does not throw.
+        }
+
+        return output.toString();
+    }
+
+    @Override
+    public String toString() { return format(); }
+
+    /**
+     * Parse a single sett.
+     * @param text of the sett in threadcount notation.
+     * @param swatches maximum number of colours.
+     * @return the parsed sett.
+     * @throws ParseException if the text is not a valid threadcount.
+     */
+    public static Threadcount parse(String text, int swatches) throws ParseException {
+        final Parser parser = new Parser(swatches);
+        final Threadcount result = parser.parseLine(text, 1);
+        if (result == null) {
+            throw new ParseException("No threadcount found", 0);
+        }
+
+        return result;
+    }
+
+
+
+    /************************************************************************
+     * Support code for the streaming parser.
+     */
+
+    /**
+     * Parser reads a stream of setts in threadcount notation, one per line.
+     * The token and run buffers are reused from sett to sett.
+     */
+    public static class Parser implements Closeable {
+
+        private final BufferedReader in;
+        private final int swatches;
+        private int lineNumber = 0;
+
+        // Packed colour code of each swatch in use.
+        private final int[] keys;
+        private final String[] codes;
+        private int colourCount;
+
+        // Runs of the tokens in the order written.
+        private int[] runColours = new int[64];
+        private int[] runLengths = new int[64];
+        private int runCount;
+        private boolean pivot;
+
+        private Parser(int swatches) {
+            this.in = null;
+            this.swatches = swatches;
+            keys = new int[swatches];
+            codes = new String[swatches];
+        }
+
+        /**
+         * Constructor.
+         * @param reader to read the setts from.
+         * @param swatches maximum number of colours in a sett.
+         */
+        public Parser(Reader reader, int swatches) {
+            this.in = (reader instanceof BufferedReader) ? (BufferedReader)reader : new BufferedReader(reader);
+            this.swatches = swatches;
+            keys = new int[swatches];
+            codes = new String[swatches];
+        }
+
+        /**
+         * @return the number of the line last read, starting at 1.
+         */
+        public int getLineNumber() { return lineNumber; }
+
+        /**
+         * Read the next sett, skipping blank and comment lines.
+         * @return the next sett, or null at the end of the stream.
+         * @throws IOException if the stream cannot be read.
+         * @throws ParseException if a line is not a valid threadcount.
+         */
+        public Threadcount read() throws IOException, ParseException {
+            String line;
+            while ((line = in.readLine()) != null) {
+                final Threadcount result = parseLine(line, ++lineNumber);
+                if (result != null) {
+                    return result;
+                }
+            }
+
+            return null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (in != null) {
+                in.close();
+            }
+        }
+
+        private ParseException error(String message, int line, int pos) {
+            return new ParseException(message + " at line " + line + ", column " + (pos + 1), pos);
+        }
+
+        /**
+         * Get the swatch for a colour code, allocating the next swatch for
+         * a new code.
+         */
+        private int lookup(String line, int from, int to, int key, int number) throws ParseException {
+            for (int i = 0; i < colourCount; ++i) {
+                if (keys[i] == key) {
+                    return i;
+                }
+            }
+
+            if (colourCount == swatches) {
+                throw error("More than " + swatches + " colours", number, from);
+            }
+
+            keys[colourCount] = key;
+            codes[colourCount] = line.substring(from, to).toUpperCase();
+
+            return colourCount++;
+        }
+
+        private void addRun(int colour, int length) {
+            if (runCount == runColours.length) {
+                runColours = Arrays.copyOf(runColours, runCount * 2);
+                runLengths = Arrays.copyOf(runLengths, runCount * 2);
+            }
+
+            runColours[runCount] = colour;
+            runLengths[runCount] = length;
+            ++runCount;
+        }
+
+        /**
+         * Parse a single line.
+         * @param line to parse.
+         * @param number of the line, for error messages.
+         * @return the sett, or null if the line is blank or a comment.
+         */
+        private Threadcount parseLine(String line, int number) throws ParseException {
+            final int length = line.length();
+            int end = line.indexOf('#');
+            if (end < 0) {
+                end = length;
+            }
+
+            String name = null;
+            int pos = 0;
+            final int colon = line.indexOf(':');
+            if ((colon >= 0) && (colon < end)) {
+                name = line.substring(0, colon).trim();
+                pos = colon + 1;
+            }
+
+            colourCount = 0;
+            runCount = 0;
+            pivot = false;
+            while (pos < end) {
+                char c = line.charAt(pos);
+                if (Character.isWhitespace(c) || (c == ',')) {
+                    ++pos;
+                    continue;
+                }
+
+                // Colour code, packed into an int so that no String is made.
+                final int start = pos;
+                int key = 0;
+                while ((pos < end) && isLetter(c = line.charAt(pos))) {
+                    if (pos - start == MAX_CODE) {
+                        throw error("Colour code too long", number, start);
+                    }
+                    key = (key * 27) + (Character.toUpperCase(c) - 'A' + 1);
+                    ++pos;
+                }
+                if (pos == start) {
+                    throw error("Colour code expected", number, pos);
+                }
+                final int colour = lookup(line, start, pos, key, number);
+
+                // Thread count, with an optional pivot marker either side.
+                if ((pos < end) && (line.charAt(pos) == '/')) {
+                    pivot = true;
+                    ++pos;
+                }
+                final int digits = pos;
+                long count = 0;
+                while ((pos < end) && isDigit(c = line.charAt(pos))) {
+                    count = (count * 10) + (c - '0');
+                    if (count > Integer.MAX_VALUE) {
+                        throw error("Thread count too large", number, digits);
+                    }
+                    ++pos;
+                }
+                if ((pos == digits) || (count == 0)) {
+                    throw error("Thread count expected", number, digits);
+                }
+                if ((pos < end) && (line.charAt(pos) == '/')) {
+                    pivot = true;
+                    ++pos;
+                }
+
+                addRun(colour, (int)count);
+            }
+
+            if (runCount == 0) {
+                if (name != null) {
+                    throw error("Threadcount expected", number, pos);
+                }
+
+                return null;
+            }
+
+            // A symmetric sett reflects about the pivots at each end.
+            Sett sett = new Sett();
+            for (int i = 0; i < runCount; ++i) {
+                sett.append(runColours[i], runLengths[i]);
+            }
+            if (pivot) {
+                for (int i = runCount - 2; i > 0; --i) {
+                    sett.append(runColours[i], runLengths[i]);
+                }
+            }
+
+            return new Threadcount(name, Arrays.copyOf(codes, colourCount), sett);
+        }
+
+    }
+
+}
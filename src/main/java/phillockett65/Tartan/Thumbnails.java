@@ -0,0 +1,399 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+/*
+ * Thumbnails is a class that supplies small preview images of the saved
+ * designs for the Load window.
+ *
+ * A thumbnail is drawn directly from the setts of the design at a size
+ * that shows a whole sett, or, for designs in the older settings format,
+ * scaled down once from the saved tartan.png. Either way it is then saved
+ * beside the design as a sidecar image, which is used for as long as it is
+ * newer than the settings file.
+ *
+ * The images are made on a single background thread. Requests waiting for
+ * it are served newest first and only a limited number are kept, so while
+ * the list is scrolled the thread works on the rows that are showing and
+ * the rows that have scrolled by are dropped. The finished images are held
+ * in a least recently used cache limited to a number of bytes. The cache
+ * and the request callbacks are only used on the FX thread.
+ */
+package phillockett65.Tartan;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.function.Consumer;
+
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import phillockett65.Debug.Debug;
+
+
+public class Thumbnails {
+
+    // Debug delta used to adjust the local logging level.
+    private static final int DD = 0;
+
+    private static final int SIZE = Default.THUMBNAIL_SIZE.getInt();
+    private static final int QUEUE_SIZE = Default.THUMBNAIL_QUEUE_SIZE.getInt();
+
+    private final Path base;
+    private final String dataFile;
+    private final String imageFile;
+    private final String sidecar;
+
+    // Least recently used cache of the finished images, FX thread only.
+    private final LinkedHashMap<String, Image> cache = new LinkedHashMap<String, Image>(16, 0.75f, true);
+    private final long cacheSize;
+    private long cached = 0;
+
+    // Designs waiting for the background thread, newest last, with the
+    // callbacks waiting for them.
+    private final ArrayDeque<String> queue = new ArrayDeque<String>();
+    private final HashMap<String, ArrayList<Consumer<Image>>> waiting = new HashMap<String, ArrayList<Consumer<Image>>>();
+
+    private Thread worker;
+    private boolean closed = false;
+
+
+
+    /************************************************************************
+     * Support code for the Initialization of the Thumbnails.
+     */
+
+    /**
+     * Constructor.
+     * @param base directory holding a directory for each design.
+     * @param dataFile name of the settings file in each design directory.
+     * @param imageFile name of the saved image in each design directory.
+     * @param sidecar name of the thumbnail image in each design directory.
+     */
+    public Thumbnails(Path base, String dataFile, String imageFile, String sidecar) {
+        this(base, dataFile, imageFile, sidecar, Default.THUMBNAIL_CACHE_SIZE.getInt());
+    }
+
+    /**
+     * Constructor.
+     * @param base directory holding a directory for each design.
+     * @param dataFile name of the settings file in each design directory.
+     * @param imageFile name of the saved image in each design directory.
+     * @param sidecar name of the thumbnail image in each design directory.
+     * @param cacheSize maximum number of bytes of images held in memory.
+     */
+    Thumbnails(Path base, String dataFile, String imageFile, String sidecar, long cacheSize) {
+        this.base = base;
+        this.dataFile = dataFile;
+        this.imageFile = imageFile;
+        this.sidecar = sidecar;
+        this.cacheSize = cacheSize;
+    }
+
+
+
+    /************************************************************************
+     * Support code for the cache.
+     */
+
+    /**
+     * @param image to measure.
+     * @return the number of bytes held by the pixels of the image.
+     */
+    private static long getBytes(Image image) {
+        return (long)image.getWidth() * (long)image.getHeight() * 4;
+    }
+
+    /**
+     * Add an image to the cache, discarding the least recently used images
+     * until the cache is within its size.
+     * @param name of the design.
+     * @param image of the design.
+     */
+    void store(String name, Image image) {
+        final Image previous = cache.put(name, image);
+        if (previous != null) {
+            cached -= getBytes(previous);
+        }
+        cached += getBytes(image);
+
+        Iterator<Image> it = cache.values().iterator();
+        while ((cached > cacheSize) && it.hasNext()) {
+            final Image eldest = it.next();
+            if (eldest == image) {
+                break;
+            }
+            cached -= getBytes(eldest);
+            it.remove();
+        }
+    }
+
+    /**
+     * @return the number of bytes held by the cached images.
+     */
+    long getCachedBytes() { return cached; }
+
+    /**
+     * Add a finished image to the cache and pass it to the callbacks that
+     * are waiting for it. Called on the FX thread.
+     * @param name of the design.
+     * @param image of the design, or null if none could be made.
+     * @param callbacks waiting for the image.
+     */
+    private void deliver(String name, Image image, ArrayList<Consumer<Image>> callbacks) {
+        if (image == null) {
+            return;
+        }
+
+        store(name, image);
+        for (Consumer<Image> callback : callbacks) {
+            callback.accept(image);
+        }
+    }
+
+
+
+    /************************************************************************
+     * Support code for making the images.
+     */
+
+    /**
+     * Get the modification time of a file.
+     * @param path of the file.
+     * @return the modification time, or -1 if the file does not exist.
+     */
+    private static long getFileTime(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Draw a thumbnail from the setts of a design. The thread size is
+     * chosen so that the longer sett just fits, and where the threads are
+     * smaller than a pixel the average colours are drawn instead. Thread
+     * borders would only be noise at this size, so none are drawn.
+     * @param design holding the swatches and setts.
+     * @return the ARGB pixels of the thumbnail in row order.
+     */
+    private static int[] render(DataStore2 design) {
+        final int[] rows = design.getRowSett().toArray();
+        final int[] cols = design.getColumnSett().toArray();
+        final int[] palette = design.getSwatchColours();
+        final double size = (double)SIZE / Math.max(rows.length, cols.length);
+
+        int[] pixels = new int[SIZE * SIZE];
+        if (size < Default.LOD_THREAD_SIZE.getFloat()) {
+            final Downsampler downsampler = new Downsampler(rows, cols, palette, size, 0, SIZE);
+            for (int y = 0; y < SIZE; ++y) {
+                downsampler.renderSpan(pixels, y * SIZE, y, 0, SIZE);
+            }
+        } else {
+            new Rasterizer(rows, cols, palette, 0, size, 0, SIZE, SIZE).render(pixels);
+        }
+
+        for (int i = 0; i < pixels.length; ++i) {
+            pixels[i] |= 0xFF000000;
+        }
+
+        return pixels;
+    }
+
+    /**
+     * Scale the saved image of a design down to a thumbnail.
+     * @param path of the saved image.
+     * @return the ARGB pixels of the thumbnail in row order, or null if the
+     * image cannot be read.
+     */
+    private static int[] scale(Path path) {
+        final Image image = new Image(path.toUri().toString(), SIZE, SIZE, false, true);
+        if (image.isError() || (image.getPixelReader() == null)) {
+            return null;
+        }
+
+        int[] pixels = new int[SIZE * SIZE];
+        image.getPixelReader().getPixels(0, 0, SIZE, SIZE, PixelFormat.getIntArgbInstance(), pixels, 0, SIZE);
+
+        return pixels;
+    }
+
+    /**
+     * Save a thumbnail beside the design.
+     * @param path of the sidecar image.
+     * @param pixels ARGB pixels of the thumbnail.
+     */
+    private static void save(Path path, int[] pixels) {
+        try (PngEncoder encoder = new PngEncoder(new BufferedOutputStream(Files.newOutputStream(path)), SIZE, SIZE)) {
+            encoder.writeLines(pixels, SIZE);
+        } catch (IOException e) {
+            Debug.critical(DD, "save() - " + path + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Make the thumbnail of a design, from the sidecar if it is up to date,
+     * otherwise from the settings file or the saved image.
+     * @param name of the design.
+     * @return the thumbnail, or null if it cannot be made.
+     */
+    private Image make(String name) {
+        final Path dir = base.resolve(name);
+        final Path settings = dir.resolve(dataFile);
+        final Path thumbnail = dir.resolve(sidecar);
+
+        if (getFileTime(thumbnail) >= getFileTime(settings)) {
+            final Image image = new Image(thumbnail.toUri().toString());
+            if (!image.isError()) {
+                return image;
+            }
+        }
+
+        int[] pixels = null;
+        try {
+            final DataStore2 design = DataStore2.readDesign(settings);
+            pixels = (design != null) ? render(design) : scale(dir.resolve(imageFile));
+        } catch (IOException e) {
+            Debug.critical(DD, "make() - " + name + ": " + e.getMessage());
+        }
+        if (pixels == null) {
+            return null;
+        }
+
+        save(thumbnail, pixels);
+
+        WritableImage image = new WritableImage(SIZE, SIZE);
+        image.getPixelWriter().setPixels(0, 0, SIZE, SIZE, PixelFormat.getIntArgbInstance(), pixels, 0, SIZE);
+
+        return image;
+    }
+
+    /**
+     * Make the requested thumbnails, newest request first, until closed.
+     */
+    private void run() {
+        while (true) {
+            final String name;
+            final ArrayList<Consumer<Image>> callbacks;
+            synchronized (queue) {
+                while (!closed && queue.isEmpty()) {
+                    try {
+                        queue.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (closed) {
+                    return;
+                }
+
+                name = queue.pollLast();
+                callbacks = waiting.remove(name);
+            }
+
+            final Image image = make(name);
+            Platform.runLater(() -> deliver(name, image, callbacks));
+        }
+    }
+
+
+
+    /************************************************************************
+     * Public interface.
+     */
+
+    /**
+     * Get the thumbnail of a design. If it is not cached, it is made in the
+     * background and passed to the callback when ready. Called on the FX
+     * thread.
+     * @param name of the design.
+     * @param ready called on the FX thread with the thumbnail, if it is not
+     * cached. The caller should check that it still wants it.
+     * @return the cached thumbnail, or null if it is not cached.
+     */
+    public Image request(String name, Consumer<Image> ready) {
+        final Image image = cache.get(name);
+        if (image != null) {
+            return image;
+        }
+
+        synchronized (queue) {
+            if (worker == null) {
+                worker = new Thread(this::run, "Thumbnails");
+                worker.setDaemon(true);
+                worker.start();
+            }
+
+            // Move the design to the newest end of the queue.
+            ArrayList<Consumer<Image>> callbacks = waiting.get(name);
+            if (callbacks == null) {
+                callbacks = new ArrayList<Consumer<Image>>();
+                waiting.put(name, callbacks);
+            } else {
+                queue.remove(name);
+            }
+            queue.addLast(name);
+            callbacks.add(ready);
+
+            // Forget the oldest requests, they have scrolled out of view.
+            while (queue.size() > QUEUE_SIZE) {
+                waiting.remove(queue.pollFirst());
+            }
+
+            queue.notify();
+        }
+
+        return null;
+    }
+
+    /**
+     * Forget the thumbnail of a design that has changed or been removed, so
+     * that it is made again when next requested. Called on the FX thread.
+     * @param name of the design.
+     */
+    public void invalidate(String name) {
+        final Image image = cache.remove(name);
+        if (image != null) {
+            cached -= getBytes(image);
+        }
+    }
+
+    /**
+     * Stop the background thread, dropping any waiting requests.
+     */
+    public void close() {
+        synchronized (queue) {
+            closed = true;
+            queue.clear();
+            waiting.clear();
+            queue.notify();
+        }
+    }
+
+}
@@ -0,0 +1,201 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * TileCache is a class that caches the image of a single sett, one tile for
+ * each of the 4 phases of the twill. A repeating tartan, in any rotation,
+ * can then be displayed by drawing the tiles at an offset. Tiles are only
+ * rendered when they are first needed, and colour changes to individual
+ * threads only re-render the affected strips of the cached tiles. The tiles
+ * hold swatch indices, so changing a swatch colour only re-maps the tiles.
+ */
+package phillockett65.Tartan;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+
+
+public class TileCache {
+
+    private static final int PHASES = 4;
+
+    private final IndexedImage[] tiles = new IndexedImage[PHASES];
+
+    private int[] rows;
+    private int[] cols;
+    private PixelFormat<ByteBuffer> format;
+    private double size;
+    private double thickness;
+
+    private int width = 0;
+    private int height = 0;
+
+
+
+    /************************************************************************
+     * Support code for rendering the tiles.
+     */
+
+    /**
+     * Build a rasterizer for a tile of the current design.
+     * @param phase of the twill for the tile.
+     * @return a rasterizer configured for the tile.
+     */
+    private Rasterizer buildRasterizer(int phase) {
+        return new Rasterizer(rows, cols, IndexedImage.INDICES, IndexedImage.BORDER, 
+            size, thickness, width, height, phase);
+    }
+
+    /**
+     * Render a complete tile.
+     * @param phase of the twill for the tile.
+     * @return the rendered tile.
+     */
+    private IndexedImage renderTile(int phase) {
+        IndexedImage tile = new IndexedImage(width, height, format);
+        tile.render(buildRasterizer(phase), 0, 0);
+
+        return tile;
+    }
+
+
+
+    /************************************************************************
+     * Public interface.
+     */
+
+    /**
+     * Check if a design can be displayed using cached tiles. The thread size
+     * must be a whole number of pixels, so that tiles join seamlessly, and
+     * the tiles must not be too large.
+     * @param colCount number of threads in the sett columns.
+     * @param rowCount number of threads in the sett rows.
+     * @param size of a thread in pixels.
+     * @return true if the tiles can be used, false otherwise.
+     */
+    public static boolean isSupported(int colCount, int rowCount, double size) {
+        if (size != Math.rint(size)) {
+            return false;
+        }
+
+        final double limit = Default.MAX_TILE_SIZE.getFloat();
+
+        return ((colCount * size) <= limit) && ((rowCount * size) <= limit);
+    }
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+
+    /**
+     * Discard all the cached tiles.
+     */
+    public void clear() {
+        for (int phase = 0; phase < PHASES; ++phase) {
+            tiles[phase] = null;
+        }
+    }
+
+    /**
+     * Set up the design to be displayed, discarding any cached tiles.
+     * @param rows colour indices of the sett rows, in ring buffer order.
+     * @param cols colour indices of the sett columns, in ring buffer order.
+     * @param format palette to display the swatch indices with.
+     * @param size of a thread in pixels.
+     * @param thickness of the thread borders in pixels.
+     */
+    public void setDesign(int[] rows, int[] cols, PixelFormat<ByteBuffer> format, double size, double thickness) {
+        this.rows = rows;
+        this.cols = cols;
+        this.format = format;
+        this.size = size;
+        this.thickness = thickness;
+
+        width = (int)(cols.length * size);
+        height = (int)(rows.length * size);
+
+        clear();
+    }
+
+    /**
+     * Change the palette of the cached tiles without re-rendering them.
+     * @param format palette to display the swatch indices with.
+     */
+    public void setFormat(PixelFormat<ByteBuffer> format) {
+        this.format = format;
+
+        for (int phase = 0; phase < PHASES; ++phase) {
+            if (tiles[phase] != null) {
+                tiles[phase].setFormat(format);
+            }
+        }
+    }
+
+    /**
+     * Update the colours of the threads without changing the shape of the
+     * design. Only the strips of the changed threads are re-rendered.
+     * @param rows colour indices of the sett rows, in ring buffer order.
+     * @param cols colour indices of the sett columns, in ring buffer order.
+     * @param changedRows indices of the rows that have changed.
+     * @param changedCols indices of the columns that have changed.
+     */
+    public void update(int[] rows, int[] cols, BitSet changedRows, BitSet changedCols) {
+        this.rows = rows;
+        this.cols = cols;
+
+        for (int phase = 0; phase < PHASES; ++phase) {
+            final IndexedImage tile = tiles[phase];
+            if (tile == null) {
+                continue;
+            }
+
+            final Rasterizer rasterizer = buildRasterizer(phase);
+
+            for (int i = changedRows.nextSetBit(0); i >= 0; i = changedRows.nextSetBit(i+1)) {
+                final int y = rasterizer.getFirstPixel(i);
+                final int h = Math.min(rasterizer.getFirstPixel(i+1), height) - y;
+                tile.render(rasterizer, 0, y, 0, y, width, h);
+            }
+
+            for (int i = changedCols.nextSetBit(0); i >= 0; i = changedCols.nextSetBit(i+1)) {
+                final int x = rasterizer.getFirstPixel(i);
+                final int w = Math.min(rasterizer.getFirstPixel(i+1), width) - x;
+                tile.render(rasterizer, x, 0, x, 0, w, height);
+            }
+        }
+    }
+
+    /**
+     * Get the tile for a phase of the twill, rendering it if necessary.
+     * @param phase of the twill (0 to 3).
+     * @return the tile image.
+     */
+    public Image getTile(int phase) {
+        phase &= 3;
+        if (tiles[phase] == null) {
+            tiles[phase] = renderTile(phase);
+        }
+
+        return tiles[phase].getImage();
+    }
+
+}
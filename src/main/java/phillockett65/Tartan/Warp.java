@@ -19,18 +19,32 @@
  */
 
 /*
- * Warp is a class that captures a collection of threads.
+ * Warp is a class that captures the colours of a collection of threads. It
+ * is pure data and does not depend on JavaFX or the Model, so it can be
+ * used and measured without a running toolkit.
+ *
+ * The colour indices of the sett are held in a ring buffer: the logical
+ * thread i is stored at (offset + i) % active. This makes a rotation of the
+ * sett a constant time change of the offset. Threads beyond the active
+ * count repeat the sett and are derived from it on demand by modulo, so
+ * they are never stored and every edit costs O(active) at most. The buffer
+ * only grows, and so only allocates, when the sett outgrows its capacity.
+ *
+ * A snapshot of the threads, see snapshot(), shares the ring buffer rather
+ * than copying it, so taking one costs O(1). The buffer is then copied on
+ * the first change after the snapshot, so the snapshot never sees it
+ * change.
+ *
+ * The Warp does not draw anything. It records which threads have changed
+ * colour, in ring buffer order, and whether the shape of the sett has
+ * changed, and notifies its listeners, so that the display can update.
  */
 package phillockett65.Tartan;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 
-import javafx.collections.ObservableList;
-import javafx.scene.Group;
-import javafx.scene.Node;
-import javafx.scene.canvas.GraphicsContext;
-import javafx.scene.paint.Color;
-import javafx.scene.shape.Rectangle;
 import phillockett65.Debug.Debug;
 
 
@@ -39,529 +53,489 @@ public class Warp {
     // Debug delta used to adjust the local logging level.
     private static final int DD = 0;
 
-    private Model model;
-
-    private Group group;
-    private GraphicsContext gc;
+    // Initial capacity of the ring buffer.
+    private static final int CAPACITY = 256;
 
     private final boolean ROW;
     private final int MIN;
     private final int MAX;
     private int active;
+    private int offset;
 
-    private ArrayList<Thread> list;
-
-    private final Color defaultColour;
-
+    private int[] colours;
 
+    // True if the colours are shared with a snapshot, so must be copied
+    // before they are changed.
+    private boolean shared = false;
 
-    /************************************************************************
-     * General support code.
-     */
+    private final BitSet changed;
+    private boolean reshaped;
 
-    private static double OFFSET = Default.BORDER_WIDTH.getFloat();
+    private final ArrayList<Runnable> listeners = new ArrayList<Runnable>();
 
 
 
     /************************************************************************
-     * Support code for the Thread sub-class.
+     * Support code for the Initialization of the Warp.
      */
 
     /**
-     * Class to represent a single thread as a sequence of rectangles.
-     */
-    private class Thread {
-        private boolean highlight;
-        private final int index;
-        private int colourIndex;
-        private Rectangle stitch;
-
-        /**
-         * The Constructor is singularly responsible for adding the Rectangles
-         * to the Group.
-         * @param index of the row or column.
-         * @param row if true, column otherwise.
-         */
-        public Thread(int index) {
-            highlight = false;
-
-            this.index = index;
-            this.colourIndex = 0;
-            ObservableList<Node> items = group.getChildren();
-
-            final Color fillColour = model.getSwatchColour(colourIndex);
-            stitch = new Rectangle();
-            stitch.setFill(fillColour);
-            stitch.setStroke(defaultColour);
-
-            items.add(stitch);
-        }
-
-        public int getColourIndex() { return colourIndex; }
-        public boolean isVisible() { return stitch.isVisible(); }
+     * Constructor.
+     * @param row is true for the row threads, false for the columns.
+     * @param min number of threads in the sett.
+     * @param max number of threads in the sett.
+     */
+    public Warp(boolean row, int min, int max) {
+        Debug.trace(DD, "Warp constructed for " + (row ? "Row" : "Column") + "  " + min + ".." + max);
 
-        /**
-         * Set the visibilty of the lead thread.
-         * @param visible 
-         */
-        public void setVisible(boolean visible) {
-            stitch.setVisible(visible);
-        }
+        ROW = row;
+        MIN = min;
+        MAX = max;
+        active = Math.max(MIN, Math.min(Default.INIT_THREAD_COUNT.getInt(), MAX));
+        offset = 0;
 
-        public void clear() {
-            highlight = false;
+        colours = new int[Math.max(active, Math.min(CAPACITY, MAX))];
 
-            colourIndex = 0;
+        changed = new BitSet();
+        reshaped = true;
+    }
 
-            final Color fillColour = model.getSwatchColour(0);
-            stitch.setFill(fillColour);
-        }
+    /**
+     * Subscribe to the changes of the Warp.
+     * @param listener called whenever the colours, the shape or the
+     * rotation of the sett change.
+     */
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
 
-        /**
-         * Draw the thread using the current gc colours.
-         */
-        private void _draw() {
-            if (isRow())
-                drawRow();
-            else
-                drawCol();
-        }
+    public void removeListener(Runnable listener) {
+        listeners.remove(listener);
+    }
 
-        /**
-         * Set the gc colours for the thread and then draw them.
-         * @param border colour to use.
-         */
-        private void draw(Color border) {
-            gc.setFill(model.getSwatchColour(colourIndex));
-            gc.setStroke(border);
-            _draw();
-        }
 
-        /**
-         * Set the gc colours for the thread and then draw them.
-         */
-        private void draw() {
-            final Color border = highlight ? model.getGuideLineColour() : defaultColour;
-            draw(border);
-        }
 
-        /**
-         * Set the colour of the thread to the given swatch colour.
-         * @param index of the selected swatch.
-         */
-        public void setColourIndex(int index) {
-            colourIndex = index;
-            stitch.setFill(model.getSwatchColour(colourIndex));
+    /************************************************************************
+     * Support code for the change tracking.
+     */
 
-            draw();
+    /**
+     * Tell the listeners that something has changed.
+     */
+    private void notifyListeners() {
+        for (Runnable listener : listeners) {
+            listener.run();
         }
+    }
 
-        public void setHighlight(boolean state, Color border) {
-            if (state == highlight) {
-                return;
-            }
+    /**
+     * Record that a thread of the sett has changed colour. Any number of
+     * changes to the same thread are merged.
+     * @param pos of the thread in the ring buffer.
+     */
+    private void change(int pos) {
+        if (!reshaped) {
+            changed.set(pos);
+        }
 
-            highlight = state;
-            stitch.setStroke(border);
+        notifyListeners();
+    }
 
-            draw(border);
-        }
+    /**
+     * Record that the shape of the sett has changed, so that everything must
+     * be redrawn.
+     */
+    private void reshape() {
+        reshaped = true;
+        changed.clear();
 
-        /**
-         * Synchronise the colour of the thread to the updated swatch colour.
-         * @return true if this thread needed to be updated, false otherwise.
-         */
-        public boolean syncCurrentColour() {
-            if (colourIndex != model.getSelectedColourIndex())
-                return false;
+        notifyListeners();
+    }
 
-            final Color color = model.getSelectedColour();
 
-            stitch.setFill(color);
 
-            draw();
+    /************************************************************************
+     * Support code for the ring buffer.
+     */
 
-            return true;
+    /**
+     * Make sure the colours are not shared with a snapshot, so that they
+     * can be changed. Must be called before any change to colours.
+     */
+    private void own() {
+        if (shared) {
+            colours = Arrays.copyOf(colours, colours.length);
+            shared = false;
         }
+    }
 
+    /**
+     * Map a thread of the sett to its position in the ring buffer.
+     * @param index of the thread in the sett, less than active.
+     * @return the position of the thread in colours.
+     */
+    private int physical(int index) {
+        final int pos = offset + index;
 
-        private void drawRow() {
-            final double size = model.getThreadSize();
-            final double size2 = size * 2;
-            final double size4 = size * 4;
-            final double yPos = index * size;
-            final int count = (int)(Default.WIDTH.getFloat() / 4);
-
-            int c = index % 4;
-            c = (4 - c) % 4;
-            double xPos = c * size;
-            for (int j = 0; j < count; ++j) {
-                gc.fillRect(xPos, yPos, size2, size);
-                gc.strokeRect(xPos, yPos, size2, size);
+        return (pos < active) ? pos : pos - active;
+    }
 
-                xPos += size4;
-            }
+    /**
+     * Reverse the order of a range of colours.
+     * @param from first position of the range.
+     * @param to position after the end of the range.
+     */
+    private void reverse(int from, int to) {
+        for (--to; from < to; ++from, --to) {
+            final int swap = colours[from];
+            colours[from] = colours[to];
+            colours[to] = swap;
         }
+    }
 
-        private void drawCol() {
-            final double size = model.getThreadSize();
-            final double size2 = size * 2;
-            final double size4 = size * 4;
-            final double xPos = index * size;
-            final int count = (int)(Default.HEIGHT.getFloat() / 4);
-
-            int r = index % 4;
-            r = (6 - r) % 4;
-            double yPos = r * size;
-            for (int j = 0; j < count; ++j) {
-                gc.fillRect(xPos, yPos, size, size2);
-                gc.strokeRect(xPos, yPos, size, size2);
-
-                yPos += size4;
-            }
+    /**
+     * Rearrange the ring buffer in place so that the sett starts at position
+     * 0. Must be called before the active count is changed.
+     */
+    private void normalize() {
+        if (offset == 0) {
+            return;
         }
 
-        /**
-         * Synchronise the thread size for a row. Sets the size and position of
-         * the Rectangles.
-         */
-        private void syncRowSize() {
-            final double size = model.getThreadSize();
-            final double yPos = (index * size);
-            final double thickness = model.getBorderThickness();
-
-            int c = index % 4;
-            stitch.setWidth(OFFSET + ((c == 1) ? size : 0));
-            stitch.setHeight(size);
-            stitch.setX(0D);
-            stitch.setY(OFFSET + yPos);
-            stitch.setVisible(index < model.getRowCount());
-            stitch.setStrokeWidth(thickness);
-
-            final Color fillColour = model.getSwatchColour(colourIndex);
-            gc.setFill(fillColour);
-
-            drawRow();
-        }
+        own();
+        reverse(0, offset);
+        reverse(offset, active);
+        reverse(0, active);
+        offset = 0;
+    }
 
-        /**
-         * Synchronise the thread size for a column. Sets the size and position
-         * of the Rectangles.
-         */
-        private void syncColSize() {
-            final double size = model.getThreadSize();
-            final double xPos = (index * size);
-            final double thickness = model.getBorderThickness();
-
-            int r = index % 4;
-            stitch.setWidth(size);
-            stitch.setHeight(OFFSET + ((r == 3) ? size : 0));
-            stitch.setX(OFFSET + xPos);
-            stitch.setY(0D);
-            stitch.setVisible(index < model.getColumnCount());
-            stitch.setStrokeWidth(thickness);
-
-            final Color fillColour = model.getSwatchColour(colourIndex);
-            gc.setFill(fillColour);
-
-            drawCol();
+    /**
+     * Make sure the ring buffer can hold a number of threads. Must be called
+     * after normalize(), as the buffer is grown by copying.
+     * @param size number of threads required.
+     */
+    private void ensureCapacity(int size) {
+        if (size <= colours.length) {
+            return;
         }
 
+        colours = Arrays.copyOf(colours, Math.min(Math.max(size, colours.length * 2), MAX));
+        shared = false;
     }
 
+    /**
+     * Set the colour of a thread of the sett, and so all of its repeats.
+     * @param index of the thread in the sett, less than active.
+     * @param colourIndex of the swatch to use.
+     */
+    private void set(int index, int colourIndex) {
+        final int pos = physical(index);
+        if (colours[pos] == colourIndex) {
+            return;
+        }
 
+        own();
+        colours[pos] = colourIndex;
+        change(pos);
+    }
 
 
 
     /************************************************************************
-     * Support code for the Warp class.
+     * Public interface.
      */
 
+    public boolean isRow() { return ROW; }
+    public int getActive() { return active; }
+    public int getMin() { return MIN; }
+    public int getMax() { return MAX; }
 
     /**
-     * Constructor.
+     * @return the position in the ring buffer of the first thread.
      */
-    public Warp(boolean row, int min, int max) {
-        Debug.trace(DD, "Warp constructed for " + (row ? "Row" : "Column") + "  " + min + ".." + max);
+    public int getOffset() { return offset; }
+
+    /**
+     * @return true if the shape of the sett has changed since the last
+     * call to clearChanges(), false otherwise.
+     */
+    public boolean isReshaped() { return reshaped; }
 
-        model = Model.getInstance();
-        defaultColour = model.getBorderColour();
+    /**
+     * @return the positions, in ring buffer order, of the threads that have
+     * changed colour since the last call to clearChanges().
+     */
+    public BitSet getChanged() { return changed; }
 
-        ROW = row;
-        MIN = min;
-        MAX = max;
-        active = Default.INIT_THREAD_COUNT.getInt();
-        
-        list = new ArrayList<Thread>(MAX);
+    /**
+     * Forget the recorded changes.
+     */
+    public void clearChanges() {
+        reshaped = false;
+        changed.clear();
     }
 
-
     /**
-     * Initialization after the model has been initialised.
+     * @return a copy of the colour indices of the sett in ring buffer order.
      */
-    public void init(Group g, GraphicsContext c) {
-        Debug.trace(DD, "Warp init()");
+    public int[] getColours() { return Arrays.copyOf(colours, active); }
 
-        group = g;
-        gc = c;
+    /**
+     * Get the colours of a range of threads of the sett.
+     * @param pos of the first thread.
+     * @param count of threads, limited to the end of the sett.
+     * @return the colour indices of the threads.
+     */
+    public int[] getColours(int pos, int count) {
+        pos = Math.max(0, Math.min(pos, active));
+        count = Math.max(0, Math.min(count, active - pos));
 
-        for (int index = 0; index < MAX; ++index) {
-            Thread thread = new Thread(index);
-            list.add(thread);
+        int[] result = new int[count];
+        for (int i = 0; i < count; ++i) {
+            result[i] = colours[physical(pos + i)];
         }
 
+        return result;
     }
 
-
-    public void clear() {
-        for (Thread thread : list) {
-            thread.clear();
-        }
-    }
-
-
-    /************************************************************************
-     * Public interface.
+    /**
+     * Set the colour of a single thread of the sett.
+     * @param index of the thread.
+     * @param colourIndex of the swatch to use.
+     * @return true if the thread is in the sett, false otherwise.
      */
-
-    boolean isRow() { return ROW; }
-    int getActive() { return active; }
-    int getMax() { return MAX; }
-
-    Thread get(int index) { return list.get(index); }
-
     public boolean setColourIndex(int index, int colourIndex) {
-        if (index < MAX) {
-            list.get(index).setColourIndex(colourIndex);
+        if (index < active) {
+            set(index, colourIndex);
             return true;
         }
 
         return false;
     }
 
+    /**
+     * Get the colour of any thread, including the repeat threads, which
+     * are derived from the sett.
+     * @param index of the thread.
+     * @return the swatch index of the thread colour.
+     */
     public int getColourIndex(int index) {
-        if (index < MAX) {
-            return list.get(index).getColourIndex();
-        }
-
-        return 0;
-    }
-
-    public void syncVisibleThreads() {
-        final int ACTIVE = getActive();
-
-        for (int index = 0; index < MAX; ++index) {
-            list.get(index).setVisible(index < ACTIVE);
-        }
+        return colours[physical(index % active)];
     }
 
-    public void syncRepeatThreads() {
-        final int ACTIVE = getActive();
-
-        for (int index = ACTIVE; index < MAX; ++index) {
-            final int colourIndex = list.get(index % ACTIVE).getColourIndex();
+    /**
+     * Rotate the sett by a number of threads. The colours are not moved,
+     * so only the offset changes.
+     * @param step number of threads to rotate by, positive to make each
+     * thread take the colour of a later thread.
+     */
+    public void rotate(int step) {
+        offset = physical(Math.floorMod(step, active));
 
-            list.get(index).setColourIndex(colourIndex);
-        }
+        notifyListeners();
     }
 
-    private void syncThreads() {
-        syncVisibleThreads();
-        syncRepeatThreads();
-    }
+    /**
+     * Rotate the sett so that each thread takes the colour of the next.
+     */
+    public void rotateIncrease() { rotate(1); }
 
-    public void rotateIncrease() {
-        final int ACTIVE = getActive();
+    /**
+     * Rotate the sett so that each thread takes the colour of the previous.
+     */
+    public void rotateDecrease() { rotate(-1); }
 
-        final int safeIndex = list.get(0).getColourIndex();
-        for (int index = 1; index < ACTIVE; ++index) {
-            final int colourIndex = list.get(index).getColourIndex();
+    /**
+     * Change the number of threads in the sett. New threads are added to
+     * the end.
+     * @param size new number of threads, limited to MAX.
+     * @param colourIndex of the swatch to use for any new threads.
+     */
+    public void setActive(int size, int colourIndex) {
+        size = Math.max(MIN, Math.min(size, MAX));
 
-            list.get(index-1).setColourIndex(colourIndex);
+        normalize();
+        if (size > active) {
+            own();
+            ensureCapacity(size);
+            Arrays.fill(colours, active, size, colourIndex);
         }
-        list.get(ACTIVE-1).setColourIndex(safeIndex);
 
-        syncRepeatThreads();
+        active = size;
+        reshape();
     }
 
-    public void rotateDecrease() {
-        final int ACTIVE = getActive();
-
-        final int safeIndex = list.get(ACTIVE-1).getColourIndex();
-        for (int index = ACTIVE-1; index > 0 ; --index) {
-            final int colourIndex = list.get(index-1).getColourIndex();
-
-            list.get(index).setColourIndex(colourIndex);
+    /**
+     * Delete threads from the sett, without going below MIN.
+     * @param pos of the first thread to delete.
+     * @param count of threads to delete.
+     */
+    public void deleteThreads(int pos, int count) {
+        final int LIM1 = ((active - count) < MIN ? (active-MIN) : count);
+        final int LIM2 = ((pos + count) > active ? (active-pos) : count);
+        final int SIZE = (LIM1 < LIM2 ? LIM1 : LIM2);
+        if (SIZE <= 0) {
+            return;
         }
-        list.get(0).setColourIndex(safeIndex);
-
-        syncRepeatThreads();
-    }
-
-
 
+        normalize();
+        own();
+        final int source = pos + SIZE;
+        System.arraycopy(colours, source, colours, pos, active - source);
 
-    private void syncToColourIndex(int pos, int length) {
-        final int colourIndex = model.getSelectedColourIndex();
-        for (int index = pos; index < (pos+length); ++index) {
-            list.get(index).setColourIndex(colourIndex);
-        }
+        active -= SIZE;
+        reshape();
     }
 
-    public void setActive(int size) {
-        if (size > MAX) {
-            size = MAX;
+    /**
+     * Insert threads into the sett, without going above MAX.
+     * @param pos to insert the threads at.
+     * @param count of threads to insert.
+     * @param colourIndex of the swatch to use for the new threads.
+     */
+    public void insertThreads(int pos, int count, int colourIndex) {
+        final int SIZE = ((active + count) > MAX ? (MAX-active) : count);
+        if ((SIZE <= 0) || (pos > active)) {
+            return;
         }
 
-        if (size > active) {
-            syncToColourIndex(active, size-active);
-        }
+        normalize();
+        own();
+        ensureCapacity(active + SIZE);
+        System.arraycopy(colours, pos, colours, pos + SIZE, active - pos);
+        Arrays.fill(colours, pos, pos + SIZE, colourIndex);
 
-        active = size;
-        syncThreads();
-    }
-    
-    public void incActive(int count) {
-        setActive(active + count);
+        active += SIZE;
+        reshape();
     }
 
-    public void deleteThreads(int pos) {
-        final int COUNT = model.getThreadCount();
-        final int ACTIVE = getActive();
-        final int LIM1 = ((ACTIVE - COUNT) < MIN ? (ACTIVE-MIN) : COUNT);
-        final int LIM2 = ((pos + COUNT) > ACTIVE ? (ACTIVE-pos) : COUNT);
-        final int SIZE = (LIM1 < LIM2 ? LIM1 : LIM2);
+    /**
+     * Replace a range of threads of the sett with other threads, the basic
+     * change that any edit of the sett can be undone or redone with. If the
+     * range is replaced by the same number of threads, only the threads 
+     * that change colour are recorded as changed.
+     * @param pos of the first thread to replace.
+     * @param count of threads to replace.
+     * @param threads colour indices of the threads to put in their place.
+     */
+    public void splice(int pos, int count, int[] threads) {
+        if (count == threads.length) {
+            for (int i = 0; i < count; ++i) {
+                set(pos + i, threads[i]);
+            }
 
-        int source = pos + SIZE;
-        for (int index = pos; source < ACTIVE; ++index) {
-            final int colourIndex = list.get(source++).getColourIndex();
-            list.get(index).setColourIndex(colourIndex);
+            return;
         }
 
-        active -= SIZE;
-        syncThreads();
-    }
-
-
-    public void insertThreads(int pos) {
-        final int COUNT = model.getThreadCount();
-        final int ACTIVE = getActive();
-        final int SIZE = ((pos + COUNT) >= MAX ? (MAX-pos-1) : COUNT);
-
-        int source = ACTIVE-1;
-        for (int index = ACTIVE+SIZE-1; source >= pos ; --index) {
-            final int colourIndex = list.get(source--).getColourIndex();
-            list.get(index).setColourIndex(colourIndex);
-        }
+        normalize();
+        own();
+        ensureCapacity(active - count + threads.length);
+        System.arraycopy(colours, pos + count, colours, pos + threads.length, active - pos - count);
+        System.arraycopy(threads, 0, colours, pos, threads.length);
 
-        active += SIZE;
-        syncToColourIndex(pos, SIZE);
-        syncThreads();
+        active += threads.length - count;
+        reshape();
     }
 
-
-    /************************************************************************
-     * Support code for the mouse click handler.
-     */
-
     /**
-     * Set the threads (and repeat threads) to the selected swatch colour.
-     * @param pos to set the colour of.
+     * Set a run of threads (and so their repeats) to a swatch colour.
+     * @param pos of the first thread to set the colour of.
      * @param colourIndex to set the threads to.
      * @param count of threads.
-     * @param repeat start point.
      */
-    public void colourThreads(int pos, int colourIndex, int count, int repeat) {
+    public void colourThreads(int pos, int colourIndex, int count) {
         for (int thread = 0; thread < count; ++thread) {
-            list.get(pos).setColourIndex(colourIndex);
-
-            for (int i = 0; i < MAX; i += repeat) {
-                final int index = i + pos;
-                if (index >= MAX)
-                    break;
-
-                list.get(index).setColourIndex(colourIndex);
-            }
-
-            if (++pos >= repeat)
+            if (pos >= active)
                 break;
+
+            set(pos++, colourIndex);
         }
     }
 
-
-    /************************************************************************
-     * Support code for the mouse move handler.
+    /**
+     * Set all the threads to the first swatch and remove any rotation.
      */
+    public void clear() {
+        own();
+        Arrays.fill(colours, 0);
+        offset = 0;
 
-    public void clearThreads() {
-        for (Thread thread : list) {
-            thread.setHighlight(false, defaultColour);
-        }
-    }
-
-    public void highlightThread(int pos, boolean highlight, Color colour) {
-        list.get(pos).setHighlight(highlight, colour);
+        reshape();
     }
 
-
-
-    /************************************************************************
-     * Public interface.
-     */
-
     public void setList(ArrayList<Integer> values) {
-        final int ACTIVE = values.size();
+        final int ACTIVE = Math.min(values.size(), MAX);
 
-        for (int index = 0; index < MAX; ++index) {
-            final int colourIndex = values.get(index % ACTIVE);
-
-            Thread stitch = list.get(index);
-            stitch.setColourIndex(colourIndex);
-            stitch.setVisible(index < ACTIVE);
+        offset = 0;
+        own();
+        ensureCapacity(ACTIVE);
+        for (int index = 0; index < ACTIVE; ++index) {
+            colours[index] = values.get(index);
         }
-    }
 
-    public ArrayList<Integer> getList() {
-        ArrayList<Integer> result = new ArrayList<Integer>(active);
+        active = ACTIVE;
+        reshape();
+    }
 
-        for (Thread thread : list) {
-            if (!thread.isVisible())
-                break;
+    /**
+     * Replace the sett with the threads of a run-length encoded sett. Each
+     * run is filled in a single step.
+     * @param sett of threads, limited to MAX.
+     */
+    public void setSett(Sett sett) {
+        final int ACTIVE = Math.min(sett.getLength(), MAX);
 
-            result.add(thread.getColourIndex());
+        offset = 0;
+        own();
+        ensureCapacity(ACTIVE);
+        int start = 0;
+        for (int run = 0; (run < sett.getRunCount()) && (start < ACTIVE); ++run) {
+            final int end = Math.min(start + sett.getRunLength(run), ACTIVE);
+            Arrays.fill(colours, start, end, sett.getRunColour(run));
+            start = end;
         }
 
-        return result;
+        active = ACTIVE;
+        reshape();
     }
 
-    /************************************************************************
-     * Synchronize interface.
-     */
-
     /**
-     * Synchronise to the current swatch colour.
+     * @return the threads of the sett as a run-length encoded sett.
      */
-    public void syncColour() {
-        for (Thread stitch : list) {
-            stitch.syncCurrentColour();
+    public Sett getSett() {
+        Sett result = new Sett();
+
+        for (int index = 0; index < active; ) {
+            final int colour = colours[physical(index)];
+            final int start = index;
+            while ((index < active) && (colours[physical(index)] == colour)) {
+                ++index;
+            }
+            result.append(colour, index - start);
         }
+
+        return result;
     }
 
     /**
-     * Synchronise the thread size. Sets the size and position of the 
-     * stitch and the thread Rectangles.
+     * Take an immutable snapshot of the threads of the sett. The ring 
+     * buffer is shared until the Warp next changes, so this is O(1).
+     * @return the snapshot.
      */
-    public void syncThreadSize() {
+    public TartanDesign.Threads snapshot() {
+        shared = true;
 
-        if (isRow()) {
-            for (Thread stitch : list) {
-                stitch.syncRowSize();
-            }
-        } else {
-            for (Thread stitch : list) {
-                stitch.syncColSize();
-            }
+        return new TartanDesign.Threads(colours, offset, active);
+    }
+
+    public ArrayList<Integer> getList() {
+        ArrayList<Integer> result = new ArrayList<Integer>(active);
+
+        for (int index = 0; index < active; ++index) {
+            result.add(colours[physical(index)]);
         }
+
+        return result;
     }
 
 }
@@ -0,0 +1,193 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+/*
+ * WarpEdit holds the History edits of a Warp.
+ *
+ * Every change to the threads of a sett is recorded as a Splice: a range of
+ * threads replaced by other threads. Only the replaced threads and their
+ * replacements are kept, so colouring a few threads costs a few entries
+ * whatever the length of the sett. A rotation only moves the start of the
+ * ring buffer, so it is recorded as a Rotation of a number of steps.
+ */
+package phillockett65.Tartan;
+
+import java.util.Arrays;
+
+
+public class WarpEdit {
+
+    /**
+     * Splice is an edit that replaced a range of threads with others.
+     */
+    public static class Splice implements History.Edit {
+        private final Warp warp;
+        private final int pos;
+        private final int[] removed;
+        private final int[] inserted;
+        private final boolean resize;
+
+        /**
+         * Constructor.
+         * @param warp that was changed.
+         * @param pos of the first thread replaced.
+         * @param removed colour indices of the threads replaced.
+         * @param inserted colour indices of the threads put in their place.
+         * @param resize true if the edit changed the length of the sett at 
+         * the end, so that a run of such edits can be merged.
+         */
+        public Splice(Warp warp, int pos, int[] removed, int[] inserted, boolean resize) {
+            this.warp = warp;
+            this.pos = pos;
+            this.removed = removed;
+            this.inserted = inserted;
+            this.resize = resize;
+        }
+
+        @Override
+        public void undo() {
+            warp.splice(pos, inserted.length, removed);
+        }
+
+        @Override
+        public void redo() {
+            warp.splice(pos, removed.length, inserted);
+        }
+
+        @Override
+        public long getSize() {
+            return 48 + (4L * (removed.length + inserted.length));
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return Arrays.equals(removed, inserted);
+        }
+
+        /**
+         * Successive changes to the length of the same sett are merged. As
+         * each only replaces the threads from some position to the end, the
+         * merged edit replaces the threads from the lower position.
+         */
+        @Override
+        public History.Edit merge(History.Edit next) {
+            if (!(next instanceof Splice)) {
+                return null;
+            }
+
+            final Splice other = (Splice)next;
+            if (!resize || !other.resize || (warp != other.warp)) {
+                return null;
+            }
+
+            final int start = Math.min(pos, other.pos);
+            final int[] before = concat(other.removed, pos - other.pos, removed);
+            final int[] after = concat(inserted, other.pos - pos, other.inserted);
+
+            return new Splice(warp, start, before, after, true);
+        }
+
+        /**
+         * Join the first few threads of one range to another range.
+         * @param head range to take the first threads of.
+         * @param count of threads to take from head, none if negative.
+         * @param tail range to append.
+         * @return the joined range.
+         */
+        private static int[] concat(int[] head, int count, int[] tail) {
+            count = Math.max(0, count);
+            int[] result = Arrays.copyOf(head, count + tail.length);
+            System.arraycopy(tail, 0, result, count, tail.length);
+
+            return result;
+        }
+    }
+
+    /**
+     * Create the edit for a change to a range of threads, made between 
+     * capturing before and after.
+     * @param warp that was changed.
+     * @param pos of the first thread of the range.
+     * @param before colour indices of the range before the change.
+     * @param after colour indices of the range after the change.
+     * @param resize true if the change was to the length of the sett.
+     * @return the edit, or null if nothing changed.
+     */
+    public static History.Edit splice(Warp warp, int pos, int[] before, int[] after, boolean resize) {
+        if (Arrays.equals(before, after)) {
+            return null;
+        }
+
+        return new Splice(warp, pos, before, after, resize);
+    }
+
+    /**
+     * Rotation is an edit that rotated a sett.
+     */
+    public static class Rotation implements History.Edit {
+        private final Warp warp;
+        private final int step;
+
+        /**
+         * Constructor.
+         * @param warp that was rotated.
+         * @param step number of threads it was rotated by.
+         */
+        public Rotation(Warp warp, int step) {
+            this.warp = warp;
+            this.step = step;
+        }
+
+        @Override
+        public void undo() {
+            warp.rotate(-step);
+        }
+
+        @Override
+        public void redo() {
+            warp.rotate(step);
+        }
+
+        @Override
+        public long getSize() {
+            return 24;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return (step % warp.getActive()) == 0;
+        }
+
+        /**
+         * Successive rotations of the same sett, such as while a key is held
+         * down, are merged into one.
+         */
+        @Override
+        public History.Edit merge(History.Edit next) {
+            if (!(next instanceof Rotation) || (((Rotation)next).warp != warp)) {
+                return null;
+            }
+
+            return new Rotation(warp, step + ((Rotation)next).step);
+        }
+    }
+
+}
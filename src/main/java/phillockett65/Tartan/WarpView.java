@@ -0,0 +1,229 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * WarpView is a class that draws the thread selectors and the highlighted
+ * threads of a Warp on the Sample overlay. It holds the highlight state of
+ * the displayed threads, the Warp itself only holds the colours.
+ */
+package phillockett65.Tartan;
+
+import java.util.BitSet;
+
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+
+
+public class WarpView {
+
+    private final Model model;
+    private final Warp warp;
+
+    private GraphicsContext gc;
+    private Runnable repaint;
+
+    private final BitSet highlights;
+
+    private final Color defaultColour;
+
+    // Displayed size of a thread, set on each drawOverlay().
+    private double size;
+
+
+
+    /************************************************************************
+     * General support code.
+     */
+
+    private static double OFFSET = Default.BORDER_WIDTH.getFloat();
+
+    /**
+     * Calculate the number of thread positions that are visible, so that
+     * threads beyond the edge of the display are never drawn.
+     * @return the number of visible thread positions.
+     */
+    private int getVisibleCount() {
+        final double extent = (warp.isRow() ? Default.MPC_HEIGHT.getFloat() : Default.MPC_WIDTH.getFloat()) - OFFSET;
+
+        return (int)Math.ceil(extent / size);
+    }
+
+
+
+    /************************************************************************
+     * Support code for drawing the threads.
+     */
+
+    /**
+     * Set the gc colours for a highlighted thread and then draw it over
+     * the tartan.
+     * @param index of the thread.
+     * @param first thread displayed along this warp.
+     * @param cross first thread displayed across this warp.
+     */
+    private void drawHighlight(int index, int first, int cross) {
+        gc.setFill(model.getSwatchColour(warp.getColourIndex(index)));
+        gc.setStroke(model.getGuideLineColour());
+
+        if (warp.isRow())
+            drawRow(index, first, cross);
+        else
+            drawCol(index, first, cross);
+    }
+
+    /**
+     * Draw the thread selector, the lead stitch of the thread in the
+     * thread selection border.
+     * @param index of the thread.
+     * @param first thread displayed along this warp.
+     * @param cross first thread displayed across this warp.
+     */
+    private void drawSelector(int index, int first, int cross) {
+        final double pos = (index - first) * size;
+        final int weave = (index + cross) % 4;
+
+        gc.setFill(model.getSwatchColour(warp.getColourIndex(index)));
+        gc.setStroke(highlights.get(index) ? model.getGuideLineColour() : defaultColour);
+
+        if (warp.isRow()) {
+            final double width = OFFSET + ((weave == 1) ? size : 0);
+            gc.fillRect(-OFFSET, pos, width, size);
+            gc.strokeRect(-OFFSET, pos, width, size);
+        } else {
+            final double height = OFFSET + ((weave == 3) ? size : 0);
+            gc.fillRect(pos, -OFFSET, size, height);
+            gc.strokeRect(pos, -OFFSET, size, height);
+        }
+    }
+
+    private void drawRow(int index, int first, int cross) {
+        final double size2 = size * 2;
+        final double size4 = size * 4;
+        final double yPos = (index - first) * size;
+        final int count = (getVisibleCount() / 4) + 1;
+
+        final int c = Math.floorMod(-(index + cross), 4);
+        double xPos = c * size;
+        for (int j = 0; j < count; ++j) {
+            gc.fillRect(xPos, yPos, size2, size);
+            gc.strokeRect(xPos, yPos, size2, size);
+
+            xPos += size4;
+        }
+    }
+
+    private void drawCol(int index, int first, int cross) {
+        final double size2 = size * 2;
+        final double size4 = size * 4;
+        final double xPos = (index - first) * size;
+        final int count = (getVisibleCount() / 4) + 1;
+
+        final int r = Math.floorMod(2 - (index + cross), 4);
+        double yPos = r * size;
+        for (int j = 0; j < count; ++j) {
+            gc.fillRect(xPos, yPos, size, size2);
+            gc.strokeRect(xPos, yPos, size, size2);
+
+            yPos += size4;
+        }
+    }
+
+
+
+    /************************************************************************
+     * Support code for the Initialization of the WarpView.
+     */
+
+    /**
+     * Constructor.
+     * @param warp whose threads are drawn.
+     */
+    public WarpView(Warp warp) {
+        model = Model.getInstance();
+        defaultColour = model.getBorderColour();
+
+        this.warp = warp;
+        highlights = new BitSet();
+    }
+
+    /**
+     * Initialization after the model has been initialised.
+     * @param c GraphicsContext of the overlay to draw the thread selectors
+     * and highlights on, with the origin at the top left of the tartan.
+     * @param r called to request a repaint when the highlights change.
+     */
+    public void init(GraphicsContext c, Runnable r) {
+        gc = c;
+        repaint = r;
+    }
+
+
+
+    /************************************************************************
+     * Public interface.
+     */
+
+    /**
+     * Draw the highlighted threads and the thread selectors on the overlay.
+     * Only the visible range of threads is drawn, so the cost does not
+     * depend on the length of the sett. The selectors are drawn last so 
+     * that they are on top. Nothing is drawn at low zoom, where the threads
+     * are too small to be picked out.
+     * @param first thread displayed along this warp.
+     * @param cross first thread displayed across this warp.
+     * @param size displayed size of a thread in pixels.
+     */
+    public void drawOverlay(int first, int cross, double size) {
+        this.size = size;
+        if (size < Default.LOD_THREAD_SIZE.getFloat()) {
+            return;
+        }
+
+        gc.setLineWidth(model.getBorderThickness());
+
+        final int last = Math.min(warp.getActive(), first + getVisibleCount());
+        for (int index = highlights.nextSetBit(first); (index >= 0) && (index < last); index = highlights.nextSetBit(index+1)) {
+            drawHighlight(index, first, cross);
+        }
+
+        for (int index = first; index < last; ++index) {
+            drawSelector(index, first, cross);
+        }
+    }
+
+    public void clearThreads() {
+        if (highlights.isEmpty()) {
+            return;
+        }
+
+        highlights.clear();
+        repaint.run();
+    }
+
+    public void highlightThread(int pos, boolean highlight) {
+        if (highlights.get(pos) == highlight) {
+            return;
+        }
+
+        highlights.set(pos, highlight);
+        repaint.run();
+    }
+
+}
@@ -0,0 +1,76 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * BandRendererBenchmark measures how the export throughput scales with the
+ * parallelism of the BandRenderer, for the default sett at several thread
+ * sizes. The image is streamed to a PngEncoder writing to nowhere, so the
+ * figures include the encoding, which runs on a single thread. It is only
+ * run by the benchmark profile: mvn test -Pbenchmark
+ */
+package phillockett65.Tartan;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+
+@Tag("benchmark")
+public class BandRendererBenchmark {
+
+    private static final int[] PARALLELISM = { 1, 2, 4, 8 };
+    private static final int REPEATS = 3;
+
+    // Size of the exported image in pixels.
+    private static final int SIZE = 4000;
+
+    private static long export(Rasterizer rasterizer, int parallelism) throws IOException {
+        final long start = System.nanoTime();
+        try (PngEncoder encoder = new PngEncoder(OutputStream.nullOutputStream(), SIZE, SIZE)) {
+            new BandRenderer(rasterizer, parallelism).render(encoder);
+        }
+
+        return System.nanoTime() - start;
+    }
+
+    @Test
+    public void scaling() throws IOException {
+        final int[] threads = Benchmarks.buildSett(Default.INIT_THREAD_COUNT.getInt());
+        final int[] palette = Benchmarks.buildPalette();
+
+        System.out.println("Available processors: " + Runtime.getRuntime().availableProcessors());
+        for (double size : new double[] { 2, 6, 12 }) {
+            final Rasterizer rasterizer = new Rasterizer(threads, threads, palette, 0xFF000000, size, 1, SIZE, SIZE);
+            export(rasterizer, 1);
+
+            for (int parallelism : PARALLELISM) {
+                long best = Long.MAX_VALUE;
+                for (int r = 0; r < REPEATS; ++r) {
+                    best = Math.min(best, export(rasterizer, parallelism));
+                }
+
+                Benchmarks.report("Export size " + size + " x" + parallelism, (long)SIZE * SIZE, "pixels", best);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Benchmarks holds the support code shared by the benchmarks: test designs
+ * and the reporting of the results.
+ */
+package phillockett65.Tartan;
+
+import java.util.Random;
+
+
+public class Benchmarks {
+
+    /**
+     * Build a sett of random runs of the swatch colours.
+     * @param count of threads in the sett.
+     * @return the colour indices of the threads.
+     */
+    public static int[] buildSett(int count) {
+        final Random random = new Random(count);
+        int[] threads = new int[count];
+        int colour = 0;
+        for (int i = 0; i < count; ++i) {
+            if (random.nextInt(6) == 0) {
+                colour = random.nextInt(Default.SWATCH_COUNT.getInt());
+            }
+            threads[i] = colour;
+        }
+
+        return threads;
+    }
+
+    /**
+     * @return an ARGB palette with a distinct colour for each swatch.
+     */
+    public static int[] buildPalette() {
+        final int count = Default.SWATCH_COUNT.getInt();
+        int[] palette = new int[count];
+        for (int i = 0; i < count; ++i) {
+            palette[i] = 0xFF000000 | (i * 0x1F3D5B);
+        }
+
+        return palette;
+    }
+
+    /**
+     * Report the result of a benchmark.
+     * @param name of the benchmark.
+     * @param count of operations performed.
+     * @param units of the operations.
+     * @param nanos time taken in nanoseconds.
+     */
+    public static void report(String name, long count, String units, long nanos) {
+        final double seconds = nanos / 1e9;
+        System.out.printf("%-40s %10.3f ms %14.0f %s/s%n", name, nanos / 1e6, count / seconds, units);
+    }
+
+}
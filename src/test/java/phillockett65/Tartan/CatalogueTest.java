@@ -0,0 +1,168 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CatalogueTest checks that the watching Catalogue notices a design that is
+ * saved over an existing one, which changes only the design directory, as
+ * well as a design that is added.
+ */
+package phillockett65.Tartan;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+public class CatalogueTest {
+
+    private static final String INDEX = "catalogue.dat";
+    private static final String DATAFILE = "settings.dat";
+
+    @TempDir
+    Path folder;
+
+    private Catalogue catalogue;
+    private Thread thread;
+    private volatile String wanted;
+    private volatile CountDownLatch latch;
+
+
+
+    /************************************************************************
+     * Support code for the tests.
+     */
+
+    /**
+     * Save a design to its own directory in the base directory.
+     * @param dir name of the design directory.
+     * @param name of the design.
+     */
+    private void save(String dir, String name) throws IOException {
+        final Path path = folder.resolve(dir);
+        Files.createDirectories(path);
+        assertTrue(DataStore2.capture(DataStore2Test.buildDesign(name, "Swatch")).save(path.resolve(DATAFILE)));
+    }
+
+    /**
+     * Get ready to wait for the catalogue to report a design name.
+     * @param name of the design expected.
+     */
+    private void expect(String name) {
+        wanted = name;
+        latch = new CountDownLatch(1);
+    }
+
+    /**
+     * Wait for the catalogue to report the design name given to expect().
+     */
+    private void await() throws InterruptedException {
+        assertTrue(latch.await(10, TimeUnit.SECONDS), "Catalogue did not report " + wanted);
+    }
+
+    /**
+     * Catalogue an existing design and start watching the base directory.
+     */
+    @BeforeEach
+    public void setUp() throws IOException, InterruptedException {
+        save("tartan", "Original");
+
+        catalogue = new Catalogue(folder, INDEX, DATAFILE);
+        catalogue.setListener((name, metadata) -> {
+            if ((metadata != null) && metadata.getName().equals(wanted)) {
+                latch.countDown();
+            }
+        });
+        catalogue.reconcile();
+        assertEquals("Original", catalogue.getMetadata("tartan").getName());
+
+        thread = new Thread(catalogue::watch);
+        thread.setDaemon(true);
+        thread.start();
+
+        // Give the watch time to register the directories.
+        Thread.sleep(200);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        catalogue.close();
+        thread.join(5000);
+    }
+
+
+
+    /************************************************************************
+     * Tests.
+     */
+
+    @Test
+    public void savedInPlace() throws IOException, InterruptedException {
+        expect("Changed");
+        Thread.sleep(20);
+        save("tartan", "Changed");
+        await();
+
+        assertEquals("Changed", catalogue.getMetadata("tartan").getName());
+    }
+
+    @Test
+    public void addedThenSaved() throws IOException, InterruptedException {
+        expect("Added");
+        save("added", "Added");
+        await();
+
+        expect("Resaved");
+        Thread.sleep(20);
+        save("added", "Resaved");
+        await();
+
+        assertEquals("Resaved", catalogue.getMetadata("added").getName());
+        assertEquals("Original", catalogue.getMetadata("tartan").getName());
+    }
+
+    @Test
+    public void hiddenDirectoryIgnored() throws IOException, InterruptedException {
+        // A hidden directory, such as the render cache, is not a design
+        // even if it holds a settings file.
+        save(".hidden", "Hidden");
+        Thread.sleep(20);
+        save(".hidden", "Hidden again");
+
+        expect("Visible");
+        save("visible", "Visible");
+        await();
+
+        assertNull(catalogue.getMetadata(".hidden"));
+        assertFalse(catalogue.getNames().contains(".hidden"));
+    }
+
+}
@@ -0,0 +1,97 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * DataStore2Benchmark measures the save and load latency of a library of
+ * designs, in the DataStore2 format and in the DataStore1 format it
+ * replaces. It is only run by the benchmark profile: mvn test -Pbenchmark
+ */
+package phillockett65.Tartan;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+@Tag("benchmark")
+public class DataStore2Benchmark {
+
+    private static final int LIBRARY = 1000;
+
+    @TempDir
+    Path folder;
+
+    @Test
+    public void libraryLatency() throws IOException {
+        final TartanDesign design = DataStore2Test.buildDesign("Benchmark", "Swatch");
+        Path[] v2 = new Path[LIBRARY];
+        Path[] v1 = new Path[LIBRARY];
+        for (int i = 0; i < LIBRARY; ++i) {
+            v2[i] = folder.resolve("v2-" + i + ".dat");
+            v1[i] = folder.resolve("v1-" + i + ".dat");
+        }
+
+        // Warm up both formats before timing them.
+        for (int i = 0; i < LIBRARY; ++i) {
+            DataStore2.capture(design).save(v2[i]);
+            DataStore2.readDesign(v2[i]);
+            DataStore1.capture(design).save(v1[i]);
+            DataStore1.read(v1[i]);
+        }
+
+        long start = System.nanoTime();
+        for (Path path : v2) {
+            DataStore2.capture(design).save(path);
+        }
+        Benchmarks.report("DataStore2 save", LIBRARY, "files", System.nanoTime() - start);
+
+        start = System.nanoTime();
+        for (Path path : v2) {
+            DataStore2.readDesign(path);
+        }
+        Benchmarks.report("DataStore2 load", LIBRARY, "files", System.nanoTime() - start);
+
+        start = System.nanoTime();
+        for (Path path : v2) {
+            DataStore2.readMetadata(path, "");
+        }
+        Benchmarks.report("DataStore2 header only", LIBRARY, "files", System.nanoTime() - start);
+
+        start = System.nanoTime();
+        for (Path path : v1) {
+            DataStore1.capture(design).save(path);
+        }
+        Benchmarks.report("DataStore1 save", LIBRARY, "files", System.nanoTime() - start);
+
+        start = System.nanoTime();
+        for (Path path : v1) {
+            DataStore1.read(path);
+        }
+        Benchmarks.report("DataStore1 load", LIBRARY, "files", System.nanoTime() - start);
+
+        System.out.printf("File size DataStore2: %d bytes, DataStore1: %d bytes%n",
+            Files.size(v2[0]), Files.size(v1[0]));
+    }
+
+}
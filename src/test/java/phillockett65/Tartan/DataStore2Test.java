@@ -0,0 +1,232 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * DataStore2Test checks that a design written by DataStore2 reads back the
+ * same, including headers too long for the original 16 bit header size,
+ * and that DataStore1 files are left to DataStore1.
+ */
+package phillockett65.Tartan;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+public class DataStore2Test {
+
+    @TempDir
+    Path folder;
+
+
+
+    /************************************************************************
+     * Support code for the tests.
+     */
+
+    /**
+     * Build a design with distinct values in every field.
+     * @param name of the design.
+     * @param label to start each swatch name with.
+     * @return the design.
+     */
+    static TartanDesign buildDesign(String name, String label) {
+        final int count = Default.SWATCH_COUNT.getInt();
+        final int[] rows = Benchmarks.buildSett(170);
+        final int[] cols = Benchmarks.buildSett(114);
+        String[] names = new String[count];
+        for (int i = 0; i < count; ++i) {
+            names[i] = label + " " + i;
+        }
+
+        return new TartanDesign(name,
+            new TartanDesign.Threads(rows, 0, rows.length),
+            new TartanDesign.Threads(cols, 0, cols.length),
+            Benchmarks.buildPalette(), names, 3, 2, 7.5, 1.25,
+            0xFF000000, 0xFF00FF00, false, true);
+    }
+
+    private static void assertSameDesign(TartanDesign expected, DataStore2 actual) {
+        assertEquals(expected.getName(), actual.getName());
+        assertArrayEquals(expected.getPalette(), actual.getSwatchColours());
+        for (int i = 0; i < expected.getSwatchCount(); ++i) {
+            assertEquals(expected.getSwatchName(i), actual.getSwatchNames()[i]);
+        }
+        assertEquals(expected.getSelectedSwatch(), actual.getSelectedSwatch());
+        assertEquals(expected.getColumns().toSett(), actual.getColumnSett());
+        assertEquals(expected.getRows().toSett(), actual.getRowSett());
+        assertEquals(expected.isDuplicate(), actual.isDuplicate());
+        assertEquals(expected.isShowGuide(), actual.isShowGuide());
+        assertEquals(expected.getGuideLineColour(), actual.getGuideLineColour());
+        assertEquals(expected.getThreadCount(), actual.getThreadCount());
+        assertEquals(expected.getThreadSize(), actual.getThreadSize());
+        assertEquals(expected.getBorderThickness(), actual.getBorderThickness());
+    }
+
+    /**
+     * @return the number of files in the folder.
+     */
+    private long countFiles() throws IOException {
+        try (Stream<Path> files = Files.list(folder)) {
+            return files.count();
+        }
+    }
+
+    private static String repeat(char c, int count) {
+        return String.valueOf(c).repeat(count);
+    }
+
+
+
+    /************************************************************************
+     * Tests.
+     */
+
+    @Test
+    public void roundTrip() throws IOException {
+        final TartanDesign design = buildDesign("Round Trip", "Swatch");
+        final Path path = folder.resolve("settings.dat");
+
+        assertTrue(DataStore2.capture(design).save(path));
+        assertSameDesign(design, DataStore2.readDesign(path));
+    }
+
+    @Test
+    public void saveReplacesWholeFile() throws IOException {
+        final Path path = folder.resolve("settings.dat");
+        DataStore2.capture(buildDesign(repeat('L', 5000), "Long swatch name")).save(path);
+        final long longSize = Files.size(path);
+
+        final TartanDesign design = buildDesign("Short", "S");
+        assertTrue(DataStore2.capture(design).save(path));
+
+        assertTrue(Files.size(path) < longSize);
+        assertSameDesign(design, DataStore2.readDesign(path));
+        assertEquals(1, countFiles());
+    }
+
+    @Test
+    public void failedSaveLeavesNoTemporaryFile() throws IOException {
+        // The target is a directory that can't be replaced by the move.
+        final Path path = Files.createDirectory(folder.resolve("settings.dat"));
+        Files.write(path.resolve("keep"), new byte[] { 1 });
+
+        assertFalse(DataStore2.capture(buildDesign("Failed", "Swatch")).save(path));
+        assertTrue(Files.isDirectory(path));
+        assertEquals(1, countFiles());
+    }
+
+    @Test
+    public void roundTripOfTheHeader() throws IOException {
+        final TartanDesign design = buildDesign("Header", "Label");
+        final Path path = folder.resolve("settings.dat");
+        DataStore2.capture(design).save(path);
+
+        final Metadata metadata = DataStore2.readMetadata(path, "fallback");
+        assertTrue(metadata.isComplete());
+        assertEquals("Header", metadata.getName());
+        assertEquals(design.getColumnCount(), metadata.getColumnCount());
+        assertEquals(design.getRowCount(), metadata.getRowCount());
+        assertArrayEquals(design.getPalette(), metadata.getPalette());
+        assertEquals("Label 7", metadata.getSwatchNames()[7]);
+    }
+
+    @Test
+    public void headerLongerThan64KiB() throws IOException {
+        final TartanDesign design = buildDesign(repeat('N', 30000), repeat('é', 20000));
+        final Path path = folder.resolve("settings.dat");
+        DataStore2.capture(design).save(path);
+
+        assertSameDesign(design, DataStore2.readDesign(path));
+        assertEquals(design.getName(), DataStore2.readMetadata(path, "fallback").getName());
+    }
+
+    @Test
+    public void readsVersion4Files() throws IOException {
+        final TartanDesign design = buildDesign("Old", "Swatch");
+        final Path path = folder.resolve("settings.dat");
+        DataStore2.capture(design).save(path);
+
+        // Version 4 files differ only in the version, as the high bits of
+        // the header size were always 0.
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        assertEquals(0, buffer.getShort(14));
+        buffer.putShort(4, (short)4);
+        Files.write(path, buffer.array());
+
+        assertSameDesign(design, DataStore2.readDesign(path));
+    }
+
+    @Test
+    public void corruptBodyIsRejected() throws IOException {
+        final Path path = folder.resolve("settings.dat");
+        DataStore2.capture(buildDesign("Corrupt", "Swatch")).save(path);
+
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[bytes.length - 3] ^= 0x55;
+        Files.write(path, bytes);
+
+        assertThrows(IOException.class, () -> DataStore2.readDesign(path));
+    }
+
+    @Test
+    public void dataStore1FilesFallBack() throws IOException {
+        final TartanDesign design = buildDesign("Legacy", "Swatch");
+        final Path path = folder.resolve("settings.dat");
+        assertTrue(DataStore1.capture(design).save(path));
+
+        assertNull(DataStore2.readDesign(path));
+
+        final Metadata metadata = DataStore2.readMetadata(path, "fallback");
+        assertFalse(metadata.isComplete());
+        assertEquals("fallback", metadata.getName());
+
+        final DataStore1 store = DataStore1.read(path);
+        assertNotNull(store);
+        assertEquals(toList(design.getRows()), store.getRowList());
+        assertEquals(toList(design.getColumns()), store.getColumnList());
+        assertEquals("Swatch 5", store.getSwatchName(5));
+        assertEquals(design.getThreadCount(), store.getThreadCount());
+    }
+
+    private static ArrayList<Integer> toList(TartanDesign.Threads threads) {
+        ArrayList<Integer> list = new ArrayList<Integer>();
+        for (int thread : threads.toArray()) {
+            list.add(thread);
+        }
+
+        return list;
+    }
+
+}
@@ -0,0 +1,149 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * HistoryTest checks that edits which cancel out are not kept on the undo
+ * stack, and that a group of edits is undone as one.
+ */
+package phillockett65.Tartan;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+public class HistoryTest {
+
+    private static final int COUNT = 20;
+
+    private Warp warp;
+    private History history;
+
+
+
+    /************************************************************************
+     * Support code for the tests.
+     */
+
+    /**
+     * Build a Warp of COUNT threads, each a different colour, and an empty
+     * history.
+     */
+    @BeforeEach
+    public void setUp() {
+        ArrayList<Integer> threads = new ArrayList<Integer>();
+        for (int i = 0; i < COUNT; ++i) {
+            threads.add(i);
+        }
+
+        warp = new Warp(false, 2, 400);
+        warp.setList(threads);
+
+        history = new History(1L << 20);
+    }
+
+    /**
+     * Rotate the Warp and record the edit.
+     */
+    private void rotate(int step) {
+        warp.rotate(step);
+        history.record(new WarpEdit.Rotation(warp, step));
+    }
+
+    /**
+     * @return the colour indices of the Warp in sett order.
+     */
+    private int[] threads() {
+        return warp.getColours(0, warp.getActive());
+    }
+
+
+
+    /************************************************************************
+     * Tests.
+     */
+
+    @Test
+    public void cancelledRotationsAreDropped() {
+        rotate(1);
+        rotate(-1);
+
+        assertFalse(history.canUndo());
+        assertEquals(0, history.getSize());
+    }
+
+    @Test
+    public void fullTurnIsDropped() {
+        rotate(7);
+        rotate(COUNT - 7);
+
+        assertFalse(history.canUndo());
+    }
+
+    @Test
+    public void partialRotationsAreMerged() {
+        rotate(1);
+        rotate(1);
+        rotate(-1);
+
+        assertTrue(history.canUndo());
+        assertTrue(history.undo());
+        assertEquals(0, warp.getColourIndex(0));
+        assertFalse(history.canUndo());
+    }
+
+    @Test
+    public void cancelledGroupIsDropped() {
+        history.begin();
+        rotate(3);
+        history.end();
+        history.begin();
+        rotate(-3);
+        history.end();
+
+        assertFalse(history.canUndo());
+    }
+
+    @Test
+    public void groupIsUndoneTogether() {
+        final int[] start = threads();
+
+        history.begin();
+        rotate(2);
+        final int[] before = threads();
+        warp.clear();
+        history.record(WarpEdit.splice(warp, 0, before, threads(), false));
+        history.end();
+        assertEquals(0, warp.getColourIndex(COUNT - 1));
+
+        assertTrue(history.undo());
+        assertArrayEquals(start, threads());
+        assertFalse(history.canUndo());
+        assertTrue(history.redo());
+        assertEquals(0, warp.getColourIndex(COUNT - 1));
+    }
+
+}
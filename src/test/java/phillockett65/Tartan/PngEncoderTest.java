@@ -0,0 +1,124 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * PngEncoderTest checks that the encoded images can be read back, and that
+ * an image with missing scanlines is reported rather than completed.
+ */
+package phillockett65.Tartan;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+
+
+public class PngEncoderTest {
+
+    private static final int WIDTH = 37;
+    private static final int HEIGHT = 23;
+
+
+
+    /************************************************************************
+     * Support code for the tests.
+     */
+
+    /**
+     * @return a distinct opaque colour for each pixel.
+     */
+    private static int[] buildPixels() {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; ++y) {
+            for (int x = 0; x < WIDTH; ++x) {
+                pixels[(y * WIDTH) + x] = 0xFF000000 | (x << 16) | (y << 8) | ((x * y) & 0xFF);
+            }
+        }
+
+        return pixels;
+    }
+
+    private static boolean hasEnd(byte[] png) {
+        return new String(png, StandardCharsets.ISO_8859_1).contains("IEND");
+    }
+
+
+
+    /************************************************************************
+     * Tests.
+     */
+
+    @Test
+    public void roundTrip() throws IOException {
+        final int[] pixels = buildPixels();
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        try (PngEncoder encoder = new PngEncoder(stream, WIDTH, HEIGHT)) {
+            encoder.writeLines(pixels, HEIGHT);
+        }
+
+        final BufferedImage image = ImageIO.read(new ByteArrayInputStream(stream.toByteArray()));
+        assertEquals(WIDTH, image.getWidth());
+        assertEquals(HEIGHT, image.getHeight());
+        for (int y = 0; y < HEIGHT; ++y) {
+            for (int x = 0; x < WIDTH; ++x) {
+                assertEquals(pixels[(y * WIDTH) + x], image.getRGB(x, y), "pixel " + x + ", " + y);
+            }
+        }
+    }
+
+    @Test
+    public void shortImageIsNotCompleted() throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        PngEncoder encoder = new PngEncoder(stream, WIDTH, HEIGHT);
+        encoder.writeLines(buildPixels(), HEIGHT - 1);
+
+        final IOException e = assertThrows(IOException.class, encoder::close);
+        assertEquals("PNG image has " + (HEIGHT - 1) + " of " + HEIGHT + " scanlines", e.getMessage());
+        assertFalse(hasEnd(stream.toByteArray()));
+    }
+
+    @Test
+    public void emptyImageIsNotCompleted() throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        PngEncoder encoder = new PngEncoder(stream, WIDTH, HEIGHT);
+
+        assertThrows(IOException.class, encoder::close);
+        assertFalse(hasEnd(stream.toByteArray()));
+    }
+
+    @Test
+    public void extraScanlineIsRejected() throws IOException {
+        final int[] pixels = buildPixels();
+        try (PngEncoder encoder = new PngEncoder(new ByteArrayOutputStream(), WIDTH, HEIGHT)) {
+            encoder.writeLines(pixels, HEIGHT);
+            assertThrows(IOException.class, () -> encoder.writeLine(pixels, 0));
+        }
+    }
+
+}
@@ -0,0 +1,58 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * RasterizerBenchmark measures the rendering throughput of the Rasterizer
+ * for the default sett at several thread sizes. It is only run by the
+ * benchmark profile: mvn test -Pbenchmark
+ */
+package phillockett65.Tartan;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+
+@Tag("benchmark")
+public class RasterizerBenchmark {
+
+    private static final int REPEATS = 5;
+
+    @Test
+    public void renderThroughput() {
+        final int[] threads = Benchmarks.buildSett(Default.INIT_THREAD_COUNT.getInt());
+        final int[] palette = Benchmarks.buildPalette();
+
+        for (double size : new double[] { 2, 6, 12, 24 }) {
+            final int width = (int)(threads.length * size * 2);
+            final int height = width;
+            final int[] buffer = new int[width * height];
+
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < REPEATS; ++i) {
+                final long start = System.nanoTime();
+                new Rasterizer(threads, threads, palette, 0xFF000000, size, 1, width, height).render(buffer);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+
+            Benchmarks.report("Rasterizer size " + size, (long)width * height, "pixels", best);
+        }
+    }
+
+}
@@ -0,0 +1,146 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * RasterizerTest checks the pixels produced by the Rasterizer against the
+ * 2/2 twill rule: the cell at column X and row Y shows the row thread when
+ * (X + Y) & 3 is less than 2, otherwise it shows the column thread.
+ */
+package phillockett65.Tartan;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+
+public class RasterizerTest {
+
+    private static final int[] ROWS = { 0, 1, 2, 3, 1, 0, 2 };
+    private static final int[] COLS = { 3, 2, 1, 0, 2 };
+    private static final int[] PALETTE = { 0xFFFFFFFF, 0xFFFF0000, 0xFF00FF00, 0xFF0000FF };
+    private static final int BORDER = 0xFF000000;
+
+
+
+    /************************************************************************
+     * Support code for the tests.
+     */
+
+    /**
+     * Calculate the colour of a cell from the twill rule.
+     * @param col cell column.
+     * @param row cell row.
+     * @param phase of the twill.
+     * @return the ARGB colour of the thread on top.
+     */
+    private static int twill(int col, int row, int phase) {
+        if (((col + row + phase) & 3) < 2) {
+            return PALETTE[ROWS[row % ROWS.length]];
+        }
+
+        return PALETTE[COLS[col % COLS.length]];
+    }
+
+    /**
+     * Check every pixel of an image without borders against the twill rule.
+     */
+    private static void checkTwill(double size, int phase) {
+        final int width = (int)(COLS.length * size * 4);
+        final int height = (int)(ROWS.length * size * 4);
+        final int[] pixels = new Rasterizer(ROWS, COLS, PALETTE, BORDER, size, 0, width, height, phase).render();
+
+        for (int y = 0; y < height; ++y) {
+            final int row = (int)((y + 0.5) / size);
+            for (int x = 0; x < width; ++x) {
+                final int col = (int)((x + 0.5) / size);
+                assertEquals(twill(col, row, phase), pixels[(y * width) + x], "pixel " + x + ", " + y);
+            }
+        }
+    }
+
+
+
+    /************************************************************************
+     * Tests.
+     */
+
+    @Test
+    public void everyPixelFollowsTheTwill() {
+        checkTwill(5, 0);
+    }
+
+    @Test
+    public void everyPixelFollowsTheTwillAtFractionalSizes() {
+        checkTwill(2.5, 0);
+        checkTwill(3.7, 0);
+    }
+
+    @Test
+    public void phaseShiftsTheTwill() {
+        for (int phase = 0; phase < 4; ++phase) {
+            checkTwill(4, phase);
+        }
+    }
+
+    @Test
+    public void bordersOutlineEachStitch() {
+        final int size = 8;
+        final int width = COLS.length * size * 4;
+        final int height = ROWS.length * size * 4;
+        final int[] pixels = new Rasterizer(ROWS, COLS, PALETTE, BORDER, size, 2, width, height).render();
+
+        for (int y = 0; y < height; ++y) {
+            final int row = y / size;
+            final boolean rowEdge = ((y % size) == 0) || ((y % size) == size - 1);
+            for (int x = 0; x < width; ++x) {
+                final int col = x / size;
+                final boolean colEdge = ((x % size) == 0) || ((x % size) == size - 1);
+                final int pixel = pixels[(y * width) + x];
+
+                if (!rowEdge && !colEdge) {
+                    assertEquals(twill(col, row, 0), pixel, "inside " + x + ", " + y);
+                } else if ((((col + row) & 3) < 2) ? rowEdge : colEdge) {
+                    // The long sides of a stitch are always outlined.
+                    assertEquals(BORDER, pixel, "side " + x + ", " + y);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void windowMatchesTheWholeImage() {
+        final double size = 3.5;
+        final int width = 200;
+        final int height = 60;
+        final int[] whole = new Rasterizer(ROWS, COLS, PALETTE, BORDER, size, 1, width, height).render();
+
+        final int left = 37;
+        final int count = 91;
+        final Rasterizer window = new Rasterizer(ROWS, COLS, PALETTE, BORDER, size, 1, left, count, height, 0);
+        final int[] line = new int[count];
+        for (int y = 0; y < height; ++y) {
+            window.renderLine(line, 0, y);
+            for (int x = 0; x < count; ++x) {
+                assertEquals(whole[(y * width) + left + x], line[x], "pixel " + (left + x) + ", " + y);
+            }
+        }
+    }
+
+}
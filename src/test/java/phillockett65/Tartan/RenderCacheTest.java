@@ -0,0 +1,212 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * RenderCacheTest checks the keys of the rendered images and the eviction
+ * of the least recently used images from the memory and disc tiers.
+ */
+package phillockett65.Tartan;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+public class RenderCacheTest {
+
+    private static final int SIZE = 100;
+
+    @TempDir
+    Path folder;
+
+
+
+    /************************************************************************
+     * Support code for the tests.
+     */
+
+    /**
+     * Write a fake rendered image of SIZE bytes.
+     * @param name of the file.
+     * @param fill value of every byte, so that the images differ.
+     * @return the path of the image.
+     */
+    private Path render(String name, int fill) throws IOException {
+        byte[] bytes = new byte[SIZE];
+        Arrays.fill(bytes, (byte)fill);
+
+        return Files.write(folder.resolve(name), bytes);
+    }
+
+    /**
+     * Fetch an image and check it is the one stored.
+     * @return true if the image was cached, false otherwise.
+     */
+    private boolean fetch(RenderCache cache, String key, int fill) throws IOException {
+        final Path target = folder.resolve("target.png");
+        Files.deleteIfExists(target);
+        if (!cache.fetch(key, target)) {
+            return false;
+        }
+
+        byte[] expected = new byte[SIZE];
+        Arrays.fill(expected, (byte)fill);
+        assertArrayEquals(expected, Files.readAllBytes(target));
+
+        return true;
+    }
+
+    private static void age(Path dir, String key, long millis) throws IOException {
+        Files.setLastModifiedTime(dir.resolve(key + ".png"), FileTime.fromMillis(millis));
+    }
+
+    private static String key(int[] rows, int[] palette, int border, double size, double thickness, int width) {
+        return RenderCache.getKey(rows, new int[] { 0, 1, 2 }, palette, border, size, thickness, width, 200);
+    }
+
+
+
+    /************************************************************************
+     * Tests.
+     */
+
+    @Test
+    public void keyIsStable() {
+        final int[] rows = Benchmarks.buildSett(170);
+        final int[] palette = Benchmarks.buildPalette();
+        final String key = key(rows, palette, 0xFF000000, 7.5, 1.25, 300);
+
+        assertEquals(64, key.length());
+        assertTrue(key.matches("[0-9a-f]+"));
+        assertEquals(key, key(rows.clone(), palette.clone(), 0xFF000000, 7.5, 1.25, 300));
+    }
+
+    @Test
+    public void keyChangesWithEveryInput() {
+        final int[] rows = Benchmarks.buildSett(170);
+        final int[] palette = Benchmarks.buildPalette();
+        int[] recoloured = rows.clone();
+        recoloured[100] = (recoloured[100] + 1) % palette.length;
+        int[] repainted = palette.clone();
+        repainted[0] ^= 0x00010000;
+
+        HashSet<String> keys = new HashSet<String>();
+        keys.add(key(rows, palette, 0xFF000000, 7.5, 1.25, 300));
+        keys.add(key(recoloured, palette, 0xFF000000, 7.5, 1.25, 300));
+        keys.add(key(Arrays.copyOf(rows, 169), palette, 0xFF000000, 7.5, 1.25, 300));
+        keys.add(key(rows, repainted, 0xFF000000, 7.5, 1.25, 300));
+        keys.add(key(rows, palette, 0xFF000001, 7.5, 1.25, 300));
+        keys.add(key(rows, palette, 0xFF000000, 7.0, 1.25, 300));
+        keys.add(key(rows, palette, 0xFF000000, 7.5, 1.0, 300));
+        keys.add(key(rows, palette, 0xFF000000, 7.5, 1.25, 301));
+        assertEquals(8, keys.size());
+
+        // The rows and columns are not interchangeable.
+        assertNotEquals(RenderCache.getKey(new int[] { 1 }, new int[] { 2 }, palette, 0, 1, 1, 10, 10),
+            RenderCache.getKey(new int[] { 2 }, new int[] { 1 }, palette, 0, 1, 1, 10, 10));
+    }
+
+    @Test
+    public void memoryEvictsLeastRecentlyUsed() throws IOException {
+        // Room for four images in memory and none on disc.
+        final RenderCache cache = new RenderCache(folder.resolve("cache"), 4 * SIZE, 0);
+        for (int i = 0; i < 4; ++i) {
+            cache.store("k" + i, render("image" + i, i));
+        }
+
+        // Using "k0" makes "k1" the least recently used.
+        assertTrue(fetch(cache, "k0", 0));
+        cache.store("k4", render("image4", 4));
+
+        assertFalse(fetch(cache, "k1", 1));
+        assertTrue(fetch(cache, "k0", 0));
+        assertTrue(fetch(cache, "k2", 2));
+        assertTrue(fetch(cache, "k3", 3));
+        assertTrue(fetch(cache, "k4", 4));
+        assertFalse(Files.exists(folder.resolve("cache")));
+    }
+
+    @Test
+    public void largeImageNotHeldInMemory() throws IOException {
+        // An image over a quarter of the memory tier is only held on disc.
+        final Path dir = folder.resolve("cache");
+        final RenderCache cache = new RenderCache(dir, (4 * SIZE) - 1, 10 * SIZE);
+        cache.store("big", render("image", 7));
+        Files.delete(dir.resolve("big.png"));
+
+        assertFalse(fetch(cache, "big", 7));
+    }
+
+    @Test
+    public void discEvictsLeastRecentlyUsed() throws IOException {
+        // Room for two images on disc and none in memory.
+        final Path dir = folder.resolve("cache");
+        final RenderCache cache = new RenderCache(dir, 0, (2 * SIZE) + (SIZE / 2));
+        cache.store("a", render("imageA", 'a'));
+        cache.store("b", render("imageB", 'b'));
+        age(dir, "a", 1000000);
+        age(dir, "b", 2000000);
+
+        // Using "a" makes "b" the least recently used.
+        assertTrue(fetch(cache, "a", 'a'));
+        cache.store("c", render("imageC", 'c'));
+
+        assertFalse(Files.exists(dir.resolve("b.png")));
+        assertFalse(fetch(cache, "b", 'b'));
+        assertTrue(fetch(cache, "a", 'a'));
+        assertTrue(fetch(cache, "c", 'c'));
+    }
+
+    @Test
+    public void discKeptBetweenSessions() throws IOException {
+        final Path dir = folder.resolve("cache");
+        new RenderCache(dir, 4 * SIZE, 10 * SIZE).store("a", render("imageA", 'a'));
+
+        final RenderCache later = new RenderCache(dir, 4 * SIZE, (2 * SIZE) + (SIZE / 2));
+        assertTrue(fetch(later, "a", 'a'));
+
+        // The images already on disc count towards the size of the new 
+        // session.
+        age(dir, "a", 1000000);
+        later.store("b", render("imageB", 'b'));
+        age(dir, "b", 2000000);
+        later.store("c", render("imageC", 'c'));
+        assertFalse(Files.exists(dir.resolve("a.png")));
+        assertTrue(Files.exists(dir.resolve("b.png")));
+        assertTrue(Files.exists(dir.resolve("c.png")));
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(2, files.count());
+        }
+    }
+
+}
@@ -0,0 +1,238 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * SaveImageBenchmark compares the Rasterizer with the Canvas path that it
+ * replaced for saving the image of a design, which drew every stitch as a
+ * stroked rectangle on a Canvas and took a snapshot of it. It checks that
+ * both give the same pixels for several thread sizes and border 
+ * thicknesses, and reports the time each takes. The toolkit is started 
+ * headless. It is only run by the benchmark profile: mvn test -Pbenchmark
+ */
+package phillockett65.Tartan;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import javafx.application.Platform;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+
+
+@Tag("benchmark")
+public class SaveImageBenchmark {
+
+    private static final int REPEATS = 3;
+    private static final int BORDER = 0xFF000000;
+
+
+
+    /************************************************************************
+     * Support code for the Canvas path.
+     */
+
+    @BeforeAll
+    public static void startToolkit() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        try {
+            Platform.startup(started::countDown);
+        } catch (IllegalStateException e) {
+            // Already started by another benchmark.
+            started.countDown();
+        }
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+    }
+
+    private static Color toColor(int argb) {
+        return Color.rgb((argb >> 16) & 0xFF, (argb >> 8) & 0xFF, argb & 0xFF, ((argb >>> 24) & 0xFF) / 255.0);
+    }
+
+    /**
+     * Draw the image the way that Model.saveImage() used to, two sett
+     * repeats of stroked stitches on a Canvas, and take a snapshot. Must be
+     * called on the FX thread.
+     * @return the ARGB pixels of the snapshot.
+     */
+    private static int[] drawCanvas(int[] rows, int[] cols, int[] palette, double size, double thickness) {
+        final double size2 = size * 2;
+        final double size4 = size * 4;
+        final int cCount = cols.length;
+        final int rCount = rows.length;
+        final double xMax = cCount * size2;
+        final double yMax = rCount * size2;
+        final Canvas canvas = new Canvas(xMax, yMax);
+        final GraphicsContext gc = canvas.getGraphicsContext2D();
+
+        gc.setStroke(toColor(BORDER));
+        gc.setLineWidth(thickness);
+
+        double xPos = 0;
+        double yPos = 0;
+        int count = cCount / 2;
+        for (int i = 0; i < (rCount * 2); ++i) {
+            final Color colour = toColor(palette[rows[i % rCount]]);
+
+            int c = i % 4;
+            c = (4 - c) % 4;
+            xPos = size * c;
+            for (int j = 0; j < count; ++j) {
+                gc.setFill(colour);
+                gc.fillRect(xPos, yPos, size2, size);
+                gc.strokeRect(xPos, yPos, size2, size);
+
+                xPos += size4;
+            }
+            yPos += size;
+        }
+
+        count = rCount / 2;
+        xPos = 0;
+        yPos = 0;
+        for (int i = 0; i < (cCount * 2); ++i) {
+            final Color colour = toColor(palette[cols[i % cCount]]);
+
+            int r = i % 4;
+            r = (6 - r) % 4;
+            yPos = size * r;
+            for (int j = 0; j < count; ++j) {
+                gc.setFill(colour);
+                gc.fillRect(xPos, yPos, size, size2);
+                gc.strokeRect(xPos, yPos, size, size2);
+
+                yPos += size4;
+            }
+            xPos += size;
+        }
+
+        SnapshotParameters parameters = new SnapshotParameters();
+        parameters.setFill(Color.TRANSPARENT);
+
+        final int width = (int)xMax;
+        final int height = (int)yMax;
+        WritableImage snapshot = new WritableImage(width, height);
+        canvas.snapshot(parameters, snapshot);
+
+        int[] pixels = new int[width * height];
+        snapshot.getPixelReader().getPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+
+        return pixels;
+    }
+
+    /**
+     * Run the Canvas path on the FX thread and wait for it.
+     * @return the ARGB pixels of the snapshot.
+     */
+    private static int[] renderCanvas(int[] rows, int[] cols, int[] palette, double size, double thickness) throws InterruptedException {
+        final AtomicReference<int[]> result = new AtomicReference<int[]>();
+        final CountDownLatch done = new CountDownLatch(1);
+        Platform.runLater(() -> {
+            try {
+                result.set(drawCanvas(rows, cols, palette, size, thickness));
+            } finally {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+
+        return result.get();
+    }
+
+    private static int[] renderRasterizer(int[] rows, int[] cols, int[] palette, double size, double thickness) {
+        final int width = (int)(cols.length * size * 2);
+        final int height = (int)(rows.length * size * 2);
+
+        return new Rasterizer(rows, cols, palette, BORDER, size, thickness, width, height).render();
+    }
+
+
+
+    /************************************************************************
+     * Tests.
+     */
+
+    @Test
+    public void samePixels() throws InterruptedException {
+        final int[] rows = Benchmarks.buildSett(24);
+        final int[] cols = Benchmarks.buildSett(20);
+        final int[] palette = Benchmarks.buildPalette();
+
+        // Thread sizes and border thicknesses whose border edges fall on 
+        // pixel edges, where the Canvas does not anti-alias.
+        final double[][] cases = { { 2, 2 }, { 3, 2 }, { 4, 4 }, { 5, 2 }, { 8, 4 }, { 8, 6 }, { 2.5, 3 } };
+        for (double[] c : cases) {
+            final double size = c[0];
+            final double thickness = c[1];
+            final String name = "size " + size + " border " + thickness;
+            final int[] canvas = renderCanvas(rows, cols, palette, size, thickness);
+            final int[] raster = renderRasterizer(rows, cols, palette, size, thickness);
+            assertEquals(canvas.length, raster.length, name);
+
+            // The Canvas left the half stitches at the left and top edges
+            // unpainted, and its strokes are partly transparent at the
+            // right and bottom edges, so only its opaque pixels compare.
+            int compared = 0;
+            for (int i = 0; i < canvas.length; ++i) {
+                if ((canvas[i] >>> 24) == 0xFF) {
+                    assertEquals(canvas[i], raster[i], name + " pixel " + i);
+                    ++compared;
+                }
+            }
+            assertTrue(compared > (canvas.length * 0.9), name + " compared " + compared);
+        }
+    }
+
+    @Test
+    public void renderTime() throws InterruptedException {
+        final int[] threads = Benchmarks.buildSett(Default.INIT_THREAD_COUNT.getInt());
+        final int[] palette = Benchmarks.buildPalette();
+
+        for (double size : new double[] { 2, 6, 12 }) {
+            final long pixels = (long)threads.length * threads.length * (long)(size * size * 4);
+
+            long canvas = Long.MAX_VALUE;
+            long raster = Long.MAX_VALUE;
+            for (int i = 0; i < REPEATS; ++i) {
+                long start = System.nanoTime();
+                renderCanvas(threads, threads, palette, size, 2);
+                canvas = Math.min(canvas, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                renderRasterizer(threads, threads, palette, size, 2);
+                raster = Math.min(raster, System.nanoTime() - start);
+            }
+
+            Benchmarks.report("Canvas snapshot size " + size, pixels, "pixels", canvas);
+            Benchmarks.report("Rasterizer size " + size, pixels, "pixels", raster);
+        }
+    }
+
+}
@@ -0,0 +1,136 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * SearchIndexTest checks the ranking of the designs found by a query, and
+ * that adding, updating and removing designs keeps the index in step.
+ */
+package phillockett65.Tartan;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+public class SearchIndexTest {
+
+    private SearchIndex index;
+
+
+
+    /************************************************************************
+     * Support code for the tests.
+     */
+
+    /**
+     * Build an index of a few designs whose names and swatch names share
+     * words.
+     */
+    @BeforeEach
+    public void setUp() {
+        index = new SearchIndex();
+        index.add("Royal Stewart", new String[] { "Red", "Navy" });
+        index.add("Hunting Royal", new String[] { "Green", "Black" });
+        index.add("Dress Royal", new String[] { "White", "Red" });
+        index.add("Black Watch", new String[] { "Royal Blue", "Dark Green" });
+        index.add("Campbell", new String[] { "Green", "Blue" });
+    }
+
+    private static List<String> list(String... names) {
+        return Arrays.asList(names);
+    }
+
+
+
+    /************************************************************************
+     * Tests.
+     */
+
+    @Test
+    public void rankedByWhereWordMatches() {
+        // Name starts with the query, then name words in alphabetical 
+        // order, then swatch names.
+        assertEquals(list("Royal Stewart", "Dress Royal", "Hunting Royal", "Black Watch"),
+            index.search("royal", 10));
+    }
+
+    @Test
+    public void exactWordBeforePrefix() {
+        index.add("Royalty", null);
+
+        assertEquals(list("Royal Stewart", "Royalty", "Dress Royal", "Hunting Royal", "Black Watch"),
+            index.search("Royal", 10));
+    }
+
+    @Test
+    public void everyWordMustMatch() {
+        assertEquals(list("Black Watch", "Campbell", "Hunting Royal"), index.search("gre bl", 10));
+        assertEquals(list("Dress Royal", "Royal Stewart"), index.search("red roy", 10));
+        assertTrue(index.search("red tartan", 10).isEmpty());
+    }
+
+    @Test
+    public void limitKeepsTheBest() {
+        assertEquals(list("Royal Stewart", "Dress Royal"), index.search("royal", 2));
+        assertTrue(index.search("royal", 0).isEmpty());
+        assertTrue(index.search("  ", 10).isEmpty());
+    }
+
+    @Test
+    public void updateReplacesWords() {
+        index.add("Campbell", new String[] { "Yellow" });
+
+        assertEquals(5, index.size());
+        assertEquals(list("Black Watch"), index.search("blue", 10));
+        assertEquals(list("Campbell"), index.search("yellow", 10));
+    }
+
+    @Test
+    public void removeForgetsDesign() {
+        index.remove("Royal Stewart");
+        index.remove("Not Indexed");
+
+        assertEquals(4, index.size());
+        assertEquals(list("Dress Royal", "Hunting Royal", "Black Watch"), index.search("royal", 10));
+        assertTrue(index.search("navy", 10).isEmpty());
+
+        // The id of the removed design is reused.
+        index.add("Royal Navy", null);
+        assertEquals(list("Royal Navy"), index.search("navy", 10));
+    }
+
+    @Test
+    public void growsPastInitialCapacity() {
+        for (int i = 0; i < 200; ++i) {
+            index.add(String.format("Clan %03d", i), new String[] { (i % 2 == 0) ? "Even" : "Odd" });
+        }
+
+        assertEquals(205, index.size());
+        assertEquals(100, index.search("clan even", 1000).size());
+        assertEquals(list("Clan 000", "Clan 001", "Clan 002"), index.search("clan", 3));
+        assertEquals(list("Clan 199"), index.search("199", 10));
+    }
+
+}
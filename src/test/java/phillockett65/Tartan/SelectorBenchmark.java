@@ -0,0 +1,166 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * SelectorBenchmark compares the scene graph cost of the thread selectors
+ * drawn as one Rectangle node per thread, as they were before the overlay,
+ * with the selectors drawn onto a single overlay Canvas, as WarpView does.
+ * It reports the node count and the time to update the selectors for a
+ * change of thread size, which is the work done in each pulse. The nodes
+ * are not shown, so this does not include the rendering of the pulse. It is
+ * only run by the benchmark profile: mvn test -Pbenchmark
+ */
+package phillockett65.Tartan;
+
+import javafx.scene.Group;
+import javafx.scene.Node;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+
+@Tag("benchmark")
+public class SelectorBenchmark {
+
+    // Selectors per warp before the overlay, for rows and columns.
+    private static final int THREADS = 200;
+    private static final int PULSES = 2000;
+    private static final int REPEATS = 5;
+
+    private static final double OFFSET = Default.BORDER_WIDTH.getFloat();
+    private static final double EXTENT = Default.MPC_WIDTH.getFloat();
+
+    private final Color[] colours = { Color.WHITE, Color.RED, Color.GREEN, Color.BLUE };
+
+
+
+    /************************************************************************
+     * Support code for the Rectangle selectors.
+     */
+
+    private Group buildNodes() {
+        Group group = new Group();
+        for (int i = 0; i < THREADS * 2; ++i) {
+            Rectangle stitch = new Rectangle();
+            stitch.setFill(colours[i & 3]);
+            stitch.setStroke(Color.BLACK);
+            group.getChildren().add(stitch);
+        }
+
+        return group;
+    }
+
+    /**
+     * Update every selector node for a thread size, as syncThreadSize did.
+     */
+    private void syncNodes(Group group, double size, double thickness) {
+        int index = 0;
+        for (Node node : group.getChildren()) {
+            final Rectangle stitch = (Rectangle)node;
+            final int thread = index % THREADS;
+            final double pos = thread * size;
+            final boolean visible = (OFFSET + pos) < EXTENT;
+
+            if (index < THREADS) {
+                stitch.setWidth(OFFSET + (((thread & 3) == 1) ? size : 0));
+                stitch.setHeight(size);
+                stitch.setX(0D);
+                stitch.setY(OFFSET + pos);
+            } else {
+                stitch.setWidth(size);
+                stitch.setHeight(OFFSET + (((thread & 3) == 3) ? size : 0));
+                stitch.setX(OFFSET + pos);
+                stitch.setY(0D);
+            }
+            stitch.setVisible(visible);
+            stitch.setStrokeWidth(thickness);
+            stitch.setFill(colours[thread & 3]);
+            ++index;
+        }
+    }
+
+
+
+    /************************************************************************
+     * Support code for the overlay Canvas.
+     */
+
+    /**
+     * Redraw the visible selectors onto the overlay, as WarpView does.
+     */
+    private void drawOverlay(GraphicsContext gc, double size, double thickness) {
+        gc.clearRect(0, 0, EXTENT, EXTENT);
+        gc.setLineWidth(thickness);
+        gc.setStroke(Color.BLACK);
+
+        final int count = Math.min(THREADS, (int)Math.ceil((EXTENT - OFFSET) / size));
+        for (int thread = 0; thread < count; ++thread) {
+            final double pos = OFFSET + (thread * size);
+            gc.setFill(colours[thread & 3]);
+
+            final double width = OFFSET + (((thread & 3) == 1) ? size : 0);
+            gc.fillRect(0, pos, width, size);
+            gc.strokeRect(0, pos, width, size);
+
+            final double height = OFFSET + (((thread & 3) == 3) ? size : 0);
+            gc.fillRect(pos, 0, size, height);
+            gc.strokeRect(pos, 0, size, height);
+        }
+    }
+
+
+
+    /************************************************************************
+     * Benchmarks.
+     */
+
+    @Test
+    public void selectorUpdate() {
+        final Group nodes = buildNodes();
+        final Canvas canvas = new Canvas(EXTENT, EXTENT);
+        final GraphicsContext gc = canvas.getGraphicsContext2D();
+
+        System.out.printf("Selector nodes before: %d, after: %d%n", nodes.getChildren().size(), 1);
+
+        long before = Long.MAX_VALUE;
+        long after = Long.MAX_VALUE;
+        for (int r = 0; r < REPEATS; ++r) {
+            long start = System.nanoTime();
+            for (int i = 0; i < PULSES; ++i) {
+                syncNodes(nodes, 4 + (i & 7), 1);
+            }
+            before = Math.min(before, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (int i = 0; i < PULSES; ++i) {
+                drawOverlay(gc, 4 + (i & 7), 1);
+            }
+            after = Math.min(after, System.nanoTime() - start);
+        }
+
+        Benchmarks.report("Selectors as Rectangle nodes", PULSES, "pulses", before);
+        Benchmarks.report("Selectors on the overlay Canvas", PULSES, "pulses", after);
+    }
+
+}
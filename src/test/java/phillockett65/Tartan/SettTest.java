@@ -0,0 +1,208 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * SettTest checks that the runs of a Sett are always as few as possible,
+ * that it converts to and from the per thread colours, and that the Warp
+ * builds the same runs from a sett that is rotated or edited.
+ */
+package phillockett65.Tartan;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+
+public class SettTest {
+
+    /************************************************************************
+     * Support code for the tests.
+     */
+
+    /**
+     * Build a sett from (colour, count) pairs.
+     */
+    private static Sett sett(int... runs) {
+        Sett result = new Sett();
+        for (int i = 0; i < runs.length; i += 2) {
+            result.append(runs[i], runs[i+1]);
+        }
+
+        return result;
+    }
+
+    /**
+     * Check the runs of a sett against (colour, count) pairs.
+     */
+    private static void assertRuns(Sett sett, int... runs) {
+        assertEquals(runs.length / 2, sett.getRunCount(), sett.toString());
+        for (int i = 0; i < runs.length; i += 2) {
+            assertEquals(runs[i], sett.getRunColour(i / 2), sett.toString());
+            assertEquals(runs[i+1], sett.getRunLength(i / 2), sett.toString());
+        }
+    }
+
+    /**
+     * Build a Warp holding the threads of a sett.
+     */
+    private static Warp warp(Sett sett) {
+        Warp warp = new Warp(false, 2, 400);
+        warp.setList(sett.toList());
+
+        return warp;
+    }
+
+
+
+    /************************************************************************
+     * Tests.
+     */
+
+    @Test
+    public void appendMergesSameColour() {
+        Sett sett = new Sett();
+        sett.append(1, 3);
+        sett.append(1, 2);
+        sett.append(2, 1);
+        sett.append(3, 0);
+        sett.append(1, -1);
+        sett.append(1, 4);
+
+        assertRuns(sett, 1, 5, 2, 1, 1, 4);
+        assertEquals(10, sett.getLength());
+    }
+
+    @Test
+    public void constructorsMergeNeighbours() {
+        final int[] threads = { 1, 1, 2, 2, 2, 1, 3, 3 };
+        final Sett fromArray = new Sett(threads);
+        final Sett fromList = new Sett(new ArrayList<Integer>(Arrays.asList(1, 1, 2, 2, 2, 1, 3, 3)));
+
+        assertRuns(fromArray, 1, 2, 2, 3, 1, 1, 3, 2);
+        assertEquals(fromArray, fromList);
+        assertEquals(fromArray.hashCode(), fromList.hashCode());
+    }
+
+    @Test
+    public void colourAtRunEdges() {
+        final Sett sett = sett(4, 3, 5, 1, 6, 2);
+        final int[] threads = { 4, 4, 4, 5, 6, 6 };
+
+        for (int i = 0; i < threads.length; ++i) {
+            assertEquals(threads[i], sett.getColourIndex(i), "thread " + i);
+        }
+
+        // The repeat threads wrap around to the start of the sett.
+        assertEquals(4, sett.getColourIndex(threads.length));
+        assertEquals(5, sett.getColourIndex(threads.length + 3));
+        assertEquals(6, sett.getColourIndex((3 * threads.length) - 1));
+    }
+
+    @Test
+    public void roundTrips() {
+        final Sett sett = new Sett(Benchmarks.buildSett(170));
+
+        assertArrayEquals(Benchmarks.buildSett(170), sett.toArray());
+        assertEquals(sett, new Sett(sett.toArray()));
+        assertEquals(sett, new Sett(sett.toList()));
+        assertEquals(170, sett.toList().size());
+
+        final Sett empty = new Sett();
+        assertEquals(0, empty.getLength());
+        assertEquals(0, empty.toArray().length);
+        assertEquals(empty, new Sett(new int[0]));
+    }
+
+    @Test
+    public void copyIsIndependent() {
+        final Sett sett = sett(1, 2, 2, 3);
+        Sett copy = new Sett(sett);
+        assertEquals(sett, copy);
+
+        copy.append(2, 1);
+        copy.append(7, 1);
+        assertRuns(sett, 1, 2, 2, 3);
+        assertRuns(copy, 1, 2, 2, 4, 7, 1);
+        assertNotEquals(sett, copy);
+    }
+
+    @Test
+    public void manyRuns() {
+        Sett sett = new Sett();
+        for (int i = 0; i < 1000; ++i) {
+            sett.append(i % 7, 1 + (i % 3));
+        }
+
+        assertEquals(1000, sett.getRunCount());
+        assertEquals(new Sett(sett.toArray()), sett);
+        assertEquals(999 % 7, sett.getColourIndex(sett.getLength() - 1));
+    }
+
+    @Test
+    public void warpRotatedAcrossTheWrap() {
+        final Sett sett = sett(1, 3, 2, 4, 1, 2);
+        Warp warp = warp(sett);
+        assertEquals(sett, warp.getSett());
+
+        // The end of the sett is now in the middle of the ring buffer.
+        warp.rotate(5);
+        assertRuns(warp.getSett(), 2, 2, 1, 5, 2, 2);
+
+        // The runs at either end of the sett merge across the old wrap.
+        warp.rotate(2);
+        assertRuns(warp.getSett(), 1, 5, 2, 4);
+        assertEquals(new Sett(warp.getList()), warp.getSett());
+    }
+
+    @Test
+    public void warpDeleteSpanningRuns() {
+        Warp warp = warp(sett(1, 3, 2, 4, 3, 2, 2, 5));
+
+        // Delete the end of one run, a whole run and the start of another,
+        // so that the remains of the runs either side merge.
+        warp.deleteThreads(5, 6);
+        assertRuns(warp.getSett(), 1, 3, 2, 5);
+
+        warp.insertThreads(4, 2, 1);
+        assertRuns(warp.getSett(), 1, 3, 2, 1, 1, 2, 2, 4);
+
+        warp.colourThreads(3, 1, 1);
+        assertRuns(warp.getSett(), 1, 6, 2, 4);
+    }
+
+    @Test
+    public void warpSetSettWhileRotated() {
+        final Sett sett = sett(3, 4, 0, 1, 5, 6);
+        Warp warp = warp(sett(1, 10));
+        warp.rotate(3);
+
+        warp.setSett(sett);
+        assertEquals(sett, warp.getSett());
+        assertEquals(sett.toList(), warp.getList());
+        assertArrayEquals(sett.toArray(), warp.snapshot().toArray());
+        assertEquals(sett, warp.snapshot().toSett());
+    }
+
+}
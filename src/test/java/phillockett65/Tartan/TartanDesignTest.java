@@ -0,0 +1,179 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * TartanDesignTest checks that a TartanDesign captured from the Warps is
+ * not changed by later edits, so that it can be saved or exported in the
+ * background while editing carries on.
+ */
+package phillockett65.Tartan;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+public class TartanDesignTest {
+
+    private static final int ROWS = 170;
+    private static final int COLS = 114;
+
+    private Warp rowList;
+    private Warp colList;
+    private int[] palette;
+    private String[] names;
+
+    private TartanDesign design;
+    private int[] rows;
+    private int[] cols;
+    private Sett rowSett;
+
+
+
+    /************************************************************************
+     * Support code for the tests.
+     */
+
+    private static Warp buildWarp(boolean row, int count) {
+        ArrayList<Integer> list = new ArrayList<Integer>();
+        for (int colour : Benchmarks.buildSett(count)) {
+            list.add(colour);
+        }
+
+        Warp warp = new Warp(row, Default.MIN_THREAD_COUNT.getInt(), Default.MAX_THREAD_COUNT.getInt());
+        warp.setList(list);
+
+        return warp;
+    }
+
+    /**
+     * Capture a design from rotated Warps, noting its threads to check
+     * against after the edits.
+     */
+    @BeforeEach
+    public void setUp() {
+        rowList = buildWarp(true, ROWS);
+        colList = buildWarp(false, COLS);
+        rowList.rotate(37);
+        colList.rotate(-5);
+
+        palette = Benchmarks.buildPalette();
+        names = new String[palette.length];
+        for (int i = 0; i < names.length; ++i) {
+            names[i] = "Swatch " + i;
+        }
+
+        design = new TartanDesign("Snapshot", rowList.snapshot(), colList.snapshot(),
+            palette, names, 3, 2, 7.5, 1.25, 0xFF000000, 0xFF00FF00, false, true);
+        rows = rowList.getColours(0, ROWS);
+        cols = colList.getColours(0, COLS);
+        rowSett = rowList.getSett();
+    }
+
+    /**
+     * Check that the design still holds the captured threads and palette.
+     */
+    private void check() {
+        assertEquals(ROWS, design.getRowCount());
+        assertEquals(COLS, design.getColumnCount());
+        assertArrayEquals(rows, design.getRows().toArray());
+        assertArrayEquals(cols, design.getColumns().toArray());
+        assertEquals(rowSett, design.getRows().toSett());
+        for (int i = 0; i < ROWS; ++i) {
+            assertEquals(rows[i], design.getRows().getColourIndex(i));
+        }
+
+        assertArrayEquals(Benchmarks.buildPalette(), design.getPalette());
+        for (int i = 0; i < names.length; ++i) {
+            assertEquals("Swatch " + i, design.getSwatchName(i));
+        }
+    }
+
+
+
+    /************************************************************************
+     * Tests.
+     */
+
+    @Test
+    public void capturedThreads() {
+        check();
+    }
+
+    @Test
+    public void unchangedByRecolouring() {
+        rowList.setColourIndex(0, 99);
+        rowList.colourThreads(10, 98, 20);
+        colList.setColourIndex(COLS - 1, 97);
+
+        assertNotEquals(rows[0], rowList.getColourIndex(0));
+        check();
+    }
+
+    @Test
+    public void unchangedByReshaping() {
+        rowList.rotate(11);
+        rowList.insertThreads(5, 4, 99);
+        rowList.deleteThreads(50, 30);
+        rowList.setActive(ROWS * 3, 98);
+        colList.clear();
+        colList.setActive(Default.MIN_THREAD_COUNT.getInt(), 0);
+
+        check();
+    }
+
+    @Test
+    public void unchangedByUndo() {
+        // Undo and redo replace the threads with splice().
+        final int[] replaced = rowList.getColours(20, 40);
+        rowList.colourThreads(20, 99, 40);
+        rowList.splice(20, 40, replaced);
+        rowList.splice(0, ROWS, new int[ROWS]);
+
+        check();
+    }
+
+    @Test
+    public void unchangedBySetList() {
+        ArrayList<Integer> list = new ArrayList<Integer>();
+        for (int i = 0; i < ROWS; ++i) {
+            list.add(99);
+        }
+        rowList.setList(list);
+        colList.setSett(rowSett);
+
+        check();
+    }
+
+    @Test
+    public void unchangedByCallerArrays() {
+        palette[0] = 0;
+        names[0] = "Changed";
+        design.getPalette()[1] = 0;
+
+        check();
+    }
+
+}
@@ -0,0 +1,133 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * TartanImageTest checks that an image is written complete or not at all,
+ * so that a failed export never replaces a good image with part of one.
+ */
+package phillockett65.Tartan;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+public class TartanImageTest {
+
+    private static final int WIDTH = 120;
+    private static final int HEIGHT = 90;
+
+    @TempDir
+    Path folder;
+
+    private Path dir;
+    private Path path;
+    private RenderCache cache;
+
+
+
+    /************************************************************************
+     * Support code for the tests.
+     */
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        dir = Files.createDirectory(folder.resolve("design"));
+        path = dir.resolve("tartan.png");
+        cache = new RenderCache(folder.resolve("cache"), 1 << 20, 1 << 20);
+    }
+
+    private static TartanImage image(String label) {
+        return new TartanImage(DataStore2Test.buildDesign("Image", label), WIDTH, HEIGHT);
+    }
+
+    /**
+     * @return the number of files in the design directory.
+     */
+    private long countFiles() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+
+
+
+    /************************************************************************
+     * Tests.
+     */
+
+    @Test
+    public void writesCompleteImage() throws IOException {
+        assertTrue(image("Swatch").write(path, cache, 2, null));
+
+        final BufferedImage png = ImageIO.read(path.toFile());
+        assertEquals(WIDTH, png.getWidth());
+        assertEquals(HEIGHT, png.getHeight());
+        assertEquals(1, countFiles());
+    }
+
+    @Test
+    public void failureKeepsPreviousImage() throws IOException {
+        final byte[] previous = { 1, 2, 3, 4 };
+        Files.write(path, previous);
+
+        final boolean written = image("Swatch").write(path, cache, 2, lines -> {
+            if (lines > 0) {
+                throw new IllegalStateException("Render aborted");
+            }
+        });
+
+        assertFalse(written);
+        assertArrayEquals(previous, Files.readAllBytes(path));
+        assertEquals(1, countFiles());
+
+        // Nothing was added to the cache, so the next write renders again.
+        assertFalse(cache.fetch(image("Swatch").getKey(), folder.resolve("fetched.png")));
+    }
+
+    @Test
+    public void cachedImageReplacesPrevious() throws IOException {
+        final TartanImage image = image("Swatch");
+        assertTrue(image.write(folder.resolve("first.png"), cache, 1, null));
+        final byte[] expected = Files.readAllBytes(folder.resolve("first.png"));
+
+        Files.write(path, new byte[] { 1, 2, 3, 4 });
+        assertTrue(image.write(path, cache, 1, lines -> {
+            throw new IllegalStateException("Rendered, not cached");
+        }));
+
+        assertArrayEquals(expected, Files.readAllBytes(path));
+        assertEquals(1, countFiles());
+    }
+
+}
@@ -0,0 +1,102 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ThreadcountBenchmark measures the parse and format throughput of the
+ * threadcount notation over a large stream of setts. It is only run by the
+ * benchmark profile: mvn test -Pbenchmark
+ */
+package phillockett65.Tartan;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.text.ParseException;
+import java.util.Random;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+
+@Tag("benchmark")
+public class ThreadcountBenchmark {
+
+    private static final int SETTS = 100000;
+    private static final int REPEATS = 5;
+    private static final String[] CODES = { "K", "W", "R", "G", "B", "Y", "DB", "LG" };
+
+    /**
+     * Build a stream of named setts, one per line, half of them with pivots.
+     */
+    private static String buildLibrary() {
+        final Random random = new Random(SETTS);
+        StringBuilder text = new StringBuilder();
+        for (int s = 0; s < SETTS; ++s) {
+            text.append("Sett ").append(s).append(':');
+            final int runs = 4 + random.nextInt(12);
+            final boolean pivot = (s & 1) == 0;
+            for (int run = 0; run < runs; ++run) {
+                text.append(' ').append(CODES[random.nextInt(CODES.length)]);
+                if (pivot && ((run == 0) || (run == runs - 1))) {
+                    text.append('/');
+                }
+                text.append(2 + random.nextInt(60));
+            }
+            text.append('\n');
+        }
+
+        return text.toString();
+    }
+
+    @Test
+    public void parseAndFormatThroughput() throws IOException, ParseException {
+        final String library = buildLibrary();
+        final int swatches = Default.SWATCH_COUNT.getInt();
+        Threadcount[] setts = new Threadcount[SETTS];
+
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < REPEATS; ++r) {
+            final long start = System.nanoTime();
+            try (Threadcount.Parser parser = new Threadcount.Parser(new StringReader(library), swatches)) {
+                int count = 0;
+                Threadcount sett;
+                while ((sett = parser.read()) != null) {
+                    setts[count++] = sett;
+                }
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        Benchmarks.report("Threadcount parse", SETTS, "setts", best);
+        Benchmarks.report("Threadcount parse", library.length(), "chars", best);
+
+        StringBuilder output = new StringBuilder(library.length());
+        best = Long.MAX_VALUE;
+        for (int r = 0; r < REPEATS; ++r) {
+            output.setLength(0);
+            final long start = System.nanoTime();
+            for (Threadcount sett : setts) {
+                sett.format(output);
+                output.append('\n');
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        Benchmarks.report("Threadcount format", SETTS, "setts", best);
+    }
+
+}
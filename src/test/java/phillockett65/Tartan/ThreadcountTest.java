@@ -0,0 +1,202 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ThreadcountTest checks the parsing of the threadcount notation, and that
+ * formatting a sett and parsing it again gives back the same threads.
+ */
+package phillockett65.Tartan;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.text.ParseException;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+
+public class ThreadcountTest {
+
+    private static final int SWATCHES = Default.SWATCH_COUNT.getInt();
+    private static final String[] CODES = { "K", "W", "R", "G", "B", "Y", "DB", "LG" };
+
+
+
+    /************************************************************************
+     * Support code for the tests.
+     */
+
+    /**
+     * Expand a threadcount into the colour code of each thread, which does
+     * not depend on the swatch each code was given.
+     */
+    private static String[] expand(Threadcount threadcount) {
+        final String[] codes = threadcount.getCodes();
+        final int[] threads = threadcount.getSett().toArray();
+        String[] result = new String[threads.length];
+        for (int i = 0; i < threads.length; ++i) {
+            result[i] = codes[threads[i]];
+        }
+
+        return result;
+    }
+
+    /**
+     * Build a random sett, with no two neighbouring runs the same colour.
+     */
+    private static Threadcount buildRandom(Random random, boolean symmetric) {
+        final int half = 1 + random.nextInt(10);
+        int[] colours = new int[half + 1];
+        int[] lengths = new int[half + 1];
+        for (int i = 0; i <= half; ++i) {
+            do {
+                colours[i] = random.nextInt(CODES.length);
+            } while ((i > 0) && (colours[i] == colours[i - 1]));
+            lengths[i] = 1 + random.nextInt(60);
+        }
+
+        Sett sett = new Sett();
+        for (int i = 0; i <= half; ++i) {
+            sett.append(colours[i], lengths[i]);
+        }
+        if (symmetric) {
+            for (int i = half - 1; i > 0; --i) {
+                sett.append(colours[i], lengths[i]);
+            }
+        }
+
+        return new Threadcount(null, CODES, sett);
+    }
+
+    private static void checkRoundTrip(Threadcount threadcount) throws ParseException {
+        final String text = threadcount.format();
+        final Threadcount parsed = Threadcount.parse(text, SWATCHES);
+
+        assertArrayEquals(expand(threadcount), expand(parsed), text);
+        assertEquals(text, parsed.format());
+    }
+
+
+
+    /************************************************************************
+     * Tests of the parser.
+     */
+
+    @Test
+    public void parseAsymmetric() throws ParseException {
+        final Threadcount threadcount = Threadcount.parse("K4 R24 K24 Y4", SWATCHES);
+
+        assertArrayEquals(new String[] { "K", "R", "Y" }, threadcount.getCodes());
+        assertEquals(4, threadcount.getSett().getRunCount());
+        assertEquals(56, threadcount.getSett().getLength());
+        assertEquals("K4 R24 K24 Y4", threadcount.format());
+    }
+
+    @Test
+    public void parsePivots() throws ParseException {
+        final Threadcount threadcount = Threadcount.parse("K/4 R24 Y/4", SWATCHES);
+        final Sett sett = threadcount.getSett();
+
+        assertEquals(4, sett.getRunCount());
+        assertEquals(56, sett.getLength());
+        assertEquals(1, sett.getRunColour(3));
+        assertEquals(24, sett.getRunLength(3));
+        assertEquals("K/4 R24 Y/4", threadcount.format());
+    }
+
+    @Test
+    public void parseNameCommentsAndCase() throws ParseException {
+        final Threadcount threadcount = Threadcount.parse(" Test Sett : k4, dg/8 # comment R2", SWATCHES);
+
+        assertEquals("Test Sett", threadcount.getName());
+        assertArrayEquals(new String[] { "K", "DG" }, threadcount.getCodes());
+        assertEquals(12, threadcount.getSett().getLength());
+    }
+
+    @Test
+    public void parseErrors() {
+        assertThrows(ParseException.class, () -> Threadcount.parse("", SWATCHES));
+        assertThrows(ParseException.class, () -> Threadcount.parse("K4 R", SWATCHES));
+        assertThrows(ParseException.class, () -> Threadcount.parse("K0", SWATCHES));
+        assertThrows(ParseException.class, () -> Threadcount.parse("4 K4", SWATCHES));
+        assertThrows(ParseException.class, () -> Threadcount.parse("KKKKK4", SWATCHES));
+        assertThrows(ParseException.class, () -> Threadcount.parse("K99999999999", SWATCHES));
+        assertThrows(ParseException.class, () -> Threadcount.parse("Name:", SWATCHES));
+        assertThrows(ParseException.class, () -> Threadcount.parse("A1 B1 C1 D1 E1 F1 G1 H1 I1", SWATCHES));
+    }
+
+    @Test
+    public void streamOfSetts() throws IOException, ParseException {
+        final String text = "# library\n\nFirst: K/4 R/8\nSecond: W2 B3 Y5\n   \nThird: G1 K1\n";
+
+        try (Threadcount.Parser parser = new Threadcount.Parser(new StringReader(text), SWATCHES)) {
+            assertEquals("First", parser.read().getName());
+            assertEquals(3, parser.getLineNumber());
+            assertEquals("Second", parser.read().getName());
+            assertEquals("Third", parser.read().getName());
+            assertEquals(6, parser.getLineNumber());
+            assertNull(parser.read());
+        }
+    }
+
+    @Test
+    public void streamReportsTheLineOfAnError() {
+        final String text = "K4 R4\nK4 R\n";
+
+        final ParseException e = assertThrows(ParseException.class, () -> {
+            try (Threadcount.Parser parser = new Threadcount.Parser(new StringReader(text), SWATCHES)) {
+                while (parser.read() != null) {
+                }
+            }
+        });
+        assertTrue(e.getMessage().contains("line 2"), e.getMessage());
+    }
+
+
+
+    /************************************************************************
+     * Tests of the round trip.
+     */
+
+    @Test
+    public void roundTripOfRandomSetts() throws ParseException {
+        final Random random = new Random(15);
+        for (int i = 0; i < 500; ++i) {
+            checkRoundTrip(buildRandom(random, false));
+            checkRoundTrip(buildRandom(random, true));
+        }
+    }
+
+    @Test
+    public void roundTripKeepsTheName() throws ParseException {
+        final Threadcount threadcount = Threadcount.parse("Named: B/6 K2 G/30", SWATCHES);
+        final Threadcount parsed = Threadcount.parse(threadcount.format(), SWATCHES);
+
+        assertEquals("Named", parsed.getName());
+        assertEquals(threadcount.getSett(), parsed.getSett());
+    }
+
+}
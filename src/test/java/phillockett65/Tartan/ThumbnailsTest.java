@@ -0,0 +1,142 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ThumbnailsTest checks that the cache of thumbnails keeps the most
+ * recently used images within its byte budget.
+ */
+package phillockett65.Tartan;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.WritableImage;
+
+
+public class ThumbnailsTest {
+
+    private static final int SIZE = 64;
+    private static final long BYTES = SIZE * SIZE * 4;
+
+    @TempDir
+    Path folder;
+
+    private Thumbnails thumbnails;
+
+
+
+    /************************************************************************
+     * Support code for the tests.
+     */
+
+    /**
+     * Build a cache with room for three thumbnails. It is closed so that
+     * a request for an image that is not cached does not make one.
+     */
+    @BeforeEach
+    public void setUp() {
+        thumbnails = new Thumbnails(folder, "settings.dat", "tartan.png", "thumbnail.png", 3 * BYTES);
+        thumbnails.close();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        thumbnails.close();
+    }
+
+    private static Image image(int size) {
+        return new WritableImage(size, size);
+    }
+
+    private Image get(String name) {
+        return thumbnails.request(name, image -> {});
+    }
+
+
+
+    /************************************************************************
+     * Tests.
+     */
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        final Image a = image(SIZE);
+        thumbnails.store("a", a);
+        thumbnails.store("b", image(SIZE));
+        thumbnails.store("c", image(SIZE));
+        assertEquals(3 * BYTES, thumbnails.getCachedBytes());
+
+        // Using "a" makes "b" the least recently used.
+        assertSame(a, get("a"));
+        thumbnails.store("d", image(SIZE));
+
+        assertEquals(3 * BYTES, thumbnails.getCachedBytes());
+        assertNull(get("b"));
+        assertSame(a, get("a"));
+        assertNotNull(get("c"));
+        assertNotNull(get("d"));
+    }
+
+    @Test
+    public void evictsUntilWithinBudget() {
+        thumbnails.store("a", image(SIZE));
+        thumbnails.store("b", image(SIZE));
+        thumbnails.store("c", image(SIZE));
+        thumbnails.store("big", image(SIZE * 2));
+
+        // The big image needs the room of all three others.
+        assertEquals(4 * BYTES, thumbnails.getCachedBytes());
+        assertNull(get("a"));
+        assertNull(get("b"));
+        assertNull(get("c"));
+        assertNotNull(get("big"));
+
+        thumbnails.store("d", image(SIZE));
+        assertEquals(BYTES, thumbnails.getCachedBytes());
+        assertNull(get("big"));
+    }
+
+    @Test
+    public void replaceAndInvalidateKeepCount() {
+        thumbnails.store("a", image(SIZE));
+        thumbnails.store("b", image(SIZE));
+
+        final Image small = image(SIZE / 2);
+        thumbnails.store("a", small);
+        assertEquals(BYTES + (BYTES / 4), thumbnails.getCachedBytes());
+        assertSame(small, get("a"));
+
+        thumbnails.invalidate("a");
+        thumbnails.invalidate("missing");
+        assertEquals(BYTES, thumbnails.getCachedBytes());
+        assertNull(get("a"));
+    }
+
+}
@@ -0,0 +1,132 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * WarpBenchmark measures the edits of the Warp without a running toolkit.
+ * It is only run by the benchmark profile: mvn test -Pbenchmark
+ */
+package phillockett65.Tartan;
+
+import java.util.ArrayList;
+import java.util.function.IntConsumer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+
+@Tag("benchmark")
+public class WarpBenchmark {
+
+    private static final int COUNT = 100000;
+    private static final int REPEATS = 5;
+
+    private Warp warp;
+
+
+
+    /************************************************************************
+     * Support code for the benchmarks.
+     */
+
+    @BeforeEach
+    public void setUp() {
+        final int[] threads = Benchmarks.buildSett(Default.MAX_THREAD_COUNT.getInt() / 2);
+        ArrayList<Integer> list = new ArrayList<Integer>(threads.length);
+        for (int thread : threads) {
+            list.add(thread);
+        }
+
+        warp = new Warp(false, Default.MIN_THREAD_COUNT.getInt(), Default.MAX_THREAD_COUNT.getInt());
+        warp.setList(list);
+        warp.rotate(threads.length / 3);
+    }
+
+    /**
+     * Time an operation, keeping the best of several runs.
+     * @param name of the operation.
+     * @param operation to run COUNT times, given the iteration.
+     */
+    private void measure(String name, IntConsumer operation) {
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < REPEATS; ++r) {
+            final long start = System.nanoTime();
+            for (int i = 0; i < COUNT; ++i) {
+                operation.accept(i);
+            }
+            best = Math.min(best, System.nanoTime() - start);
+            warp.clearChanges();
+        }
+
+        Benchmarks.report("Warp " + name, COUNT, "ops", best);
+    }
+
+
+
+    /************************************************************************
+     * Benchmarks.
+     */
+
+    /**
+     * Rotations only change the offset, so the rate should not depend on
+     * the length of the sett. The listener stands in for the Sample, which
+     * coalesces the notifications into a single repaint.
+     */
+    @Test
+    public void rotate() {
+        final boolean[] pending = new boolean[1];
+        warp.addListener(() -> pending[0] = true);
+
+        measure("rotateIncrease", i -> warp.rotateIncrease());
+        measure("rotateDecrease", i -> warp.rotateDecrease());
+        measure("rotate by large steps", i -> warp.rotate(i * 7919));
+    }
+
+    @Test
+    public void colourThreads() {
+        final int active = warp.getActive();
+        measure("colourThreads", i -> warp.colourThreads(i % active, i & 7, 4));
+    }
+
+    @Test
+    public void insertAndDeleteThreads() {
+        final int active = warp.getActive() - 4;
+        measure("insert/deleteThreads", i -> {
+            warp.insertThreads(i % active, 4, 1);
+            warp.deleteThreads(i % active, 4);
+        });
+    }
+
+    @Test
+    public void splice() {
+        final int active = warp.getActive() - 4;
+        final int[] threads = { 1, 2, 3, 4 };
+        measure("splice", i -> warp.splice(i % active, 4, threads));
+    }
+
+    @Test
+    public void snapshotAndEdit() {
+        measure("snapshot + edit", i -> {
+            warp.snapshot();
+            warp.setColourIndex(0, i & 7);
+        });
+    }
+
+}
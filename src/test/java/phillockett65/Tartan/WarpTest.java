@@ -0,0 +1,323 @@
+/*  Tartan - a JavaFX based Tartan image generator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Tartan.
+ *
+ *  Tartan is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Tartan is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Tartan.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * WarpTest checks the edits of the Warp against the same edits made on a
+ * plain list of the threads, with the sett rotated so that the edits cross
+ * the end of the ring buffer.
+ */
+package phillockett65.Tartan;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+public class WarpTest {
+
+    private static final int MIN = 2;
+    private static final int MAX = 400;
+    private static final int COUNT = 20;
+
+    private Warp warp;
+    private ArrayList<Integer> expected;
+
+
+
+    /************************************************************************
+     * Support code for the tests.
+     */
+
+    /**
+     * Build a Warp of COUNT threads, each a different colour, rotated so
+     * that the sett wraps around the end of the ring buffer.
+     */
+    @BeforeEach
+    public void setUp() {
+        expected = new ArrayList<Integer>();
+        for (int i = 0; i < COUNT; ++i) {
+            expected.add(i);
+        }
+
+        warp = new Warp(false, MIN, MAX);
+        warp.setList(expected);
+
+        rotate(15);
+        assertEquals(15, warp.getOffset());
+    }
+
+    /**
+     * Rotate both the Warp and the expected threads.
+     */
+    private void rotate(int step) {
+        warp.rotate(step);
+        Collections.rotate(expected, -Math.floorMod(step, expected.size()));
+        check();
+    }
+
+    private void check() {
+        assertEquals(expected, warp.getList());
+        assertEquals(expected.size(), warp.getActive());
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        return list.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+
+
+    /************************************************************************
+     * Tests of the rotation.
+     */
+
+    @Test
+    public void rotateByNegativeSteps() {
+        rotate(-1);
+        rotate(-7);
+        rotate(-COUNT);
+        rotate(-(COUNT * 3) - 4);
+    }
+
+    @Test
+    public void rotateByLargeSteps() {
+        rotate(COUNT);
+        rotate((COUNT * 1000) + 3);
+        rotate(Integer.MAX_VALUE);
+        rotate(Integer.MIN_VALUE);
+    }
+
+    @Test
+    public void rotateIncreaseAndDecreaseCancel() {
+        final ArrayList<Integer> before = warp.getList();
+        for (int i = 0; i < COUNT + 3; ++i) {
+            warp.rotateIncrease();
+        }
+        for (int i = 0; i < COUNT + 3; ++i) {
+            warp.rotateDecrease();
+        }
+
+        assertEquals(before, warp.getList());
+    }
+
+    @Test
+    public void repeatsFollowTheRotation() {
+        for (int i = 0; i < COUNT * 3; ++i) {
+            assertEquals((int)expected.get(i % COUNT), warp.getColourIndex(i));
+        }
+    }
+
+
+
+    /************************************************************************
+     * Tests of the edits across the end of the ring buffer.
+     */
+
+    @Test
+    public void insertAcrossTheWrap() {
+        warp.insertThreads(3, 4, 99);
+        for (int i = 0; i < 4; ++i) {
+            expected.add(3, 99);
+        }
+        check();
+        assertEquals(0, warp.getOffset());
+    }
+
+    @Test
+    public void insertAtTheEnd() {
+        warp.insertThreads(COUNT, 2, 77);
+        expected.add(77);
+        expected.add(77);
+        check();
+    }
+
+    @Test
+    public void insertLimitedToMax() {
+        warp.insertThreads(0, MAX, 5);
+        assertEquals(MAX, warp.getActive());
+        assertEquals((int)expected.get(0), warp.getColourIndex(MAX - COUNT));
+    }
+
+    @Test
+    public void deleteAcrossTheWrap() {
+        warp.deleteThreads(3, 4);
+        expected.subList(3, 7).clear();
+        check();
+    }
+
+    @Test
+    public void deletePastTheEnd() {
+        warp.deleteThreads(COUNT - 2, 5);
+        expected.subList(COUNT - 2, COUNT).clear();
+        check();
+    }
+
+    @Test
+    public void deleteLimitedToMin() {
+        warp.deleteThreads(0, COUNT);
+        assertEquals(MIN, warp.getActive());
+        assertEquals(expected.subList(COUNT - MIN, COUNT), warp.getList());
+    }
+
+    @Test
+    public void spliceSameLengthAcrossTheWrap() {
+        warp.clearChanges();
+        warp.splice(3, 4, new int[] { 50, expected.get(4), 52, 53 });
+        expected.set(3, 50);
+        expected.set(5, 52);
+        expected.set(6, 53);
+        check();
+
+        // Only the threads that changed colour are recorded, by ring buffer
+        // position, and the rotation is kept.
+        assertFalse(warp.isReshaped());
+        assertEquals(3, warp.getChanged().cardinality());
+        assertEquals(15, warp.getOffset());
+    }
+
+    @Test
+    public void spliceLongerAcrossTheWrap() {
+        warp.splice(3, 2, new int[] { 60, 61, 62, 63, 64 });
+        expected.subList(3, 5).clear();
+        expected.addAll(3, List.of(60, 61, 62, 63, 64));
+        check();
+        assertTrue(warp.isReshaped());
+    }
+
+    @Test
+    public void spliceShorterAcrossTheWrap() {
+        warp.splice(2, 6, new int[] { 70 });
+        expected.subList(2, 8).clear();
+        expected.add(2, 70);
+        check();
+    }
+
+    @Test
+    public void spliceBeyondCapacity() {
+        final int[] threads = new int[300];
+        for (int i = 0; i < threads.length; ++i) {
+            threads[i] = 1000 + i;
+        }
+
+        warp.splice(5, 0, threads);
+        for (int i = threads.length - 1; i >= 0; --i) {
+            expected.add(5, threads[i]);
+        }
+        check();
+    }
+
+    @Test
+    public void colourThreadsAcrossTheWrap() {
+        warp.colourThreads(2, 42, 6);
+        for (int i = 2; i < 8; ++i) {
+            expected.set(i, 42);
+        }
+        check();
+    }
+
+    @Test
+    public void getColoursAcrossTheWrap() {
+        assertArrayEquals(toArray(expected.subList(2, 9)), warp.getColours(2, 7));
+        assertArrayEquals(toArray(expected.subList(COUNT - 3, COUNT)), warp.getColours(COUNT - 3, 10));
+    }
+
+    @Test
+    public void setActiveFillsNewThreads() {
+        warp.setActive(COUNT + 3, 9);
+        expected.addAll(List.of(9, 9, 9));
+        check();
+
+        warp.setActive(COUNT - 5, 9);
+        expected.subList(COUNT - 5, expected.size()).clear();
+        check();
+    }
+
+
+
+    /************************************************************************
+     * Tests of the copy on write snapshots.
+     */
+
+    @Test
+    public void snapshotKeepsTheRotation() {
+        final TartanDesign.Threads snapshot = warp.snapshot();
+
+        assertEquals(COUNT, snapshot.getCount());
+        assertArrayEquals(toArray(expected), snapshot.toArray());
+    }
+
+    @Test
+    public void snapshotIsNotChangedByLaterEdits() {
+        final int[] before = toArray(expected);
+        final TartanDesign.Threads snapshot = warp.snapshot();
+
+        warp.setColourIndex(0, 90);
+        warp.colourThreads(4, 91, 3);
+        warp.rotate(7);
+        warp.clear();
+        warp.insertThreads(1, 3, 92);
+        warp.deleteThreads(0, 2);
+
+        assertArrayEquals(before, snapshot.toArray());
+    }
+
+    @Test
+    public void snapshotIsNotChangedByRebuildingTheSett() {
+        final int[] before = toArray(expected);
+        final TartanDesign.Threads snapshot = warp.snapshot();
+
+        ArrayList<Integer> list = new ArrayList<Integer>();
+        for (int i = 0; i < COUNT; ++i) {
+            list.add(80);
+        }
+        warp.setList(list);
+
+        assertArrayEquals(before, snapshot.toArray());
+    }
+
+    @Test
+    public void eachSnapshotSeesItsOwnVersion() {
+        final TartanDesign.Threads first = warp.snapshot();
+        warp.setColourIndex(0, 90);
+        final TartanDesign.Threads second = warp.snapshot();
+        warp.setColourIndex(0, 91);
+
+        assertEquals((int)expected.get(0), first.getColourIndex(0));
+        assertEquals(90, second.getColourIndex(0));
+        assertEquals(91, warp.getColourIndex(0));
+    }
+
+    @Test
+    public void unchangedWarpIsNotCopied() {
+        final TartanDesign.Threads first = warp.snapshot();
+        final TartanDesign.Threads second = warp.snapshot();
+
+        assertArrayEquals(first.toArray(), second.toArray());
+        assertEquals(expected, warp.getList());
+    }
+
+}